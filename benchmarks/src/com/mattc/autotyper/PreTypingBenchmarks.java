@@ -0,0 +1,44 @@
+package com.mattc.autotyper;
+
+import com.mattc.autotyper.minify.MinifierBenchmark;
+import com.mattc.autotyper.minify.StringRepairBenchmark;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs every benchmark of the work done between starting a session and typing the first key: minifying,
+ * repairing strings and hashing the cached file, with allocation profiling (<code>-prof gc</code>). <br />
+ * <br />
+ * Results are written as JSON to <code>benchmarks/results/pretyping.json</code>, or the path given as the
+ * first argument, so that a run can be compared against the previous baseline. Must be run from the
+ * repository root, see {@link MinifierBenchmark}.
+ *
+ * @author Glossawy
+ */
+public final class PreTypingBenchmarks {
+
+    public static final String DEFAULT_RESULT = "benchmarks/results/pretyping.json";
+
+    private PreTypingBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final File result = new File(args.length > 0 ? args[0] : DEFAULT_RESULT);
+        if (result.getParentFile() != null)
+            result.getParentFile().mkdirs();
+
+        new Runner(new OptionsBuilder()
+                .include(MinifierBenchmark.class.getSimpleName())
+                .include(StringRepairBenchmark.class.getSimpleName())
+                .include(DownloaderHashBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build()).run();
+    }
+}
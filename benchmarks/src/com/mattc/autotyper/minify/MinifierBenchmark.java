@@ -0,0 +1,52 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.util.LuaCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Minifier#minify(String)}, the native {@link LuaMinifier}, and luaparse and luamin running on
+ * Nashorn, which the minifier only falls back to. luamin is loaded from the classpath.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MinifierBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = LuaCorpus.generate(size);
+    }
+
+    @Benchmark
+    public String minify() throws ScriptException {
+        return Minifier.minify(source);
+    }
+
+    @Benchmark
+    public String luamin() throws ScriptException {
+        return Minifier.luamin(source);
+    }
+}
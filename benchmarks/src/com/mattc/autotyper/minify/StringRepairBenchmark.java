@@ -0,0 +1,46 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.util.LuaCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Minifier#repairBrokenLuaStrings(String)} over text shaped like luamin output: statements on
+ * their own lines and string literals whose <code>\n</code> escapes were turned into real line breaks.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StringRepairBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    private String broken;
+
+    @Setup
+    public void setup() {
+        broken = LuaCorpus.generate(size).replace("\\n", "\n");
+    }
+
+    @Benchmark
+    public String repair() {
+        return Minifier.repairBrokenLuaStrings(broken);
+    }
+}
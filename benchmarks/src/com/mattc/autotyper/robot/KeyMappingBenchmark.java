@@ -0,0 +1,84 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.LuaCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping characters to keystrokes, as {@link SwingKeyboard#type(char)} does: looking up the
+ * packed keystrokes in the {@link KeyLayout} and expanding them into key events, including SHIFT
+ * coalescing and dead keys. Key events go to a sink that only consumes them.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KeyMappingBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    @Param({"us", "de"})
+    public String layoutName;
+
+    private KeyLayout layout;
+    private char[] text;
+
+    @Setup
+    public void setup() {
+        layout = KeyLayout.forName(layoutName);
+
+        // Only characters the layout can type, as compiling would have rejected the rest
+        final String corpus = LuaCorpus.generate(size);
+        final StringBuilder sb = new StringBuilder(corpus.length());
+        for (int i = 0; i < corpus.length(); i++) {
+            final char c = corpus.charAt(i);
+            if (c != '\n' && layout.canType(c))
+                sb.append(c);
+        }
+        text = sb.toString().toCharArray();
+    }
+
+    @Benchmark
+    public int lookup() {
+        int hash = 0;
+        for (final char c : text)
+            hash += layout.lookup(c);
+        return hash;
+    }
+
+    @Benchmark
+    public void lookupAndWrite(final Blackhole bh) {
+        final StrokeWriter writer = new StrokeWriter() {
+            @Override
+            void emitPress(int code) {
+                bh.consume(code);
+            }
+
+            @Override
+            void emitRelease(int code) {
+                bh.consume(code);
+            }
+        };
+
+        for (final char c : text)
+            writer.write(layout.lookup(c));
+        writer.releaseModifiers();
+    }
+}
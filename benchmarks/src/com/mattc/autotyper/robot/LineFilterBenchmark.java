@@ -0,0 +1,56 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.LuaCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the line filtering that typing applies: trimming, collapsing whitespace and dropping comments
+ * and empty lines. Filtering happens while compiling, so it is measured as the difference between
+ * compiling the raw source and compiling text that is already filtered, which only has to be mapped.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LineFilterBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    private KeystrokeCompiler compiler;
+    private String source;
+    private String filtered;
+
+    @Setup
+    public void setup() {
+        compiler = new KeystrokeCompiler(KeyLayout.forName("us"));
+        source = LuaCorpus.generate(size);
+        filtered = String.join("\n", compiler.compile(source).text());
+    }
+
+    @Benchmark
+    public KeyProgram compileSource() {
+        return compiler.compile(source);
+    }
+
+    @Benchmark
+    public KeyProgram compileFiltered() {
+        return compiler.compile(filtered);
+    }
+}
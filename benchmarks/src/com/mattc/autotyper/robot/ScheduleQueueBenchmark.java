@@ -0,0 +1,93 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.IntRingBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue of key events scheduled by the user while typing, see {@link BaseMethodology}. The typing
+ * thread checks it for emptiness before every character, so that check matters most. Compares the
+ * {@link IntRingBuffer} in use against the {@link ConcurrentLinkedQueue} it replaced, on a single thread
+ * and with one producer and one consumer thread.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleQueueBenchmark {
+
+    private final IntRingBuffer ring = new IntRingBuffer(64);
+    private final Queue<Integer> queue = new ConcurrentLinkedQueue<>();
+
+    @Benchmark
+    @Group("ringIsEmpty")
+    public boolean ringIsEmpty() {
+        return ring.isEmpty();
+    }
+
+    @Benchmark
+    @Group("queueIsEmpty")
+    public boolean queueIsEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Benchmark
+    @Group("ringOfferRemove")
+    public int ringOfferRemove() {
+        ring.offer(42);
+        return ring.remove();
+    }
+
+    @Benchmark
+    @Group("queueOfferRemove")
+    public int queueOfferRemove() {
+        queue.offer(42);
+        return queue.poll();
+    }
+
+    @Benchmark
+    @Group("ringSpsc")
+    @GroupThreads(1)
+    public boolean ringProducer() {
+        return ring.offer(42);
+    }
+
+    @Benchmark
+    @Group("ringSpsc")
+    @GroupThreads(1)
+    public int ringConsumer() {
+        return ring.isEmpty() ? -1 : ring.remove();
+    }
+
+    @Benchmark
+    @Group("queueSpsc")
+    @GroupThreads(1)
+    public boolean queueProducer() {
+        // Bounded like the ring buffer, otherwise a slow consumer lets the queue grow without end
+        return queue.size() < 64 && queue.offer(42);
+    }
+
+    @Benchmark
+    @Group("queueSpsc")
+    @GroupThreads(1)
+    public Integer queueConsumer() {
+        return queue.poll();
+    }
+}
@@ -0,0 +1,49 @@
+package com.mattc.autotyper.robot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of a {@link SyncPolicy} per key event, not counting the waits themselves. Every 40th event
+ * ends a line and every wait is reported as fast, so an ADAPTIVE policy keeps widening its interval.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncPolicyBenchmark {
+
+    @Param({"never", "line", "adaptive", "1", "16"})
+    public String policy;
+
+    private SyncPolicy.Tracker tracker;
+    private int events;
+
+    @Setup
+    public void setup() {
+        tracker = SyncPolicy.parse(policy).tracker();
+    }
+
+    @Benchmark
+    public boolean onEvent() {
+        final boolean sync = tracker.onEvent(++events % 40 == 0);
+        if (sync)
+            tracker.onSync(1000);
+        return sync;
+    }
+}
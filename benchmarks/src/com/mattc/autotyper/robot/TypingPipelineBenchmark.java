@@ -0,0 +1,76 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.LuaCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole typing pipeline without the keyboard: compiling the source and walking the program
+ * through a {@link TypingMethodology} and {@link SwingKeyboard} with no delay between key events,
+ * into the "null" {@link RecordingBackend} which only counts them. What is left is the overhead
+ * CCAutotyper adds to every key event on top of the input delay.
+ *
+ * @author Glossawy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TypingPipelineBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    @Param({"never", "adaptive"})
+    public String sync;
+
+    private KeystrokeCompiler compiler;
+    private String source;
+    private KeyProgram program;
+    private SwingKeyboard keys;
+
+    @Setup
+    public void setup() {
+        final KeyLayout layout = KeyLayout.forName("us");
+
+        compiler = new KeystrokeCompiler(layout);
+        source = LuaCorpus.generate(size);
+        program = compiler.compile(source);
+
+        keys = new SwingKeyboard(KeyTiming.fromDelay(0, TimeUnit.NANOSECONDS), layout, new RecordingBackend(0), false);
+        keys.setSyncPolicy(SyncPolicy.parse(sync));
+        keys.setMethod(KeyboardMethodology.TYPING.create(keys));
+    }
+
+    @TearDown
+    public void tearDown() {
+        keys.destroy();
+    }
+
+    @Benchmark
+    public KeyProgram compileAndEmit() {
+        final KeyProgram compiled = compiler.compile(source);
+        keys.typeProgram(compiled);
+        return compiled;
+    }
+
+    @Benchmark
+    public KeyProgram emit() {
+        keys.typeProgram(program);
+        return program;
+    }
+}
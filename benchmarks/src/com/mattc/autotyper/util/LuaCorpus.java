@@ -0,0 +1,152 @@
+package com.mattc.autotyper.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic ComputerCraft Lua programs of a given size for benchmarks. <br />
+ * <br />
+ * The output mixes what real programs contain and what the typing pipeline has to deal with:
+ * indentation, line and block comments, trailing comments, string literals with escapes, long
+ * strings, runs of capitals and blank lines. Only printable ASCII is used so that every bundled
+ * keyboard layout can type the result. The same size and seed always produce the same text.
+ *
+ * @author Glossawy
+ */
+public final class LuaCorpus {
+
+    /**
+     * Seed used unless one is given, so that results are comparable across runs
+     */
+    public static final long DEFAULT_SEED = 0xCC5EEDL;
+
+    private static final String[] NAMES = {"turtle", "rednet", "term", "peripheral", "fs", "os", "textutils", "colors", "shell", "http"};
+    private static final String[] CALLS = {"forward", "turnLeft", "dig", "open", "write", "setCursorPos", "wrap", "exists", "pullEvent", "serialize"};
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("and", "break", "do", "else", "elseif", "end", "false",
+            "for", "function", "goto", "if", "in", "local", "nil", "not", "or", "repeat", "return", "then", "true", "until", "while"));
+    private static final String WORDS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private LuaCorpus() {
+    }
+
+    public static String generate(int bytes) {
+        return generate(bytes, DEFAULT_SEED);
+    }
+
+    /**
+     * @param bytes Size of the program, the result ends with the last whole statement that fits
+     * @param seed  Seed of the generator
+     * @return A Lua program of at most the given size
+     */
+    public static String generate(int bytes, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder sb = new StringBuilder(bytes + 256);
+        int function = 0;
+
+        while (sb.length() < bytes) {
+            final int mark = sb.length();
+            function(sb, random, function++);
+            if (sb.length() > bytes) {
+                sb.setLength(mark);
+                break;
+            }
+        }
+
+        // Fill whatever is left with short statements
+        while (true) {
+            final int mark = sb.length();
+            sb.append("x").append(random.nextInt(1000)).append(" = ").append(random.nextInt(100000)).append('\n');
+            if (sb.length() > bytes) {
+                sb.setLength(mark);
+                break;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static void function(StringBuilder sb, Random random, int index) {
+        final String module = NAMES[random.nextInt(NAMES.length)];
+
+        if (random.nextInt(4) == 0) {
+            sb.append("--[[\n");
+            for (int i = random.nextInt(4) + 1; i > 0; i--)
+                sb.append("  ").append(words(random, 8)).append('\n');
+            sb.append("]]\n");
+        } else {
+            sb.append("-- ").append(words(random, 6)).append('\n');
+        }
+
+        sb.append("local function handler").append(index).append("(self, ...)\n");
+        for (int i = random.nextInt(12) + 4; i > 0; i--) {
+            sb.append(indent(random.nextInt(3) + 1));
+
+            switch (random.nextInt(7)) {
+                case 0:
+                    sb.append("local ").append(word(random)).append(" = \"").append(words(random, 4)).append("\\n\\\"").append(word(random)).append("\\\"\"");
+                    break;
+                case 1:
+                    sb.append(module).append('.').append(CALLS[random.nextInt(CALLS.length)]).append('(').append(random.nextInt(64)).append(", '").append(word(random)).append("')");
+                    break;
+                case 2:
+                    sb.append("if ").append(word(random)).append(" ~= nil and #").append(word(random)).append(" > ").append(random.nextInt(10)).append(" then return end");
+                    break;
+                case 3:
+                    sb.append("local t = { ").append(word(random)).append(" = ").append(random.nextInt(1000)).append(", [\"").append(word(random).toUpperCase()).append("\"] = true }");
+                    break;
+                case 4:
+                    sb.append("local s = [[").append(words(random, 5)).append("]]");
+                    break;
+                case 5:
+                    sb.append("print(\"").append(word(random).toUpperCase()).append(": \" .. tostring(").append(word(random)).append("))");
+                    break;
+                default:
+                    sb.append("for i = 1, ").append(random.nextInt(256)).append(" do ").append(word(random)).append("[i] = i * 2 end");
+                    break;
+            }
+
+            if (random.nextInt(5) == 0)
+                sb.append("  -- ").append(words(random, 3));
+            sb.append('\n');
+        }
+
+        sb.append("end\n");
+        if (random.nextBoolean())
+            sb.append('\n');
+    }
+
+    private static String indent(int depth) {
+        final StringBuilder sb = new StringBuilder(depth * 4);
+        for (int i = 0; i < depth; i++)
+            sb.append("    ");
+        return sb.toString();
+    }
+
+    private static String words(Random random, int max) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(max) + 1; i > 0; i--) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(word(random));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A random identifier, never a Lua keyword
+     */
+    private static String word(Random random) {
+        while (true) {
+            final char[] chars = new char[random.nextInt(8) + 2];
+            chars[0] = (char) ('a' + random.nextInt(26));
+            for (int i = 1; i < chars.length; i++)
+                chars[i] = WORDS.charAt(random.nextInt(WORDS.length()));
+
+            final String word = new String(chars);
+            if (!KEYWORDS.contains(word))
+                return word;
+        }
+    }
+}
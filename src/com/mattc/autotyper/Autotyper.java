@@ -13,15 +13,33 @@ import com.mattc.autotyper.gui.GuiAccessor;
 import com.mattc.autotyper.gui.fx.FXAutotyperWindow;
 import com.mattc.autotyper.gui.fx.FXGuiUtils;
 import com.mattc.autotyper.gui.fx.WebLink;
+import com.mattc.autotyper.minify.Minifier;
+import com.mattc.autotyper.robot.CharacterScanner;
+import com.mattc.autotyper.robot.Hotkeys;
+import com.mattc.autotyper.robot.KeyLayout;
+import com.mattc.autotyper.robot.KeyProgram;
+import com.mattc.autotyper.robot.KeyTiming;
 import com.mattc.autotyper.robot.Keyboard;
+import com.mattc.autotyper.robot.KeyboardBackend;
+import com.mattc.autotyper.robot.KeyboardBackends;
 import com.mattc.autotyper.robot.KeyboardMethodology;
+import com.mattc.autotyper.robot.KeystrokeCompiler;
+import com.mattc.autotyper.robot.KeystrokeCostModel;
+import com.mattc.autotyper.robot.RecordingBackend;
+import com.mattc.autotyper.robot.SyncPolicy;
+import com.mattc.autotyper.robot.Transliteration;
+import com.mattc.autotyper.robot.TypingJournal;
+import com.mattc.autotyper.robot.TypingLedger;
+import com.mattc.autotyper.robot.TypingPipeline;
 import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.Countdown;
 import com.mattc.autotyper.util.IOUtils;
 import com.mattc.autotyper.util.OS;
 import org.jnativehook.GlobalScreen;
 import org.jnativehook.NativeHookException;
 import org.jnativehook.keyboard.NativeKeyListener;
 
+import javax.script.ScriptException;
 import javax.swing.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -29,7 +47,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Main Class of the Application meant to allow Minecraft Players who use
@@ -73,13 +99,63 @@ public class Autotyper {
         } else {
             printCopyrightStatement(false);
             final Parameters params = parseArgs(args);
-            final Keyboard keys = Keyboard.retrieveKeyboard(KeyboardMethodology.TYPING);
-            keys.setInputDelay(params.inputDelay);
+            if (params.dryRun) {
+                try {
+                    dryRun(params);
+                } catch (IOException e) {
+                    Console.exception(e);
+                }
+                return;
+            }
+
+            // Everything from here to typing is done during the countdown
+            final Countdown countdown = new Countdown(params.waitTime);
+            final Keyboard keys = countdown.phase("keyboard", () -> Keyboard.retrieveKeyboard(params.method, params.layout, params.backend));
+            keys.setTiming(params.timing);
+            keys.setSyncPolicy(params.sync);
+            keys.setHotkeys(params.hotkeys);
             final File f = params.file;
 
             try {
-                IOUtils.sleep(params.waitTime);
-                keys.typeFile(f);
+                if (params.url != null) {
+                    if (params.target != null)
+                        Console.warn("Only local files can be patched, typing all of " + params.url);
+
+                    // Typing starts as soon as the first lines arrive, the rest downloads while typing
+                    try (TypingJournal journal = TypingJournal.open(params.url, params.resume);
+                         TypingPipeline pipeline = countdown.phase("connect", () -> TypingPipeline.start(params.url.toString(), Channels.newChannel(Downloader.openStream(params.url)), params.layout))) {
+                        keys.setJournal(journal);
+                        countdown.await();
+                        keys.typeStream(pipeline);
+                        update(params.target, null, journal);
+                    }
+                } else {
+                    // Every character is checked before typing, not only those up to the first that can not be typed
+                    final File source = countdown.phase("scan", () -> CharacterScanner.preflight(f.toPath(), params.layout, params.transliteration).toFile());
+                    final KeyProgram program = Keyboard.isStreamed(source) ? null : countdown.phase("compile", () -> keys.compile(source));
+                    final KeyProgram patch = program == null || params.target == null || params.resume != null ? null
+                            : countdown.phase("delta", () -> TypingLedger.delta(params.target, program, params.layout, new KeystrokeCostModel(params.method, params.timing)));
+
+                    // A patch only makes sense for what edit holds now, it can not be resumed
+                    try (TypingJournal journal = patch == null ? TypingJournal.open(f.toURI().toURL(), params.resume) : beginPatch(f)) {
+                        keys.setJournal(journal);
+
+                        KeyProgram typed = patch == null ? program : patch;
+                        if (patch == null && typed != null && journal != null)
+                            typed = journal.skip(typed);
+                        countdown.await();
+
+                        if (typed == null)
+                            keys.typeFile(source);
+                        else
+                            keys.typeProgram(typed);
+
+                        update(params.target, program, journal);
+                    }
+                }
+
+                if (params.backend instanceof RecordingBackend)
+                    Console.info(params.backend);
             } catch (IOException e) {
                 Console.exception(e);
             } finally {
@@ -88,6 +164,94 @@ public class Autotyper {
         }
     }
 
+    /**
+     * Estimate typing the source as it is, stripped of comments and whitespace, minified and, if there is
+     * a target, patched, reporting what every step saves.
+     */
+    private static void dryRun(Parameters params) throws IOException {
+        final File file;
+        if (params.url == null) {
+            file = params.file;
+        } else {
+            final Path downloaded = Downloader.getFile(params.url);
+            if (downloaded == null)
+                throw new IOException("Could not download " + params.url);
+            file = downloaded.toFile();
+        }
+
+        final String text = IOUtils.fileToString(file, StandardCharsets.UTF_8);
+        final KeystrokeCompiler compiler = new KeystrokeCompiler(params.layout);
+        final KeystrokeCostModel model = new KeystrokeCostModel(params.method, params.timing);
+
+        Console.info(String.format("Dry run of %s, %s with %s", params.url == null ? file : params.url, params.method, params.timing));
+        final CharacterScanner.Report report = CharacterScanner.scan(text, params.layout, params.transliteration);
+        if (!report.isTypable()) {
+            for (final CharacterScanner.Problem problem : report.getProblems())
+                Console.warn(file.getName() + ":" + problem);
+            Console.warn(String.format("\t%-8s : %s", "Scan", report));
+            return;
+        } else if (report.getReplaced() > 0) {
+            Console.info(String.format("\t%-8s : %s", "Scan", report));
+        }
+
+        final String source = report.apply(text);
+        final KeystrokeCostModel.Estimate raw = model.estimate(source, params.layout);
+        estimated("As is", raw, null, null);
+
+        final KeyProgram program = compiler.compile(source);
+        final KeystrokeCostModel.Estimate stripped = model.estimate(program);
+        estimated("Stripped", stripped, "as is", raw);
+
+        try {
+            estimated("Minified", model.estimate(compiler.compile(Minifier.minify(source))), "stripped", stripped);
+        } catch (ScriptException | RuntimeException | LinkageError e) {
+            Console.warn("Could not minify " + file.getName() + ": " + e);
+        }
+
+        if (params.target != null) {
+            final KeyProgram patch = TypingLedger.delta(params.target, program, params.layout, model);
+            if (patch != null)
+                estimated("Patched", model.estimate(patch), "stripped", stripped);
+        }
+    }
+
+    private static void estimated(String phase, KeystrokeCostModel.Estimate estimate, String baseName, KeystrokeCostModel.Estimate base) {
+        final String saved = base == null ? "" : String.format(", %.1f%% quicker than %s", estimate.savedOver(base) * 100, baseName);
+        Console.info(String.format("\t%-8s : %s%s", phase, estimate, saved));
+    }
+
+    /**
+     * Remember what was typed into the target once the whole program is typed, forget it otherwise.
+     *
+     * @param target  Name of the target, null if there is none
+     * @param program Program that was typed, null if it was streamed
+     * @param journal Journal of the session
+     */
+    private static void update(String target, KeyProgram program, TypingJournal journal) {
+        if (target == null)
+            return;
+
+        if (program != null && journal != null && journal.isFinished())
+            TypingLedger.record(target, program);
+        else
+            TypingLedger.forget(target);
+    }
+
+    /**
+     * Start the journal of typing a patch of a file, which only tracks whether it finished. Like
+     * {@link TypingJournal#open(URL, TypingJournal.Checkpoint)}, failing to journal never prevents typing.
+     *
+     * @return The journal, or null if it could not be started
+     */
+    private static TypingJournal beginPatch(File file) {
+        try {
+            return TypingJournal.begin(file.toURI(), false);
+        } catch (final IOException e) {
+            Console.warn("Could not journal typing, the target will be forgotten: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Take Arguments and parse flags as provided. Optional arguments are evaluated
      * in the order they are provided. Ideally none should conflict.
@@ -96,8 +260,20 @@ public class Autotyper {
      */
     private Parameters parseArgs(String[] args) {
 
-        File tmp;
-        int waitTime = Parameters.DEFAULT_WAIT, inputDelay = Parameters.DEFAULT_DELAY;
+        File tmp = null;
+        URL url = null;
+        TypingJournal.Checkpoint resume = null;
+        String target = null;
+        boolean dryRun = false;
+        Transliteration transliteration = Transliteration.NONE;
+        int optional = 2;
+        int waitTime = Parameters.DEFAULT_WAIT;
+        long inputDelay = TimeUnit.MILLISECONDS.toNanos(Parameters.DEFAULT_DELAY), holdDelay = -1, lineDelay = -1;
+        KeyLayout layout = KeyLayout.getDefault();
+        SyncPolicy sync = SyncPolicy.ADAPTIVE;
+        KeyboardMethodology method = KeyboardMethodology.TYPING;
+        Hotkeys hotkeys = Hotkeys.DEFAULT;
+        KeyboardBackend backend = null;
 
         Console.info("Received Arguments: " + Arrays.toString(args));
 
@@ -110,33 +286,136 @@ public class Autotyper {
 
                 break;
             case FLAG_URL:
-                tmp = Downloader.getFile(args[1]).toFile();
+                url = parseURL(args[1]);
                 break;
             case FLAG_PASTE:
-                tmp = Downloader.getPastebin(args[1]).toFile();
+                url = parseURL(String.format(Downloader.PASTEBIN_URL, args[1]));
+                break;
+            case FLAG_RESUME:
+                resume = readCheckpoint();
+                optional = 1;
+
+                final URI source = resume.getSource();
+                if ("file".equals(source.getScheme())) {
+                    tmp = new File(source);
+                    if (!tmp.exists()) throw new IllegalArgumentException("No File Found At " + tmp + " to resume!");
+                } else {
+                    url = parseURL(source.toString());
+                }
+
                 break;
             default:
-                tmp = null;
                 System.err.println("Invalid Arguments: " + Arrays.toString(args));
                 printUsage();
                 System.exit(-2);
         }
 
         // Parse Optional Arguments
-        for (int i = 2; i < args.length; i++) {
+        for (int i = optional; i < args.length; i++) {
             switch (args[i]) {
                 case FLAG_WAIT:
                     waitTime = Integer.parseInt(args[i + 1]) * 1000;
                     Console.debug("WaitTime set to " + waitTime + " milliseconds");
                     break;
                 case FLAG_INPUT_DELAY:
-                    inputDelay = Integer.parseInt(args[i + 1]);
-                    Console.debug("InputDelay set to " + inputDelay + " milliseconds");
+                    inputDelay = parseMillis(args[i + 1]);
+                    Console.debug("InputDelay set to " + args[i + 1] + " milliseconds");
+                    break;
+                case FLAG_HOLD_DELAY:
+                    holdDelay = parseMillis(args[i + 1]);
+                    Console.debug("HoldDelay set to " + args[i + 1] + " milliseconds");
+                    break;
+                case FLAG_LINE_DELAY:
+                    lineDelay = parseMillis(args[i + 1]);
+                    Console.debug("LineDelay set to " + args[i + 1] + " milliseconds");
+                    break;
+                case FLAG_LAYOUT:
+                    layout = KeyLayout.forName(args[i + 1]);
+                    Console.debug("Layout set to " + layout.name());
+                    break;
+                case FLAG_SYNC:
+                    sync = SyncPolicy.parse(args[i + 1]);
+                    Console.debug("Sync Policy set to " + sync);
+                    break;
+                case FLAG_METHOD:
+                    method = KeyboardMethodology.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                    Console.debug("Methodology set to " + method);
+                    break;
+                case FLAG_HOTKEYS:
+                    hotkeys = Hotkeys.parse(args[i + 1]);
+                    Console.debug("Hotkeys set to " + hotkeys);
+                    break;
+                case FLAG_BACKEND:
+                    backend = KeyboardBackends.create(args[i + 1]);
+                    Console.debug("Backend set to " + args[i + 1]);
+                    break;
+                case FLAG_TARGET:
+                    target = args[i + 1];
+                    Console.debug("Target set to " + target);
+                    break;
+                case FLAG_DRY_RUN:
+                    dryRun = true;
+                    Console.debug("Dry Run, nothing will be typed");
+                    break;
+                case FLAG_TRANSLITERATE:
+                    transliteration = readTransliteration(args[i + 1]);
+                    Console.debug("Transliteration set to " + transliteration);
                     break;
             }
         }
 
-        return new Parameters(waitTime, inputDelay, tmp);
+        final KeyTiming.Builder timing = new KeyTiming.Builder(KeyTiming.fromDelay(inputDelay, TimeUnit.NANOSECONDS));
+        if (holdDelay >= 0) {
+            // The hold time is part of the input delay, a plain key still takes the input delay in total
+            timing.pressHold(holdDelay, TimeUnit.NANOSECONDS);
+            timing.interKey(Math.max(inputDelay - holdDelay, 0), TimeUnit.NANOSECONDS);
+        }
+        if (lineDelay >= 0)
+            timing.postNewline(lineDelay, TimeUnit.NANOSECONDS);
+
+        return new Parameters(waitTime, timing.build(), sync, method, hotkeys, backend == null && !dryRun ? KeyboardBackends.createDefault() : backend, tmp, url, resume, target, dryRun, transliteration, layout);
+    }
+
+    private static TypingJournal.Checkpoint readCheckpoint() {
+        final TypingJournal.Checkpoint checkpoint;
+        try {
+            checkpoint = TypingJournal.read();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Could not read the last session: " + e.getMessage(), e);
+        }
+
+        if (checkpoint == null || !checkpoint.isResumable())
+            throw new IllegalArgumentException("There is no session to resume" + (checkpoint == null ? "!" : ", " + checkpoint));
+
+        Console.info("Resuming " + checkpoint);
+        return checkpoint;
+    }
+
+    private static Transliteration readTransliteration(String name) {
+        try {
+            return Transliteration.forName(name);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Could not read the transliteration " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static URL parseURL(String url) {
+        try {
+            return new URL(url);
+        } catch (final MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid URL " + url + "!", e);
+        }
+    }
+
+    /**
+     * Parse a possibly fractional number of milliseconds, i.e. "0.25", into nanoseconds.
+     */
+    private static long parseMillis(String value) {
+        final double millis = Double.parseDouble(value);
+        if (millis < 0 || Double.isNaN(millis) || Double.isInfinite(millis))
+            throw new IllegalArgumentException("Expected a non-negative number of milliseconds but got " + value);
+
+        return Math.round(millis * TimeUnit.MILLISECONDS.toNanos(1));
     }
 
     /**
@@ -195,16 +474,27 @@ public class Autotyper {
         System.out.println();
         System.out.println();
         System.out.println(Ref.APP_NAME + " | " + Ref.VERSION + " by " + Ref.AUTHOR);
-        System.out.println("Usage: java -jar ccautotyper.jar [file|url|paste|gui] <location> [-wait] [-inputDelay]");
+        System.out.println("Usage: java -jar ccautotyper.jar [file|url|paste|gui] <location> | resume [-wait] [-inDelay] [-holdDelay] [-lineDelay] [-layout] [-sync] [-method] [-hotkeys] [-backend] [-target] [-dryrun] [-translit]");
         System.out.println(String.format(std, FLAG_FILE) + " - Indicates the file is on the local filesystem");
         System.out.println(String.format(std, FLAG_URL) + " - Indicates the file must be downloaded");
         System.out.println(String.format(std, FLAG_PASTE) + " - Indicates the file is located on pastebin");
         System.out.println(String.format(std, FLAG_GUI) + " - Display GUI, No Other Parameters Required");
+        System.out.println(String.format(std, FLAG_RESUME) + " - Continue the last session where it stopped, No Location Required");
         System.out.println(String.format(std, "Location") + " - Either the path to the file, the url, or the pastebin code");
         System.out.println();
         System.out.println("\t[Optional Parameters -- Order Does Not Matter]");
         System.out.println(String.format(std, FLAG_WAIT) + "    - The Seconds the Autotyper should wait before typing. [Default: 10]");
-        System.out.println(String.format(std, FLAG_INPUT_DELAY) + " - The Millisecond Delay between Key Strokes [Default: 40]");
+        System.out.println(String.format(std, FLAG_INPUT_DELAY) + " - The Milliseconds taken to type each Key Stroke, may be fractional [Default: 40]");
+        System.out.println(String.format(std, FLAG_HOLD_DELAY) + " - The Milliseconds each Key is held down, part of the Input Delay [Default: 1/4 of the Input Delay]");
+        System.out.println(String.format(std, FLAG_LINE_DELAY) + " - The Milliseconds to wait after each new line [Default: Input Delay]");
+        System.out.println(String.format(std, FLAG_LAYOUT) + "  - The Keyboard Layout to type with " + Arrays.toString(KeyLayout.BUNDLED_LAYOUTS) + " [Default: Based on Locale]");
+        System.out.println(String.format(std, FLAG_SYNC) + "   - When to wait for Key Events to be processed: never, line, adaptive or every N events [Default: adaptive]");
+        System.out.println(String.format(std, FLAG_METHOD) + " - How to transfer the file: typing key by key, or paste line by line [Default: typing]");
+        System.out.println(String.format(std, FLAG_HOTKEYS) + " - Rebind hotkeys as action=chord, i.e. pause=ctrl+alt+p,slower=none " + Hotkeys.DEFAULT);
+        System.out.println(String.format(std, FLAG_BACKEND) + " - Where key strokes are sent " + KeyboardBackends.names() + " [Default: robot]");
+        System.out.println(String.format(std, FLAG_TARGET) + "  - Name of the file typed into, only what changed since it was last typed is typed [Default: Type everything]");
+        System.out.println(String.format(std, FLAG_DRY_RUN) + "  - Estimate how long typing takes and what stripping and minifying saves, without typing");
+        System.out.println(String.format(std, FLAG_TRANSLITERATE) + " - Replace characters the layout can not type: none, default (quotes, dashes and spaces) or a properties file [Default: none]");
         System.out.println();
         System.out.println("\tExample:");
         System.out.println("\t\t" + Strings.EXAMPLE_EXECUTION);
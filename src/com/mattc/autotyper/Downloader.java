@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -34,10 +35,15 @@ import java.util.stream.Collectors;
 public class Downloader {
 
     public static final String PASTEBIN_URL = "http://www.pastebin.com/raw.php?i=%s";
-    private static final Path CACHE_DIR = Paths.get(".cctyper-cache");
+    public static final Path CACHE_DIR = Paths.get(".cctyper-cache");
     private static final Path CACHE_HASHES = CACHE_DIR.resolve(".hashes");
     private static final Properties hashProps = new Properties();
 
+    /**
+     * Milliseconds to wait for a connection and for every read before a download is given up on
+     */
+    public static final int CONNECT_TIMEOUT = 15000, READ_TIMEOUT = 30000;
+
     private static final FileAttribute<Set<PosixFilePermission>> FILE_PERMS = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-rw-rw-"));
 
     static {
@@ -49,6 +55,21 @@ public class Downloader {
         }
     }
 
+    /**
+     * Open a URL for reading, failing rather than waiting forever if the server stops responding.
+     *
+     * @param url URL to read
+     * @return Stream of the content
+     * @throws IOException If the connection could not be opened, see {@link #CONNECT_TIMEOUT} and
+     *                     {@link #READ_TIMEOUT}
+     */
+    public static InputStream openStream(URL url) throws IOException {
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection.getInputStream();
+    }
+
     /**
      * Retrieve raw text file of Pastebin using the given Paste Code.
      *
@@ -109,7 +130,7 @@ public class Downloader {
 
             try {
                 Console.info("Downloading " + filename + " of " + url + "...");
-                bis = new BufferedInputStream(url.openStream());
+                bis = new BufferedInputStream(openStream(url));
                 out = Files.newOutputStream(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
                 final OS.MemoryUnit unit = OS.MemoryUnit.KILOBYTES;
                 final byte[] buf = new byte[8192];
@@ -152,7 +173,7 @@ public class Downloader {
 
             try {
                 Console.info("Downloading " + filename + " of " + url + "...");
-                bis = new BufferedInputStream(url.openStream());
+                bis = new BufferedInputStream(openStream(url));
                 out = Files.newOutputStream(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
                 final OS.MemoryUnit unit = OS.MemoryUnit.KILOBYTES;
                 final byte[] buf = new byte[8192];
@@ -244,7 +265,10 @@ public class Downloader {
         IOUtils.doThenClose(is, hashProps::load);
     }
 
-    private static long hash(Path file) {
+    /**
+     * @return The first 64 bits of the SHA-1 hash of a file's contents
+     */
+    static long hash(Path file) {
         try {
             return com.google.common.io.Files.hash(file.toFile(), Hashing.sha1()).asLong();
         } catch (IOException e) {
@@ -1,6 +1,16 @@
 package com.mattc.autotyper;
 
+import com.mattc.autotyper.robot.Hotkeys;
+import com.mattc.autotyper.robot.KeyLayout;
+import com.mattc.autotyper.robot.KeyTiming;
+import com.mattc.autotyper.robot.KeyboardBackend;
+import com.mattc.autotyper.robot.KeyboardMethodology;
+import com.mattc.autotyper.robot.SyncPolicy;
+import com.mattc.autotyper.robot.Transliteration;
+import com.mattc.autotyper.robot.TypingJournal;
+
 import java.io.File;
+import java.net.URL;
 
 /**
  * Simple Parameter Definition Wrapper
@@ -13,13 +23,49 @@ public class Parameters {
     public static final int MIN_WAIT = 1;
     public static final int MIN_DELAY = 1;
 
-    public final int waitTime, inputDelay;
+    public final int waitTime;
+    public final KeyTiming timing;
+    public final SyncPolicy sync;
+    public final KeyboardMethodology method;
+    public final Hotkeys hotkeys;
+    public final KeyboardBackend backend;
     public final File file;
+    /**
+     * Remote location to stream from instead of {@link #file}, null if the file is local
+     */
+    public final URL url;
+    /**
+     * Checkpoint of the session being resumed, null if typing from the start
+     */
+    public final TypingJournal.Checkpoint resume;
+    /**
+     * Name of what is being typed into, to only type what changed since the last time, null to always type everything
+     */
+    public final String target;
+    /**
+     * Only estimate what typing would take, without typing
+     */
+    public final boolean dryRun;
+    /**
+     * Replacements for characters the layout can not type
+     */
+    public final Transliteration transliteration;
+    public final KeyLayout layout;
 
-    protected Parameters(int waitTime, int inputDelay, File file) {
+    protected Parameters(int waitTime, KeyTiming timing, SyncPolicy sync, KeyboardMethodology method, Hotkeys hotkeys, KeyboardBackend backend, File file, URL url, TypingJournal.Checkpoint resume, String target, boolean dryRun, Transliteration transliteration, KeyLayout layout) {
         this.waitTime = Math.max(waitTime, MIN_WAIT);
-        this.inputDelay = Math.max(inputDelay, MIN_DELAY);
+        this.timing = timing;
+        this.sync = sync;
+        this.method = method;
+        this.hotkeys = hotkeys;
+        this.backend = backend;
         this.file = file;
+        this.url = url;
+        this.resume = resume;
+        this.target = target;
+        this.dryRun = dryRun;
+        this.transliteration = transliteration;
+        this.layout = layout;
     }
 
 }
@@ -29,9 +29,20 @@ public class Strings {
     public static final String FLAG_FILE = "file";
     public static final String FLAG_URL = "url";
     public static final String FLAG_PASTE = "paste";
+    public static final String FLAG_RESUME = "resume";
 
     public static final String FLAG_WAIT = "-wait";
     public static final String FLAG_INPUT_DELAY = "-inDelay";
+    public static final String FLAG_HOLD_DELAY = "-holdDelay";
+    public static final String FLAG_LINE_DELAY = "-lineDelay";
+    public static final String FLAG_LAYOUT = "-layout";
+    public static final String FLAG_SYNC = "-sync";
+    public static final String FLAG_METHOD = "-method";
+    public static final String FLAG_HOTKEYS = "-hotkeys";
+    public static final String FLAG_BACKEND = "-backend";
+    public static final String FLAG_TARGET = "-target";
+    public static final String FLAG_DRY_RUN = "-dryrun";
+    public static final String FLAG_TRANSLITERATE = "-translit";
 
     public static final String EXAMPLE_EXECUTION = "java -jar ccautotyper.jar paste JCR8YTww -inDelay 10 -wait 5";
 
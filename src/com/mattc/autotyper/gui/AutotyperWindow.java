@@ -8,10 +8,14 @@ import com.mattc.autotyper.Strings;
 import com.mattc.autotyper.Strings.Resources;
 import com.mattc.autotyper.Strings.Resources.Resource;
 import com.mattc.autotyper.meta.Outcome;
+import com.mattc.autotyper.robot.CharacterScanner;
+import com.mattc.autotyper.robot.KeyProgram;
 import com.mattc.autotyper.robot.Keyboard;
 import com.mattc.autotyper.robot.KeyboardMethodology;
+import com.mattc.autotyper.robot.Transliteration;
+import com.mattc.autotyper.robot.TypingJournal;
 import com.mattc.autotyper.util.Console;
-import com.mattc.autotyper.util.IOUtils;
+import com.mattc.autotyper.util.Countdown;
 import org.fife.ui.autocomplete.AutoCompletion;
 import org.fife.ui.autocomplete.BasicCompletion;
 import org.fife.ui.autocomplete.Completion;
@@ -33,8 +37,11 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Timer;
@@ -62,6 +69,7 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
     private int pointer = 0;
 
     private boolean doConfirm;
+    private boolean resumeRequested;
     private int waitTime, inDelay;
     private MetaButtonGroup group;
 
@@ -120,6 +128,7 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
         final JRadioButton paste = new JRadioButton("Pastebin Code");
         final JRadioButton auto = new JRadioButton("Auto Detect");
         final JButton type = new JButton("Start");
+        final JButton resumeButton = new JButton("Resume");
 
         radioPanel.setLayout(new FlowLayout(FlowLayout.LEFT, 10, 0));
 
@@ -164,6 +173,13 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
         radioPanel.add(paste);
         radioPanel.add(auto);
         radioPanel.add(type);
+        radioPanel.add(resumeButton);
+        resumeButton.setToolTipText("Continue the last session from the line it stopped at.");
+        resumeButton.setEnabled(canResume());
+        resumeButton.addActionListener((e) -> {
+            AutotyperWindow.this.resumeRequested = true;
+            type.doClick();
+        });
 
         inputPanel.add(lField);
         inputPanel.add(radioPanel);
@@ -241,13 +257,18 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
             @Override
             public void actionPerformed(ActionEvent e) {
                 final String text = lField.getText().trim();
+                final boolean resuming = AutotyperWindow.this.resumeRequested;
+                AutotyperWindow.this.resumeRequested = false;
 
-                if (isGhostText(lField) || (text.length() == 0)) {
-                    showError("You must provide some kind of location!");
-                    return;
-                } else if ((this.prevThread != null) && this.prevThread.isAlive()) {
+                if ((this.prevThread != null) && this.prevThread.isAlive()) {
                     showError("Can Only Autotype one File at a Time!");
                     return;
+                } else if (resuming) {
+                    resume();
+                    return;
+                } else if (isGhostText(lField) || (text.length() == 0)) {
+                    showError("You must provide some kind of location!");
+                    return;
                 } else {
                     LocationHandler handler;
                     Outcome outcome;
@@ -275,13 +296,19 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
                         Console.debug(outcome);
                         showError(outcome.reason);
                     } else {
-                        final File file = handler.handle(text).toFile();
                         try {
+                            final Countdown.Phase<File, IOException> source;
 
                             // Confirmation Check, Uses Swing
                             if (AutotyperWindow.this.doConfirm) {
+                                final File file = obtain(handler, text);
                                 final ConfirmFileDialog dialog = new ConfirmFileDialog(AutotyperWindow.this, file);
                                 if (!dialog.isApproved()) return;
+
+                                source = () -> file;
+                            } else {
+                                // Downloaded during the countdown instead
+                                source = () -> obtain(handler, text);
                             }
 
                             // Pre-Typing Prompt
@@ -289,7 +316,7 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
                             if (ok) {
                                 // Block Input and Execute Typing on Separate Thread
                                 setInput(false);
-                                this.prevThread = makeExecutionThread(file);
+                                this.prevThread = makeExecutionThread(handler.location(text), source, null);
                                 this.prevThread.start();
                                 toBack();
                                 saveToHistory(text);
@@ -305,24 +332,102 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
             }
 
             /**
-             * Handles a Singular Autotyping Operation
+             * Type the source of the last session again, starting after the last
+             * line it typed.
+             */
+            private void resume() {
+                final TypingJournal.Checkpoint checkpoint;
+                try {
+                    checkpoint = TypingJournal.read();
+                } catch (final IOException e1) {
+                    Console.exception(e1);
+                    showError("Could not read the last session: " + e1.getMessage());
+                    return;
+                }
+
+                if ((checkpoint == null) || !checkpoint.isResumable()) {
+                    showError("There is no session to resume!");
+                    resumeButton.setEnabled(false);
+                    return;
+                }
+
+                final URI source = checkpoint.getSource();
+                final URL location;
+                try {
+                    location = source.toURL();
+                } catch (final MalformedURLException | IllegalArgumentException e1) {
+                    Console.exception(e1);
+                    showError("Cannot resume " + source + ": " + e1.getMessage());
+                    return;
+                }
+
+                final Countdown.Phase<File, IOException> obtain;
+                if ("file".equals(source.getScheme()))
+                    obtain = () -> new File(source);
+                else
+                    obtain = () -> obtain(LocationHandler.URL, source.toString());
+
+                if (showPrompt(String.format("Resume %s after line %,d in %d seconds?", source, checkpoint.lineNumber(), AutotyperWindow.this.waitTime / 1000))) {
+                    setInput(false);
+                    this.prevThread = makeExecutionThread(location, obtain, checkpoint);
+                    this.prevThread.start();
+                    toBack();
+                }
+            }
+
+            private File obtain(LocationHandler handler, String text) throws IOException {
+                final Path path = handler.handle(text);
+                if (path == null)
+                    throw new IOException("Could not obtain " + text + "!");
+
+                return path.toFile();
+            }
+
+            /**
+             * Handles a Singular Autotyping Operation, the source is obtained and
+             * compiled during the countdown.
              *
-             * @param file
+             * @param location Location the user entered, the session is journaled under it
+             * @param source   Obtains the file to type, i.e. a download of the location
+             * @param resume   The session to resume, null to type from the start
              * @return
              */
-            private Thread makeExecutionThread(final File file) {
+            private Thread makeExecutionThread(final URL location, final Countdown.Phase<File, IOException> source, final TypingJournal.Checkpoint resume) {
                 return new Thread(new Runnable() {
                     @Override
                     public void run() {
                         try {
+                            final Countdown countdown = new Countdown(AutotyperWindow.this.waitTime);
                             AutotyperWindow.this.keys.setInputDelay(AutotyperWindow.this.inDelay);
-                            IOUtils.sleep(AutotyperWindow.this.waitTime);
-                            AutotyperWindow.this.keys.typeFile(file);
+                            final File file = countdown.phase("prepare", source);
+                            countdown.phase("scan", () -> CharacterScanner.preflight(file.toPath(), AutotyperWindow.this.keys.getLayout(), Transliteration.NONE));
+
+                            try (TypingJournal journal = TypingJournal.open(location, resume)) {
+                                AutotyperWindow.this.keys.setJournal(journal);
+
+                                KeyProgram program = Keyboard.isStreamed(file) ? null : countdown.phase("compile", () -> AutotyperWindow.this.keys.compile(file));
+                                if ((program != null) && (journal != null))
+                                    program = journal.skip(program);
+                                countdown.await();
+
+                                if (program == null)
+                                    AutotyperWindow.this.keys.typeFile(file);
+                                else
+                                    AutotyperWindow.this.keys.typeProgram(program);
+                            } finally {
+                                AutotyperWindow.this.keys.setJournal(null);
+                            }
+
                             setInput(true);
                             showMessage("Finished typing " + lField.getText() + "!");
                         } catch (final IOException ex) {
                             Console.exception(ex);
                             showError("Failure to Autotype, Exception of type " + ex.getClass() + " occurred...");
+                        } catch (final IllegalArgumentException ex) {
+                            // Nothing was typed, the source can not be typed with this layout
+                            Console.exception(ex);
+                            setInput(true);
+                            showError(ex.getMessage());
                         }
                     }
                 }, "TYPER");
@@ -334,6 +439,7 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
              * @param state
              */
             private void setInput(boolean state) {
+                resumeButton.setEnabled(state && canResume());
                 lField.setEnabled(state);
                 wField.setEnabled(state);
                 iField.setEnabled(state);
@@ -522,6 +628,19 @@ public class AutotyperWindow extends JFrame implements GuiAccessor {
         JOptionPane.showMessageDialog(this, message, "Autotyper Error", JOptionPane.ERROR_MESSAGE);
     }
 
+    /**
+     * @return true if the last session was stopped before it was done
+     */
+    private static boolean canResume() {
+        try {
+            final TypingJournal.Checkpoint checkpoint = TypingJournal.read();
+            return (checkpoint != null) && checkpoint.isResumable();
+        } catch (final IOException e) {
+            Console.debug(e);
+            return false;
+        }
+    }
+
     private boolean showPrompt(String message) {
         final int val = JOptionPane.showConfirmDialog(this, message, "Autotyper Prompt", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
         return val == JOptionPane.YES_OPTION;
@@ -44,6 +44,15 @@ public enum LocationHandler {
             else
                 return new Outcome(this, reason, false, new FileNotFoundException(reason));
         }
+
+        @Override
+        public java.net.URL location(String text) {
+            try {
+                return Paths.get(text).toUri().toURL();
+            } catch (final MalformedURLException e) {
+                throw new RuntimeException(String.format("File '%s' has no URL!", text), e);
+            }
+        }
     },
     URL("Web URL:") {
         @Override
@@ -52,7 +61,16 @@ public enum LocationHandler {
                 final java.net.URL url = new java.net.URL(text);
                 return Downloader.getFile(url);
             } catch (final MalformedURLException e) {
-                throw new RuntimeException(String.format("URL '%s' is invalid! Please use the canHandle Method before handle!", e));
+                throw new RuntimeException(String.format("URL '%s' is invalid! Please use the canHandle Method before handle!", text), e);
+            }
+        }
+
+        @Override
+        public java.net.URL remote(String text) {
+            try {
+                return new java.net.URL(text);
+            } catch (final MalformedURLException e) {
+                throw new RuntimeException(String.format("URL '%s' is invalid! Please use the canHandle Method before remote!", text), e);
             }
         }
 
@@ -83,6 +101,15 @@ public enum LocationHandler {
             return Downloader.getPastebin(text);
         }
 
+        @Override
+        public java.net.URL remote(String text) {
+            try {
+                return new java.net.URL(String.format(Downloader.PASTEBIN_URL, text));
+            } catch (final MalformedURLException e) {
+                throw new RuntimeException(String.format("Pastebin Code '%s' is invalid! Please use the canHandle Method before remote!", text), e);
+            }
+        }
+
         @Override
         public Outcome canHandle(String text) {
             final String urlStr = String.format(Downloader.PASTEBIN_URL, text);
@@ -129,6 +156,29 @@ public enum LocationHandler {
      */
     abstract public Outcome canHandle(String text);
 
+    /**
+     * Take Location and determine where it can be streamed from without downloading
+     * it first, see {@link com.mattc.autotyper.robot.TypingPipeline TypingPipeline}.
+     *
+     * @param text
+     * @return The remote location, or null if the location is local
+     */
+    public java.net.URL remote(String text) {
+        return null;
+    }
+
+    /**
+     * Take Location and determine the URL it is known by, whether it is local or remote. Typing
+     * sessions are journaled under this location rather than the file that is typed, which may be
+     * a downloaded or minified copy.
+     *
+     * @param text
+     * @return The location as a URL
+     */
+    public java.net.URL location(String text) {
+        return remote(text);
+    }
+
     public String tag() {
         return tag;
     }
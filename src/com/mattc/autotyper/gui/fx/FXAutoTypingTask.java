@@ -3,10 +3,20 @@ package com.mattc.autotyper.gui.fx;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.concurrent.Task;
+import com.mattc.autotyper.Downloader;
+import com.mattc.autotyper.robot.CharacterScanner;
+import com.mattc.autotyper.robot.KeyProgram;
 import com.mattc.autotyper.robot.Keyboard;
-import com.mattc.autotyper.util.IOUtils;
+import com.mattc.autotyper.robot.Transliteration;
+import com.mattc.autotyper.robot.TypingJournal;
+import com.mattc.autotyper.robot.TypingPipeline;
+import com.mattc.autotyper.util.Countdown;
 
+import java.io.File;
+import java.net.URL;
+import java.nio.channels.Channels;
 import java.nio.file.Path;
+import java.util.concurrent.Callable;
 
 /**
  * Needs Documentation
@@ -17,13 +27,22 @@ import java.nio.file.Path;
 public class FXAutoTypingTask extends Task<Boolean> {
 
     private final Keyboard keys;
-    private final ObjectProperty<Path> file;
+    // Produces the file to type, called during the countdown
+    private final ObjectProperty<Callable<Path>> source;
+    private final ObjectProperty<URL> url;
+    // Location the session is journaled under
+    private final ObjectProperty<URL> location;
+    // The session being resumed, if any
+    private final ObjectProperty<TypingJournal.Checkpoint> resume;
     private final IntegerProperty wait, inputDelay;
     private final Runnable prestart;
 
-    public FXAutoTypingTask(Keyboard keys, ObjectProperty<Path> fileProperty, IntegerProperty wait, IntegerProperty inputDelay, Runnable prestart) {
+    public FXAutoTypingTask(Keyboard keys, ObjectProperty<Callable<Path>> sourceProperty, ObjectProperty<URL> urlProperty, ObjectProperty<URL> locationProperty, ObjectProperty<TypingJournal.Checkpoint> resumeProperty, IntegerProperty wait, IntegerProperty inputDelay, Runnable prestart) {
         this.keys = keys;
-        this.file = fileProperty;
+        this.source = sourceProperty;
+        this.url = urlProperty;
+        this.location = locationProperty;
+        this.resume = resumeProperty;
         this.wait = wait;
         this.inputDelay = inputDelay;
         this.prestart = prestart;
@@ -31,10 +50,40 @@ public class FXAutoTypingTask extends Task<Boolean> {
 
     @Override
     protected Boolean call() throws Exception {
+        final Countdown countdown = new Countdown(wait.get());
         prestart.run();
         keys.setInputDelay(inputDelay.get());
-        IOUtils.sleep(wait.get());
-        keys.typeFile(file.get().toFile());
-        return true;
+
+        // Remote locations are streamed, downloading during the countdown and while typing
+        final URL remote = url.get();
+        final File f = remote == null ? countdown.phase("prepare", source.get()::call).toFile() : null;
+        if (f != null)
+            countdown.phase("scan", () -> CharacterScanner.preflight(f.toPath(), keys.getLayout(), Transliteration.NONE));
+
+        try (TypingJournal journal = TypingJournal.open(location.get(), resume.get())) {
+            keys.setJournal(journal);
+
+            if (remote != null) {
+                try (TypingPipeline pipeline = countdown.phase("connect", () -> TypingPipeline.start(remote.toString(), Channels.newChannel(Downloader.openStream(remote)), keys.getLayout()))) {
+                    countdown.await();
+                    keys.typeStream(pipeline);
+                }
+
+                return true;
+            }
+
+            KeyProgram program = Keyboard.isStreamed(f) ? null : countdown.phase("compile", () -> keys.compile(f));
+            if (program != null && journal != null)
+                program = journal.skip(program);
+            countdown.await();
+
+            if (program == null)
+                keys.typeFile(f);
+            else
+                keys.typeProgram(program);
+            return true;
+        } finally {
+            keys.setJournal(null);
+        }
     }
 }
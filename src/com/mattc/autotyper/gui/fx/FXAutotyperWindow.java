@@ -15,6 +15,7 @@ import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -23,6 +24,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleButton;
@@ -56,15 +58,27 @@ import com.mattc.autotyper.gui.GuiAccessor;
 import com.mattc.autotyper.gui.LocationHandler;
 import com.mattc.autotyper.meta.Outcome;
 import com.mattc.autotyper.minify.Minifier;
+import com.mattc.autotyper.robot.KeyProgram;
+import com.mattc.autotyper.robot.KeyTiming;
 import com.mattc.autotyper.robot.Keyboard;
 import com.mattc.autotyper.robot.KeyboardMethodology;
+import com.mattc.autotyper.robot.KeystrokeCostModel;
+import com.mattc.autotyper.robot.TypingJournal;
 import com.mattc.autotyper.util.Console;
 import com.mattc.autotyper.util.OS;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.net.MalformedURLException;
+import java.net.URI;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
@@ -82,12 +96,25 @@ public class FXAutotyperWindow extends Application {
     private Keyboard keys;
     private Stage primaryStage;
 
-    private final ObjectProperty<Path> fileProperty = new SimpleObjectProperty<>();
+    private final ObjectProperty<Callable<Path>> sourceProperty = new SimpleObjectProperty<>();
+    private final ObjectProperty<URL> urlProperty = new SimpleObjectProperty<>();
+    // Location the user entered, journaled instead of the downloaded or minified copy that is typed
+    private final ObjectProperty<URL> locationProperty = new SimpleObjectProperty<>();
+    private final ObjectProperty<TypingJournal.Checkpoint> resumeProperty = new SimpleObjectProperty<>();
     private final IntegerProperty inputDelayProperty = new SimpleIntegerProperty(40);
     private final IntegerProperty waitTimeProperty = new SimpleIntegerProperty(5000);
     private final BooleanProperty minifyProperty = new SimpleBooleanProperty(false);
+    // Program of the local file in the location field, for the ETA
+    private final ObjectProperty<KeyProgram> estimateProperty = new SimpleObjectProperty<>();
+    private final ExecutorService estimator = Executors.newSingleThreadExecutor((r) -> {
+        final Thread thread = new Thread(r, "ESTIMATE");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile String estimating = "";
 
     private boolean doConfirm;
+    private boolean resumeRequested;
     private volatile boolean doSave = false;
     private int curRank;
 
@@ -120,14 +147,18 @@ public class FXAutotyperWindow extends Application {
             final HBox buttonBox = new HBox(10);
             final MetaToggleGroup btnGroup = new MetaToggleGroup();
             final Button startBtn = new Button("Start");
+            final Button resumeBtn = new Button("Resume");
             final RadioButton fileBtn = new RadioButton("File");
             final RadioButton urlBtn = new RadioButton("URL");
             final RadioButton pasteBtn = new RadioButton("Paste");
             final RadioButton autoBtn = new RadioButton("Auto");
             final CheckBox minifyBtn = new CheckBox("Minify Lua Code?");
+            final ProgressIndicator minifyProgress = new ProgressIndicator(0);
 
             minifyBtn.setTooltip(new TimedTooltip("Speed up autotyping by reducing character count.\nMay not be effective on *all* files.\n\nWill fail on non-Lua code.", 200));
             minifyBtn.selectedProperty().bindBidirectional(minifyProperty);
+            minifyProgress.setPrefSize(16, 16);
+            minifyProgress.setTooltip(new TimedTooltip("Preparing the minifier, minifying is slower until it is ready.", 200));
             MetaToggleGroup.addTogglesToGroup(btnGroup, fileBtn, Strings.GHOST_TEXT_FSELECT, urlBtn, Strings.GHOST_TEXT_USELECT, pasteBtn, Strings.GHOST_TEXT_PSELECT, autoBtn, Strings.GHOST_TEXT_ASELECT);
             btnGroup.putProperty(fileBtn, META_RANK, 1);
             btnGroup.putProperty(urlBtn, META_RANK, 2);
@@ -135,14 +166,27 @@ public class FXAutotyperWindow extends Application {
             btnGroup.putProperty(autoBtn, META_RANK, 4);
             btnGroup.setSelectedForProperty(META_RANK, this.curRank);
 
+            final HBox actionBox = new HBox(5, resumeBtn, startBtn);
+
             buttonStack.setAlignment(Pos.BASELINE_LEFT);
-            StackPane.setAlignment(startBtn, Pos.BASELINE_RIGHT);
+            actionBox.setAlignment(Pos.BASELINE_RIGHT);
+            actionBox.setPickOnBounds(false);
+            StackPane.setAlignment(actionBox, Pos.BASELINE_RIGHT);
 
             startBtn.setPrefSize(50, 20);
-            buttonBox.getChildren().addAll(fileBtn, urlBtn, pasteBtn, autoBtn, minifyBtn);
+            resumeBtn.setTooltip(new TimedTooltip("Continue the last session from the line it stopped at.", 200));
+            resumeBtn.setDisable(!canResume());
+            buttonBox.getChildren().addAll(fileBtn, urlBtn, pasteBtn, autoBtn, minifyBtn, minifyProgress);
+            buttonBox.setAlignment(Pos.CENTER_LEFT);
+
+            // Warm up the minifier in the background so the first file is minified at full speed
+            Minifier.warmUp((p) -> Platform.runLater(() -> minifyProgress.setProgress(p))).whenComplete((v, t) -> Platform.runLater(() -> {
+                minifyProgress.setVisible(false);
+                minifyProgress.setManaged(false);
+            }));
             buttonStack.setId("button-box");
             buttonStack.setPadding(new Insets(15, 25, 15, 25));
-            buttonStack.getChildren().addAll(buttonBox, startBtn);
+            buttonStack.getChildren().addAll(buttonBox, actionBox);
             startBtn.setDefaultButton(true);
 
             // Initialize the Grid
@@ -157,6 +201,7 @@ public class FXAutotyperWindow extends Application {
             final TextField wField = wBox.getInteractiveChild(0, TextField.class);
             final TextField iField = iBox.getInteractiveChild(0, TextField.class);
             final ToggleButton cBtn = cBox.getInteractiveChild(0, ToggleButton.class);
+            final Label etaLabel = new Label();
 
             wField.setPrefColumnCount(2);
             wField.setAlignment(Pos.CENTER);
@@ -215,17 +260,32 @@ public class FXAutotyperWindow extends Application {
 
             cBtn.selectedProperty().addListener((obs, oldValue, newValue) -> FXAutotyperWindow.this.doConfirm = newValue);
 
+            // Keep the ETA up to date with the location and the delay as they are typed
+            locField.textProperty().addListener((obs, ov, nv) -> estimate(nv.trim()));
+            estimateProperty.addListener((obs, ov, nv) -> etaLabel.setText(describeEstimate()));
+            inputDelayProperty.addListener((obs, ov, nv) -> etaLabel.setText(describeEstimate()));
+            minifyProperty.addListener((obs, ov, nv) -> etaLabel.setText(describeEstimate()));
+
+            resumeBtn.setOnAction((e) -> {
+                FXAutotyperWindow.this.resumeRequested = true;
+                startBtn.fire();
+            });
+
             startBtn.setOnAction(new EventHandler<ActionEvent>() {
                 Task<Boolean> typerTask;
 
                 @Override
                 public void handle(ActionEvent event) {
                     final String text = locField.getText().trim();
+                    final boolean resuming = FXAutotyperWindow.this.resumeRequested;
+                    FXAutotyperWindow.this.resumeRequested = false;
 
-                    if (text.length() == 0) {
-                        showError("Some Text Must be Entered!");
-                    } else if ((typerTask != null) && typerTask.isRunning()) {
+                    if ((typerTask != null) && typerTask.isRunning()) {
                         showError("Cannot run two simultaneous jobs! Please wait for the other to terminate...");
+                    } else if (resuming) {
+                        resume();
+                    } else if (text.length() == 0) {
+                        showError("Some Text Must be Entered!");
                     } else {
                         typerTask = makeTask();
                         btnGroup.getSelectedToggle();
@@ -260,43 +320,50 @@ public class FXAutotyperWindow extends Application {
                         if (outcome.isFailure()) {
                             showError(outcome.reason);
                         } else {
-                            Path file = handler.handle(textNoTag);
+                            // Remote files that are typed as-is are streamed rather than downloaded up front
+                            final URL remote = minifyProperty.get() || FXAutotyperWindow.this.doConfirm ? null : handler.remote(textNoTag);
                             try {
-                                if (minifyProperty.get()) {
-                                    boolean success = false;
-                                    try {
-                                        file = Minifier.minifyFileToCopy(file);
-                                        success = true;
-                                    } catch (Exception e) {
-                                        Console.exception(e);
+                                if (FXAutotyperWindow.this.doConfirm) {
+                                    // The file must be ready before it can be confirmed
+                                    Path file = handler.handle(textNoTag);
+                                    if (minifyProperty.get()) {
+                                        boolean success = false;
+                                        try {
+                                            file = Minifier.minifyFileToCopy(file);
+                                            success = true;
+                                        } catch (Exception e) {
+                                            Console.exception(e);
+                                        }
+
+                                        if (!success && !promptContinue("Minification Failed! Continue without minification?"))
+                                            return;
                                     }
 
-                                    if (!success && !promptContinue("Minification Failed! Continue without minification?"))
-                                        return;
-                                }
+                                    if (!approve(file)) return;
+
+                                    final Path approved = file;
+                                    sourceProperty.set(() -> approved);
+                                } else {
+                                    // Otherwise it is downloaded and minified during the countdown
+                                    final boolean minify = minifyProperty.get();
+                                    sourceProperty.set(() -> {
+                                        final Path file = handler.handle(textNoTag);
+                                        if (file == null)
+                                            throw new IOException("Could not obtain " + textNoTag + "!");
 
-                                if (FXAutotyperWindow.this.doConfirm) if (!approve(file)) return;
+                                        return minify ? Minifier.minifyFileToCopy(file) : file;
+                                    });
+                                }
 
-                                fileProperty.set(file);
+                                urlProperty.set(remote);
+                                locationProperty.set(handler.location(textNoTag));
+                                resumeProperty.set(null);
 
                                 int seconds = (FXAutotyperWindow.this.waitTimeProperty.get() / 1000);
-                                ButtonType[] types = new ButtonType[]{ButtonType.YES, ButtonType.NO};
-                                Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "Start Autotyping in " + seconds + " seconds?\n\nAll windows will be hidden until the task is complete...", types);
-                                alert.initOwner(FXAutotyperWindow.this.primaryStage);
-                                alert.initModality(Modality.APPLICATION_MODAL);
-                                alert.initStyle(StageStyle.DECORATED);
-
-                                alert.getDialogPane().setPrefSize(420, 200);
-
-                                alert.setOnHidden((e) -> {
-                                    if (alert.getResult() == ButtonType.YES) {
-                                        Platform.runLater(typerTask);
-                                        if (saveToHistory(textNoTag, handler.tag()))
-                                            locField.addData(handler.tag() + textNoTag);
-                                    }
+                                confirmStart("Start Autotyping in " + seconds + " seconds?", () -> {
+                                    if (saveToHistory(textNoTag, handler.tag()))
+                                        locField.addData(handler.tag() + textNoTag);
                                 });
-
-                                alert.show();
                             } catch (final Exception e1) {
                                 Console.exception(e1);
                             }
@@ -305,6 +372,85 @@ public class FXAutotyperWindow extends Application {
 
                 }
 
+                /**
+                 * Type the source of the last session again, starting after the last line it typed.
+                 */
+                private void resume() {
+                    final TypingJournal.Checkpoint checkpoint;
+                    try {
+                        checkpoint = TypingJournal.read();
+                    } catch (final IOException e) {
+                        Console.exception(e);
+                        showError("Could Not Read the Last Session:\n" + e.getMessage());
+                        return;
+                    }
+
+                    if (checkpoint == null || !checkpoint.isResumable()) {
+                        showError("There is no Session to Resume!");
+                        resumeBtn.setDisable(true);
+                        return;
+                    }
+
+                    final URI source = checkpoint.getSource();
+                    try {
+                        final URL location = source.toURL();
+                        final boolean local = "file".equals(source.getScheme());
+
+                        if (minifyProperty.get()) {
+                            // Minified again, so the lines match those typed before
+                            sourceProperty.set(() -> {
+                                final Path file = local ? Paths.get(source) : LocationHandler.URL.handle(source.toString());
+                                if (file == null)
+                                    throw new IOException("Could not obtain " + source + "!");
+
+                                return Minifier.minifyFileToCopy(file);
+                            });
+                            urlProperty.set(null);
+                        } else if (local) {
+                            final Path file = Paths.get(source);
+                            sourceProperty.set(() -> file);
+                            urlProperty.set(null);
+                        } else {
+                            sourceProperty.set(null);
+                            urlProperty.set(location);
+                        }
+
+                        locationProperty.set(location);
+                    } catch (final MalformedURLException | IllegalArgumentException e) {
+                        Console.exception(e);
+                        showError("Cannot Resume " + source + ":\n" + e.getMessage());
+                        return;
+                    }
+
+                    resumeProperty.set(checkpoint);
+                    typerTask = makeTask();
+
+                    int seconds = (FXAutotyperWindow.this.waitTimeProperty.get() / 1000);
+                    confirmStart(String.format("Resume %s after line %,d in %d seconds?", source, checkpoint.lineNumber(), seconds), () -> {});
+                }
+
+                /**
+                 * Ask whether to start typing, starting the task if so.
+                 */
+                private void confirmStart(String question, Runnable onStart) {
+                    ButtonType[] types = new ButtonType[]{ButtonType.YES, ButtonType.NO};
+                    Alert alert = new Alert(Alert.AlertType.CONFIRMATION, question + "\n\nAll windows will be hidden until the task is complete...", types);
+                    alert.initOwner(FXAutotyperWindow.this.primaryStage);
+                    alert.initModality(Modality.APPLICATION_MODAL);
+                    alert.initStyle(StageStyle.DECORATED);
+
+                    alert.getDialogPane().setPrefSize(420, 200);
+
+                    alert.setOnHidden((e) -> {
+                        if (alert.getResult() == ButtonType.YES) {
+                            Platform.runLater(typerTask);
+                            onStart.run();
+                        }
+                    });
+
+                    alert.show();
+                }
+
                 private void prestart() {
                     setInputDisabled(true);
                     primaryStage.hide();
@@ -333,6 +479,7 @@ public class FXAutotyperWindow extends Application {
                 }
 
                 private void setInputDisabled(boolean state) {
+                    resumeBtn.setDisable(state || !canResume());
                     locField.setDisable(state);
                     wField.setDisable(state);
                     iField.setDisable(state);
@@ -340,7 +487,7 @@ public class FXAutotyperWindow extends Application {
                 }
 
                 private Task<Boolean> makeTask() {
-                    Task<Boolean> task = new FXAutoTypingTask(keys, fileProperty, waitTimeProperty, inputDelayProperty, this::prestart);
+                    Task<Boolean> task = new FXAutoTypingTask(keys, sourceProperty, urlProperty, locationProperty, resumeProperty, waitTimeProperty, inputDelayProperty, this::prestart);
                     task.setOnSucceeded(this::onSuccess);
                     task.setOnFailed(this::onError);
 
@@ -356,6 +503,8 @@ public class FXAutotyperWindow extends Application {
             grid.add(iBox, 0, 1, 1, 1);
             grid.add(cBox, 0, 2, 1, 1);
             grid.add(locBox, 0, 3, 1, 1);
+            grid.add(etaLabel, 0, 4, 1, 1);
+            GridPane.setHalignment(etaLabel, HPos.CENTER);
             grid.setAlignment(Pos.CENTER);
 
             root.setTop(getMenuBar());
@@ -365,9 +514,9 @@ public class FXAutotyperWindow extends Application {
             final Scene scene;
 
             if (OS.get() == OS.WINDOWS) {
-                scene = new Scene(root, 450, 250);
+                scene = new Scene(root, 450, 270);
             } else {
-                scene = new Scene(root, 600, 250);
+                scene = new Scene(root, 600, 270);
             }
 
             scene.getStylesheets().add(Resources.getCSS("AutotyperWindow").url().toExternalForm());
@@ -566,6 +715,50 @@ public class FXAutotyperWindow extends Application {
         return false;
     }
 
+    /**
+     * Compile the location in the background if it is a local file, so the ETA can be shown.
+     * Compiled programs are cached, starting afterwards does not compile again.
+     */
+    private void estimate(String location) {
+        final String path = location.startsWith(LocationHandler.FILE.tag()) ? location.substring(LocationHandler.FILE.tag().length()) : location;
+        final File file = new File(path);
+        this.estimating = location;
+
+        if (path.isEmpty() || !file.isFile() || Keyboard.isStreamed(file)) {
+            estimateProperty.set(null);
+            return;
+        }
+
+        estimator.execute(() -> {
+            if (!location.equals(estimating))
+                return;
+
+            KeyProgram program = null;
+            try {
+                program = keys.compile(file);
+            } catch (final IOException | RuntimeException e) {
+                Console.debug("No ETA for " + file + ": " + e.getMessage());
+            }
+
+            final KeyProgram result = program;
+            Platform.runLater(() -> {
+                if (location.equals(estimating))
+                    estimateProperty.set(result);
+            });
+        });
+    }
+
+    private String describeEstimate() {
+        final KeyProgram program = estimateProperty.get();
+        if (program == null)
+            return "";
+
+        final KeyTiming timing = KeyTiming.fromDelay(Math.max(inputDelayProperty.get(), com.mattc.autotyper.Parameters.MIN_DELAY));
+        final KeystrokeCostModel.Estimate estimate = new KeystrokeCostModel(KeyboardMethodology.TYPING, timing).estimate(program);
+        return String.format("Typing takes about %s (%,d characters, %,d key events)%s", estimate.formatDuration(),
+                estimate.characterCount(), estimate.eventCount(), minifyProperty.get() ? ", less once minified" : "");
+    }
+
     private void obtainKeyboard() {
         this.keys = Keyboard.retrieveKeyboard(KeyboardMethodology.TYPING);
     }
@@ -580,6 +773,19 @@ public class FXAutotyperWindow extends Application {
         return false;
     }
 
+    /**
+     * @return true if the last session was stopped before it was done
+     */
+    private static boolean canResume() {
+        try {
+            final TypingJournal.Checkpoint checkpoint = TypingJournal.read();
+            return checkpoint != null && checkpoint.isResumable();
+        } catch (final IOException e) {
+            Console.debug(e);
+            return false;
+        }
+    }
+
     private boolean approve(Path code) throws IOException {
         if (FXConfirmDialog.isAvailable())
             return FXConfirmDialog.confirm(this.primaryStage, code);
@@ -0,0 +1,391 @@
+package com.mattc.autotyper.minify;
+
+/**
+ * Splits Lua 5.1/5.2 source into tokens, skipping whitespace and comments. Tokens are not copied out
+ * of the source until asked for, a token is only its type and its range in the source. <br />
+ * <br />
+ * Keywords and symbols are interned so that they can be compared by identity, names, numbers and
+ * strings are kept exactly as they are written.
+ *
+ * @author Glossawy
+ */
+final class LuaLexer {
+
+    static final int EOF = 0;
+    static final int NAME = 1;
+    static final int KEYWORD = 2;
+    static final int SYMBOL = 3;
+    static final int NUMBER = 4;
+    /**
+     * A quoted or long bracketed string
+     */
+    static final int STRING = 5;
+
+    private final CharSequence src;
+    private final int length;
+
+    private int pos, line = 1;
+
+    /**
+     * Type of the current token
+     */
+    int type;
+    /**
+     * Range of the current token in the source
+     */
+    int start, end;
+    /**
+     * Line the current token begins on
+     */
+    int tokenLine;
+    /**
+     * Text of the current keyword or symbol, interned, null for other tokens
+     */
+    String symbol;
+
+    LuaLexer(CharSequence src) {
+        this.src = src;
+        this.length = src.length();
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return The type of the token
+     * @throws LuaSyntaxException If the source can not be split into tokens at this point
+     */
+    int next() throws LuaSyntaxException {
+        skipWhitespaceAndComments();
+
+        start = pos;
+        tokenLine = line;
+        symbol = null;
+
+        if (pos >= length)
+            return type = EOF;
+
+        final char c = src.charAt(pos);
+        if (isNameStart(c)) {
+            while (pos < length && isNamePart(src.charAt(pos)))
+                pos++;
+
+            end = pos;
+            symbol = keyword(src, start, end);
+            return type = symbol == null ? NAME : KEYWORD;
+        } else if (isDigit(c) || (c == '.' && pos + 1 < length && isDigit(src.charAt(pos + 1)))) {
+            readNumber();
+            return type = NUMBER;
+        } else if (c == '"' || c == '\'') {
+            readQuoted(c);
+            return type = STRING;
+        } else if (c == '[') {
+            final int level = longBracketLevel(pos);
+            if (level >= 0) {
+                readLong(level, "string");
+                end = pos;
+                return type = STRING;
+            }
+        }
+
+        readSymbol(c);
+        end = pos;
+        return type = SYMBOL;
+    }
+
+    /**
+     * @return Text of the current token
+     */
+    String text() {
+        return symbol != null ? symbol : src.subSequence(start, end).toString();
+    }
+
+    boolean is(String symbol) {
+        return this.symbol == symbol;
+    }
+
+    int line() {
+        return tokenLine;
+    }
+
+    /**
+     * Look past the current token without advancing, to tell <code>{name = value}</code> from
+     * <code>{name == value}</code> in table constructors.
+     *
+     * @return true if the next token is '='
+     */
+    boolean peekAssign() throws LuaSyntaxException {
+        final int pos = this.pos, line = this.line;
+        skipWhitespaceAndComments();
+
+        final boolean assign = this.pos < length && src.charAt(this.pos) == '=' && (this.pos + 1 >= length || src.charAt(this.pos + 1) != '=');
+        this.pos = pos;
+        this.line = line;
+        return assign;
+    }
+
+    private void skipWhitespaceAndComments() throws LuaSyntaxException {
+        while (pos < length) {
+            final char c = src.charAt(pos);
+
+            if (c == '\n' || c == '\r') {
+                newline();
+            } else if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B') {
+                pos++;
+            } else if (c == '-' && pos + 1 < length && src.charAt(pos + 1) == '-') {
+                pos += 2;
+
+                final int level = pos < length && src.charAt(pos) == '[' ? longBracketLevel(pos) : -1;
+                if (level >= 0) {
+                    readLong(level, "comment");
+                } else {
+                    while (pos < length && src.charAt(pos) != '\n' && src.charAt(pos) != '\r')
+                        pos++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Skip a line ending, counting \r\n and \n\r as one
+    private void newline() {
+        final char c = src.charAt(pos++);
+        if (pos < length && (src.charAt(pos) == '\n' || src.charAt(pos) == '\r') && src.charAt(pos) != c)
+            pos++;
+        line++;
+    }
+
+    /**
+     * @return Number of '=' in the opening long bracket at the index or -1 if there is none
+     */
+    private int longBracketLevel(int at) {
+        int i = at + 1, level = 0;
+        while (i < length && src.charAt(i) == '=') {
+            i++;
+            level++;
+        }
+
+        return i < length && src.charAt(i) == '[' ? level : -1;
+    }
+
+    private void readLong(int level, String what) throws LuaSyntaxException {
+        final int startLine = line;
+        pos += level + 2;
+
+        while (pos < length) {
+            final char c = src.charAt(pos);
+
+            if (c == ']') {
+                int i = pos + 1, closing = 0;
+                while (i < length && src.charAt(i) == '=') {
+                    i++;
+                    closing++;
+                }
+
+                if (closing == level && i < length && src.charAt(i) == ']') {
+                    pos = i + 1;
+                    return;
+                }
+
+                pos = i;
+            } else if (c == '\n' || c == '\r') {
+                newline();
+            } else {
+                pos++;
+            }
+        }
+
+        throw new LuaSyntaxException("unfinished long " + what + " starting at line " + startLine, line);
+    }
+
+    private void readQuoted(char quote) throws LuaSyntaxException {
+        pos++;
+
+        while (pos < length) {
+            final char c = src.charAt(pos);
+
+            if (c == quote) {
+                end = ++pos;
+                return;
+            } else if (c == '\n' || c == '\r') {
+                break;
+            } else if (c == '\\') {
+                // The escaped character is part of the string, even a line ending
+                if (++pos < length && (src.charAt(pos) == '\n' || src.charAt(pos) == '\r'))
+                    newline();
+                else
+                    pos++;
+            } else {
+                pos++;
+            }
+        }
+
+        throw new LuaSyntaxException("unfinished string", line);
+    }
+
+    private void readNumber() throws LuaSyntaxException {
+        char exponent = 'e';
+        if (src.charAt(pos) == '0' && pos + 1 < length && (src.charAt(pos + 1) == 'x' || src.charAt(pos + 1) == 'X')) {
+            exponent = 'p';
+            pos += 2;
+        }
+
+        // Like Lua, read everything that could be part of a number and check it afterwards
+        while (pos < length) {
+            final char c = src.charAt(pos);
+
+            if (Character.toLowerCase(c) == exponent && pos + 1 < length && (src.charAt(pos + 1) == '+' || src.charAt(pos + 1) == '-'))
+                pos += 2;
+            else if (isNamePart(c) || c == '.')
+                pos++;
+            else
+                break;
+        }
+
+        end = pos;
+        if (!isNumber(src, start, end))
+            throw new LuaSyntaxException("malformed number near '" + src.subSequence(start, end) + "'", line);
+    }
+
+    private void readSymbol(char c) throws LuaSyntaxException {
+        final char n = pos + 1 < length ? src.charAt(pos + 1) : '\0';
+        final char nn = pos + 2 < length ? src.charAt(pos + 2) : '\0';
+
+        switch (c) {
+            case '.':
+                if (n == '.' && nn == '.')
+                    symbol = sym("...", 3);
+                else
+                    symbol = n == '.' ? sym("..", 2) : sym(".", 1);
+                return;
+            case '=':
+                symbol = n == '=' ? sym("==", 2) : sym("=", 1);
+                return;
+            case '<':
+                symbol = n == '=' ? sym("<=", 2) : sym("<", 1);
+                return;
+            case '>':
+                symbol = n == '=' ? sym(">=", 2) : sym(">", 1);
+                return;
+            case ':':
+                symbol = n == ':' ? sym("::", 2) : sym(":", 1);
+                return;
+            case '~':
+                if (n == '=') {
+                    symbol = sym("~=", 2);
+                    return;
+                }
+                break;
+            case '+': symbol = sym("+", 1); return;
+            case '-': symbol = sym("-", 1); return;
+            case '*': symbol = sym("*", 1); return;
+            case '/': symbol = sym("/", 1); return;
+            case '%': symbol = sym("%", 1); return;
+            case '^': symbol = sym("^", 1); return;
+            case '#': symbol = sym("#", 1); return;
+            case '(': symbol = sym("(", 1); return;
+            case ')': symbol = sym(")", 1); return;
+            case '{': symbol = sym("{", 1); return;
+            case '}': symbol = sym("}", 1); return;
+            case '[': symbol = sym("[", 1); return;
+            case ']': symbol = sym("]", 1); return;
+            case ';': symbol = sym(";", 1); return;
+            case ',': symbol = sym(",", 1); return;
+        }
+
+        throw new LuaSyntaxException(String.format("unexpected symbol '%s'", c), line);
+    }
+
+    private String sym(String symbol, int length) {
+        pos += length;
+        return symbol;
+    }
+
+    private static boolean isNumber(CharSequence s, int start, int end) {
+        int i = start;
+        boolean hex = false, digits = false;
+        if (end - i > 2 && s.charAt(i) == '0' && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) {
+            hex = true;
+            i += 2;
+        }
+
+        for (; i < end && (hex ? isHexDigit(s.charAt(i)) : isDigit(s.charAt(i))); i++)
+            digits = true;
+        if (i < end && s.charAt(i) == '.') {
+            for (i++; i < end && (hex ? isHexDigit(s.charAt(i)) : isDigit(s.charAt(i))); i++)
+                digits = true;
+        }
+        if (!digits)
+            return false;
+
+        if (i < end && Character.toLowerCase(s.charAt(i)) == (hex ? 'p' : 'e')) {
+            i++;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+                i++;
+
+            final int exponent = i;
+            while (i < end && isDigit(s.charAt(i)))
+                i++;
+            if (i == exponent)
+                return false;
+        }
+
+        return i == end;
+    }
+
+    /**
+     * @return The interned keyword or null if the text is not a keyword
+     */
+    static String keyword(CharSequence s, int start, int end) {
+        switch (end - start) {
+            case 2:
+                return match(s, start, "do", "if", "in", "or");
+            case 3:
+                return match(s, start, "and", "end", "for", "nil", "not");
+            case 4:
+                return match(s, start, "else", "goto", "then", "true");
+            case 5:
+                return match(s, start, "break", "false", "local", "until", "while");
+            case 6:
+                return match(s, start, "elseif", "repeat", "return");
+            case 8:
+                return match(s, start, "function");
+            default:
+                return null;
+        }
+    }
+
+    static boolean isKeyword(String s) {
+        return keyword(s, 0, s.length()) != null;
+    }
+
+    private static String match(CharSequence s, int start, String... keywords) {
+        outer:
+        for (final String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (s.charAt(start + i) != keyword.charAt(i))
+                    continue outer;
+            }
+
+            return keyword;
+        }
+
+        return null;
+    }
+
+    static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    static boolean isNamePart(char c) {
+        return isNameStart(c) || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,561 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.minify.LuaTree.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link LuaTree} back out as compactly as possible:
+ * <ul>
+ * <li>Tokens are only separated where they would otherwise run together, statements by a line ending
+ * rather than a space.</li>
+ * <li>Parentheses are only written where precedence needs them or where they cut a call down to its
+ * first value.</li>
+ * <li>Locals are renamed to the shortest names that do not hide a variable still referred to in their
+ * scope, see {@link LuaUsage}. Unlike luamin, names are reused by locals in different scopes and
+ * even by those hiding variables that are no longer used, so that even large programs get by on mostly
+ * single letter names.</li>
+ * <li>Calls with a single string or table argument are written without parentheses.</li>
+ * </ul>
+ * Globals, fields, labels and the implicit 'self' of methods keep their names.
+ *
+ * @author Glossawy
+ */
+final class LuaMinifier {
+
+    private static final String NAME_START = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_";
+    private static final String NAME_PART = NAME_START + "0123456789";
+
+    // Names in order of preference, generated as needed. Grown by replacing it, so it is read without locking.
+    private static volatile String[] nameTable = new String[0];
+
+    private final StringBuilder out;
+    private final LuaUsage usage;
+
+    private final Map<Local, String> names = new IdentityHashMap<>();
+    // Locals in scope by name, the innermost last, the scope each is declared in and where each open scope begins among them
+    private final Map<String, List<Local>> visible = new HashMap<>();
+    private final Map<Local, Integer> depths = new IdentityHashMap<>();
+    private final List<Local> declared = new ArrayList<>();
+    private final Deque<Integer> scopes = new ArrayDeque<>();
+
+    // Whether the next token begins a statement that follows another
+    private boolean statement;
+    private boolean lastNumber;
+
+    /**
+     * @param usage Usage of the variables of the chunk, null to name locals after the order they are declared in
+     */
+    private LuaMinifier(int capacity, LuaUsage usage) {
+        this.out = new StringBuilder(capacity);
+        this.usage = usage;
+    }
+
+    /**
+     * Minify Lua source.
+     *
+     * @param src Lua Source
+     * @return The minified source
+     * @throws LuaSyntaxException If the source is not valid Lua
+     */
+    static String minify(CharSequence src) throws LuaSyntaxException {
+        final Chunk chunk = LuaParser.parse(src);
+        final LuaMinifier minifier = new LuaMinifier(src.length() / 2, LuaUsage.of(chunk));
+        minifier.block(chunk.body);
+        return minifier.out.toString();
+    }
+
+    /**
+     * Write Lua source the way it would be minified, but with every local named after the order it is
+     * declared in. Two programs that have the same canonical form do the same. <br />
+     * <br />
+     * The result is only meant for comparison and is not necessarily valid Lua.
+     *
+     * @param src Lua Source
+     * @return The canonical form of the source
+     * @throws LuaSyntaxException If the source is not valid Lua
+     */
+    static String canonical(CharSequence src) throws LuaSyntaxException {
+        final Chunk chunk = LuaParser.parse(src);
+        final LuaMinifier minifier = new LuaMinifier(src.length(), null);
+        minifier.block(chunk.body);
+        return minifier.out.toString();
+    }
+
+    // ---------------------------------------- Names ----------------------------------------
+
+    private void openScope() {
+        scopes.push(declared.size());
+    }
+
+    private void closeScope() {
+        final List<Local> closed = declared.subList(scopes.pop(), declared.size());
+        for (final Local local : closed) {
+            final List<Local> named = visible.get(names.get(local));
+            named.remove(named.size() - 1);
+        }
+
+        closed.clear();
+    }
+
+    /**
+     * Name a local, which is in scope from now on until the current scope is closed.
+     */
+    private String declare(Local local) {
+        final String name;
+        if (local.fixed) {
+            name = local.name;
+        } else if (usage == null) {
+            name = "$" + names.size();
+        } else {
+            int i = 0;
+            while (!isAvailable(nameOf(i), local))
+                i++;
+
+            name = nameOf(i);
+        }
+
+        names.put(local, name);
+        depths.put(local, scopes.size());
+        declared.add(local);
+        visible.computeIfAbsent(name, (k) -> new ArrayList<>(2)).add(local);
+        return name;
+    }
+
+    /**
+     * A local may take the name of a variable that it hides unless that variable is referred to in its
+     * scope. Locals of the same scope never share a name, even if they could.
+     */
+    private boolean isAvailable(String name, Local local) {
+        if (LuaLexer.isKeyword(name) || name.equals("_ENV") || !usage.mayHide(local, name))
+            return false;
+
+        final List<Local> named = visible.get(name);
+        if (named != null) {
+            for (final Local hidden : named) {
+                if (depths.get(hidden) == scopes.size() || !usage.mayHide(local, hidden))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String nameOf(int index) {
+        final String[] table = nameTable;
+        return index < table.length ? table[index] : growNames(index)[index];
+    }
+
+    private static synchronized String[] growNames(int index) {
+        final String[] table = nameTable;
+        if (index < table.length)
+            return table;
+
+        final String[] grown = Arrays.copyOf(table, Math.max(index + 1, Math.max(table.length * 2, 64)));
+        for (int i = table.length; i < grown.length; i++)
+            grown[i] = generateName(i);
+
+        nameTable = grown;
+        return grown;
+    }
+
+    /**
+     * @return The index-th shortest name, a-z, A-Z, _ and then two characters and so on
+     */
+    private static String generateName(int index) {
+        int length = 1;
+        long count = NAME_START.length();
+        while (index >= count) {
+            index -= count;
+            count *= NAME_PART.length();
+            length++;
+        }
+
+        final char[] name = new char[length];
+        for (int i = length - 1; i > 0; i--) {
+            name[i] = NAME_PART.charAt(index % NAME_PART.length());
+            index /= NAME_PART.length();
+        }
+
+        name[0] = NAME_START.charAt(index);
+        return new String(name);
+    }
+
+    // ---------------------------------------- Output ----------------------------------------
+
+    private void token(String token) {
+        token(token, false);
+    }
+
+    private void token(String token, boolean number) {
+        final int length = out.length();
+        if (length > 0) {
+            final char last = out.charAt(length - 1);
+            final char next = token.charAt(0);
+
+            // A statement starting with '(' would be a call of whatever ends the one before it
+            if (statement && next == '(')
+                out.append(';');
+            else if (needsSpace(last, next))
+                out.append(statement ? '\n' : ' ');
+        }
+
+        out.append(token);
+        statement = false;
+        lastNumber = number;
+    }
+
+    /**
+     * @return Whether two tokens run together, or form a comment, if not separated
+     */
+    private boolean needsSpace(char last, char next) {
+        if (LuaLexer.isNamePart(last) && LuaLexer.isNamePart(next))
+            return true;
+        else if (lastNumber)
+            return next == '.' || LuaLexer.isNamePart(next);
+        else if (last == '.')
+            return next == '.' || (next >= '0' && next <= '9');
+        else if (last == '-')
+            return next == '-';
+        else
+            return last == '[' && (next == '[' || next == '=');
+    }
+
+    // ---------------------------------------- Statements ----------------------------------------
+
+    private void block(Block block) {
+        openScope();
+        statements(block.stats);
+        closeScope();
+    }
+
+    private void statements(List<Stat> stats) {
+        for (int i = 0; i < stats.size(); i++) {
+            statement = i > 0;
+            statement(stats.get(i));
+        }
+
+        statement = false;
+    }
+
+    private void statement(Stat stat) {
+        if (stat instanceof LocalStat) {
+            final LocalStat local = (LocalStat) stat;
+            token("local");
+            // Naming the locals before writing the values is safe, the values can not refer to them
+            for (int i = 0; i < local.vars.size(); i++) {
+                if (i > 0)
+                    token(",");
+                token(declare(local.vars.get(i)));
+            }
+
+            if (!local.values.isEmpty()) {
+                token("=");
+                exprList(local.values);
+            }
+        } else if (stat instanceof AssignStat) {
+            final AssignStat assign = (AssignStat) stat;
+            for (int i = 0; i < assign.targets.size(); i++) {
+                if (i > 0)
+                    token(",");
+                expr(assign.targets.get(i), false);
+            }
+
+            token("=");
+            exprList(assign.values);
+        } else if (stat instanceof CallStat) {
+            expr(((CallStat) stat).call, false);
+        } else if (stat instanceof LocalFunctionStat) {
+            final LocalFunctionStat function = (LocalFunctionStat) stat;
+            token("local");
+            token("function");
+            token(declare(function.var));
+            funcBody(function.func);
+        } else if (stat instanceof FunctionStat) {
+            final FunctionStat function = (FunctionStat) stat;
+            token("function");
+            expr(function.name, false);
+            if (function.method != null) {
+                token(":");
+                token(function.method);
+            }
+
+            funcBody(function.func);
+        } else if (stat instanceof IfStat) {
+            final IfStat cond = (IfStat) stat;
+            for (int i = 0; i < cond.conds.size(); i++) {
+                token(i == 0 ? "if" : "elseif");
+                expr(cond.conds.get(i), false);
+                token("then");
+                block(cond.blocks.get(i));
+            }
+
+            if (cond.orElse != null) {
+                token("else");
+                block(cond.orElse);
+            }
+
+            token("end");
+        } else if (stat instanceof WhileStat) {
+            final WhileStat loop = (WhileStat) stat;
+            token("while");
+            expr(loop.cond, false);
+            token("do");
+            block(loop.body);
+            token("end");
+        } else if (stat instanceof DoStat) {
+            token("do");
+            block(((DoStat) stat).body);
+            token("end");
+        } else if (stat instanceof NumericForStat) {
+            final NumericForStat loop = (NumericForStat) stat;
+            token("for");
+            openScope();
+            token(declare(loop.var));
+            token("=");
+            expr(loop.start, false);
+            token(",");
+            expr(loop.limit, false);
+            if (loop.step != null) {
+                token(",");
+                expr(loop.step, false);
+            }
+
+            token("do");
+            block(loop.body);
+            closeScope();
+            token("end");
+        } else if (stat instanceof GenericForStat) {
+            final GenericForStat loop = (GenericForStat) stat;
+            token("for");
+            openScope();
+            for (int i = 0; i < loop.vars.size(); i++) {
+                if (i > 0)
+                    token(",");
+                token(declare(loop.vars.get(i)));
+            }
+
+            token("in");
+            exprList(loop.iterators);
+            token("do");
+            block(loop.body);
+            closeScope();
+            token("end");
+        } else if (stat instanceof RepeatStat) {
+            final RepeatStat loop = (RepeatStat) stat;
+            token("repeat");
+            // The condition is part of the scope of the body
+            openScope();
+            statements(loop.body.stats);
+            token("until");
+            expr(loop.cond, false);
+            closeScope();
+        } else if (stat instanceof ReturnStat) {
+            token("return");
+            exprList(((ReturnStat) stat).values);
+        } else if (stat instanceof BreakStat) {
+            token("break");
+        } else if (stat instanceof GotoStat) {
+            token("goto");
+            token(((GotoStat) stat).label);
+        } else if (stat instanceof LabelStat) {
+            token("::");
+            token(((LabelStat) stat).label);
+            token("::");
+        } else {
+            throw new IllegalStateException("Unknown statement " + stat.getClass().getSimpleName());
+        }
+    }
+
+    private void funcBody(FuncBody func) {
+        token("(");
+        openScope();
+        if (func.self != null)
+            declare(func.self);
+
+        for (int i = 0; i < func.params.size(); i++) {
+            if (i > 0)
+                token(",");
+            token(declare(func.params.get(i)));
+        }
+
+        if (func.vararg) {
+            if (!func.params.isEmpty())
+                token(",");
+            token("...");
+        }
+
+        token(")");
+        block(func.body);
+        closeScope();
+        token("end");
+    }
+
+    // ---------------------------------------- Expressions ----------------------------------------
+
+    /**
+     * Write a list of expressions whose last expression may have multiple values.
+     */
+    private void exprList(List<Expr> exprs) {
+        for (int i = 0; i < exprs.size(); i++) {
+            if (i > 0)
+                token(",");
+            expr(exprs.get(i), i == exprs.size() - 1);
+        }
+    }
+
+    /**
+     * Write an expression.
+     *
+     * @param expr Expression to write
+     * @param tail Whether the expression is the last of a list, where a call or vararg has all of its values
+     */
+    private void expr(Expr expr, boolean tail) {
+        final Expr stripped = strip(expr);
+
+        if (tail && stripped != expr && (stripped instanceof Call || stripped instanceof Vararg)) {
+            token("(");
+            expr(stripped, false);
+            token(")");
+        } else if (stripped instanceof Literal) {
+            final Literal literal = (Literal) stripped;
+            token(literal.raw, !literal.string && !LuaLexer.isNameStart(literal.raw.charAt(0)));
+        } else if (stripped instanceof Vararg) {
+            token("...");
+        } else if (stripped instanceof Name) {
+            final Name name = (Name) stripped;
+            token(name.local == null ? name.name : names.get(name.local));
+        } else if (stripped instanceof Index) {
+            final Index index = (Index) stripped;
+            base(index.base);
+            token("[");
+            expr(index.key, false);
+            token("]");
+        } else if (stripped instanceof Member) {
+            final Member member = (Member) stripped;
+            base(member.base);
+            token(".");
+            token(member.name);
+        } else if (stripped instanceof Call) {
+            call((Call) stripped);
+        } else if (stripped instanceof Function) {
+            token("function");
+            funcBody(((Function) stripped).func);
+        } else if (stripped instanceof Table) {
+            table((Table) stripped);
+        } else if (stripped instanceof Binary) {
+            binary((Binary) stripped);
+        } else if (stripped instanceof Unary) {
+            final Unary unary = (Unary) stripped;
+            final Expr operand = strip(unary.operand);
+            token(unary.op);
+
+            // Only '^' binds tighter than unary operators
+            if (operand instanceof Binary && LuaParser.leftPriority(((Binary) operand).op) <= LuaParser.UNARY_PRIORITY)
+                parenthesized(operand);
+            else
+                expr(operand, false);
+        } else {
+            throw new IllegalStateException("Unknown expression " + stripped.getClass().getSimpleName());
+        }
+    }
+
+    private void binary(Binary binary) {
+        final Expr left = strip(binary.left), right = strip(binary.right);
+        final int priority = LuaParser.leftPriority(binary.op);
+
+        // The left operand is only grouped with the operator if its own operator does not take the operator's operand
+        final boolean leftParens;
+        if (left instanceof Binary)
+            leftParens = priority > LuaParser.rightPriority(((Binary) left).op);
+        else
+            leftParens = left instanceof Unary && priority > LuaParser.UNARY_PRIORITY;
+
+        // The right operand only takes operators that bind tighter than this one does on its right
+        final boolean rightParens = right instanceof Binary && LuaParser.leftPriority(((Binary) right).op) <= LuaParser.rightPriority(binary.op);
+
+        if (leftParens)
+            parenthesized(left);
+        else
+            expr(left, false);
+
+        token(binary.op);
+
+        if (rightParens)
+            parenthesized(right);
+        else
+            expr(right, false);
+    }
+
+    private void call(Call call) {
+        base(call.base);
+        if (call.method != null) {
+            token(":");
+            token(call.method);
+        }
+
+        // f"str" and f{...} need no parentheses
+        final Expr arg = call.args.size() == 1 ? strip(call.args.get(0)) : null;
+        if ((arg instanceof Literal && ((Literal) arg).string) || arg instanceof Table) {
+            expr(arg, false);
+        } else {
+            token("(");
+            exprList(call.args);
+            token(")");
+        }
+    }
+
+    private void table(Table table) {
+        token("{");
+        for (int i = 0; i < table.fields.size(); i++) {
+            final Field field = table.fields.get(i);
+            if (i > 0)
+                token(",");
+
+            if (field.key != null) {
+                token("[");
+                expr(field.key, false);
+                token("]");
+                token("=");
+            } else if (field.name != null) {
+                token(field.name);
+                token("=");
+            }
+
+            // Only the last positional field takes every value of a call
+            expr(field.value, field.key == null && field.name == null && i == table.fields.size() - 1);
+        }
+
+        token("}");
+    }
+
+    /**
+     * Write the base of an index or call, which must be a name, index or call unless parenthesized.
+     */
+    private void base(Expr base) {
+        final Expr stripped = strip(base);
+        if (stripped instanceof Name || stripped instanceof Index || stripped instanceof Member || stripped instanceof Call)
+            expr(stripped, false);
+        else
+            parenthesized(stripped);
+    }
+
+    private void parenthesized(Expr expr) {
+        token("(");
+        expr(expr, false);
+        token(")");
+    }
+
+    private static Expr strip(Expr expr) {
+        while (expr instanceof Paren)
+            expr = ((Paren) expr).inner;
+        return expr;
+    }
+}
@@ -0,0 +1,577 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.minify.LuaTree.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A recursive descent parser for Lua 5.1/5.2, following the grammar of the reference implementation
+ * (lparser.c) so that it accepts the same programs and groups operators the same way. <br />
+ * <br />
+ * Names are resolved while parsing since Lua scopes are lexical: every name either refers to the
+ * innermost {@link Local} of that name declared before it or is a global.
+ *
+ * @author Glossawy
+ */
+final class LuaParser {
+
+    /**
+     * Priority of unary operators, see {@link #leftPriority(String)}
+     */
+    static final int UNARY_PRIORITY = 8;
+
+    private final LuaLexer lex;
+    // Every local in scope, innermost last, and where each open scope begins in it
+    private final List<Local> visible = new ArrayList<>();
+    private final Deque<Integer> scopes = new ArrayDeque<>();
+    // Whether each enclosing function takes varargs, innermost first
+    private final Deque<Boolean> varargs = new ArrayDeque<>();
+
+    private LuaParser(CharSequence src) {
+        this.lex = new LuaLexer(src);
+    }
+
+    /**
+     * Parse a whole source file.
+     *
+     * @param src Lua Source
+     * @return The Syntax Tree
+     * @throws LuaSyntaxException If the source is not valid Lua
+     */
+    static Chunk parse(CharSequence src) throws LuaSyntaxException {
+        final LuaParser parser = new LuaParser(src);
+        parser.lex.next();
+        parser.varargs.push(true);
+
+        final Block body = parser.block();
+        if (parser.lex.type != LuaLexer.EOF)
+            throw parser.error("'<eof>' expected");
+
+        return new Chunk(body);
+    }
+
+    /**
+     * Binding power of a binary operator on its left, an operator only takes the expression to its
+     * left as its operand if its left priority is greater than the right priority of the operator
+     * before it. Right associative operators have a lower right priority than left priority.
+     *
+     * @return The priority or 0 if this is not a binary operator
+     */
+    static int leftPriority(String op) {
+        switch (op) {
+            case "or": return 1;
+            case "and": return 2;
+            case "<": case ">": case "<=": case ">=": case "~=": case "==": return 3;
+            case "..": return 5;
+            case "+": case "-": return 6;
+            case "*": case "/": case "%": return 7;
+            case "^": return 10;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return Binding power of a binary operator on its right
+     * @see #leftPriority(String)
+     */
+    static int rightPriority(String op) {
+        switch (op) {
+            case "..": return 4;
+            case "^": return 9;
+            default: return leftPriority(op);
+        }
+    }
+
+    // ---------------------------------------- Blocks and Scopes ----------------------------------------
+
+    private Block block() throws LuaSyntaxException {
+        openScope();
+        final Block block = new Block(statements());
+        closeScope();
+        return block;
+    }
+
+    private List<Stat> statements() throws LuaSyntaxException {
+        final List<Stat> stats = new ArrayList<>();
+
+        while (!blockFollows()) {
+            if (lex.is("return")) {
+                stats.add(returnStat());
+                break;
+            }
+
+            final Stat stat = statement();
+            if (stat != null)
+                stats.add(stat);
+        }
+
+        return stats;
+    }
+
+    private boolean blockFollows() {
+        return lex.type == LuaLexer.EOF || lex.is("end") || lex.is("else") || lex.is("elseif") || lex.is("until");
+    }
+
+    private void openScope() {
+        scopes.push(visible.size());
+    }
+
+    private void closeScope() {
+        final int start = scopes.pop();
+        visible.subList(start, visible.size()).clear();
+    }
+
+    private Local declare(String name) {
+        final Local local = new Local(name, false);
+        visible.add(local);
+        return local;
+    }
+
+    private Name resolve(String name) {
+        for (int i = visible.size() - 1; i >= 0; i--) {
+            if (visible.get(i).name.equals(name))
+                return new Name(name, visible.get(i));
+        }
+
+        return new Name(name, null);
+    }
+
+    // ---------------------------------------- Statements ----------------------------------------
+
+    /**
+     * @return The statement or null if it was empty
+     */
+    private Stat statement() throws LuaSyntaxException {
+        if (lex.type == LuaLexer.KEYWORD) {
+            switch (lex.symbol) {
+                case "if":
+                    return ifStat();
+                case "while": {
+                    final int line = lex.line();
+                    lex.next();
+                    final Expr cond = expr();
+                    check("do");
+                    final Block body = block();
+                    checkMatch("end", "while", line);
+                    return new WhileStat(cond, body);
+                }
+                case "do": {
+                    final int line = lex.line();
+                    lex.next();
+                    final Block body = block();
+                    checkMatch("end", "do", line);
+                    return new DoStat(body);
+                }
+                case "for":
+                    return forStat();
+                case "repeat":
+                    return repeatStat();
+                case "function":
+                    return functionStat();
+                case "local":
+                    lex.next();
+                    return accept("function") ? localFunctionStat() : localStat();
+                case "break":
+                    lex.next();
+                    return new BreakStat();
+                case "goto":
+                    lex.next();
+                    return new GotoStat(name());
+            }
+        } else if (lex.is(";")) {
+            lex.next();
+            return null;
+        } else if (lex.is("::")) {
+            lex.next();
+            final String label = name();
+            check("::");
+            return new LabelStat(label);
+        }
+
+        return exprStat();
+    }
+
+    private Stat ifStat() throws LuaSyntaxException {
+        final int line = lex.line();
+        final List<Expr> conds = new ArrayList<>();
+        final List<Block> blocks = new ArrayList<>();
+        Block orElse = null;
+
+        do {
+            // Skips 'if' and every 'elseif'
+            lex.next();
+            conds.add(expr());
+            check("then");
+            blocks.add(block());
+        } while (lex.is("elseif"));
+
+        if (accept("else"))
+            orElse = block();
+
+        checkMatch("end", "if", line);
+        return new IfStat(conds, blocks, orElse);
+    }
+
+    private Stat forStat() throws LuaSyntaxException {
+        final int line = lex.line();
+        lex.next();
+        final String first = name();
+        final Stat stat;
+
+        if (accept("=")) {
+            final Expr start = expr();
+            check(",");
+            final Expr limit = expr();
+            final Expr step = accept(",") ? expr() : null;
+            check("do");
+
+            openScope();
+            final Local var = declare(first);
+            stat = new NumericForStat(var, start, limit, step, block());
+            closeScope();
+        } else {
+            final List<String> names = new ArrayList<>();
+            names.add(first);
+            while (accept(","))
+                names.add(name());
+
+            check("in");
+            final List<Expr> iterators = exprList();
+            check("do");
+
+            openScope();
+            final List<Local> vars = new ArrayList<>(names.size());
+            for (final String name : names)
+                vars.add(declare(name));
+            stat = new GenericForStat(vars, iterators, block());
+            closeScope();
+        }
+
+        checkMatch("end", "for", line);
+        return stat;
+    }
+
+    private Stat repeatStat() throws LuaSyntaxException {
+        final int line = lex.line();
+        lex.next();
+
+        // The condition can see the locals of the body
+        openScope();
+        final Block body = new Block(statements());
+        checkMatch("until", "repeat", line);
+        final Expr cond = expr();
+        closeScope();
+
+        return new RepeatStat(body, cond);
+    }
+
+    private Stat functionStat() throws LuaSyntaxException {
+        final int line = lex.line();
+        lex.next();
+
+        Expr name = resolve(name());
+        String method = null;
+        while (accept("."))
+            name = new Member(name, name());
+        if (accept(":"))
+            method = name();
+
+        return new FunctionStat(name, method, funcBody(method != null, line));
+    }
+
+    private Stat localFunctionStat() throws LuaSyntaxException {
+        final int line = lex.line();
+        // Declared before its body, so that it can call itself
+        final Local var = declare(name());
+        return new LocalFunctionStat(var, funcBody(false, line));
+    }
+
+    private Stat localStat() throws LuaSyntaxException {
+        final List<String> names = new ArrayList<>();
+        do {
+            names.add(name());
+        } while (accept(","));
+
+        // The values can not see the variables being declared
+        final List<Expr> values = accept("=") ? exprList() : Collections.emptyList();
+        final List<Local> vars = new ArrayList<>(names.size());
+        for (final String name : names)
+            vars.add(declare(name));
+
+        return new LocalStat(vars, values);
+    }
+
+    private Stat returnStat() throws LuaSyntaxException {
+        lex.next();
+        final List<Expr> values = blockFollows() || lex.is(";") ? Collections.emptyList() : exprList();
+        accept(";");
+
+        if (!blockFollows())
+            throw error("'end' expected");
+
+        return new ReturnStat(values);
+    }
+
+    private Stat exprStat() throws LuaSyntaxException {
+        final Expr first = suffixedExpr();
+
+        if (lex.is("=") || lex.is(",")) {
+            final List<Expr> targets = new ArrayList<>();
+            targets.add(assignable(first));
+            while (accept(","))
+                targets.add(assignable(suffixedExpr()));
+
+            check("=");
+            return new AssignStat(targets, exprList());
+        } else if (first instanceof Call) {
+            return new CallStat((Call) first);
+        }
+
+        throw error("syntax error");
+    }
+
+    private Expr assignable(Expr target) throws LuaSyntaxException {
+        if (target instanceof Name || target instanceof Index || target instanceof Member)
+            return target;
+
+        throw error("syntax error");
+    }
+
+    private FuncBody funcBody(boolean method, int line) throws LuaSyntaxException {
+        check("(");
+        openScope();
+
+        final Local self = method ? new Local("self", true) : null;
+        if (self != null)
+            visible.add(self);
+
+        final List<Local> params = new ArrayList<>();
+        boolean vararg = false;
+        if (!lex.is(")")) {
+            do {
+                if (accept("...")) {
+                    vararg = true;
+                    break;
+                }
+
+                params.add(declare(name()));
+            } while (accept(","));
+        }
+
+        check(")");
+        varargs.push(vararg);
+        final Block body = block();
+        varargs.pop();
+        checkMatch("end", "function", line);
+        closeScope();
+
+        return new FuncBody(self, params, vararg, body);
+    }
+
+    // ---------------------------------------- Expressions ----------------------------------------
+
+    private List<Expr> exprList() throws LuaSyntaxException {
+        final List<Expr> list = new ArrayList<>(2);
+        list.add(expr());
+        while (accept(","))
+            list.add(expr());
+
+        return list;
+    }
+
+    private Expr expr() throws LuaSyntaxException {
+        return subExpr(0);
+    }
+
+    /**
+     * Parse an expression of binary operators whose left priority is greater than the limit.
+     */
+    private Expr subExpr(int limit) throws LuaSyntaxException {
+        Expr expr;
+        if (lex.is("not") || lex.is("-") || lex.is("#")) {
+            final String op = lex.symbol;
+            lex.next();
+            expr = new Unary(op, subExpr(UNARY_PRIORITY));
+        } else {
+            expr = simpleExpr();
+        }
+
+        while ((lex.type == LuaLexer.SYMBOL || lex.type == LuaLexer.KEYWORD) && leftPriority(lex.symbol) > limit) {
+            final String op = lex.symbol;
+            lex.next();
+            expr = new Binary(op, expr, subExpr(rightPriority(op)));
+        }
+
+        return expr;
+    }
+
+    private Expr simpleExpr() throws LuaSyntaxException {
+        final Expr expr;
+
+        switch (lex.type) {
+            case LuaLexer.NUMBER:
+            case LuaLexer.STRING:
+                expr = new Literal(lex.text(), lex.type == LuaLexer.STRING);
+                break;
+            case LuaLexer.KEYWORD:
+                if (lex.is("nil") || lex.is("true") || lex.is("false")) {
+                    expr = new Literal(lex.symbol, false);
+                    break;
+                } else if (lex.is("function")) {
+                    final int line = lex.line();
+                    lex.next();
+                    return new Function(funcBody(false, line));
+                }
+
+                return suffixedExpr();
+            case LuaLexer.SYMBOL:
+                if (lex.is("...")) {
+                    if (!varargs.peek())
+                        throw error("cannot use '...' outside a vararg function");
+
+                    expr = new Vararg();
+                    break;
+                } else if (lex.is("{")) {
+                    return table();
+                }
+
+                return suffixedExpr();
+            default:
+                return suffixedExpr();
+        }
+
+        lex.next();
+        return expr;
+    }
+
+    private Expr primaryExpr() throws LuaSyntaxException {
+        if (lex.type == LuaLexer.NAME)
+            return resolve(name());
+
+        if (lex.is("(")) {
+            final int line = lex.line();
+            lex.next();
+            final Expr inner = expr();
+            checkMatch(")", "(", line);
+
+            return new Paren(inner);
+        }
+
+        throw error("unexpected symbol");
+    }
+
+    private Expr suffixedExpr() throws LuaSyntaxException {
+        final Expr primary = primaryExpr();
+        Expr expr = primary;
+
+        while (true) {
+            if (accept(".")) {
+                expr = new Member(unwrap(expr), name());
+            } else if (accept("[")) {
+                final Expr key = expr();
+                check("]");
+                expr = new Index(unwrap(expr), key);
+            } else if (accept(":")) {
+                final String method = name();
+                expr = new Call(unwrap(expr), method, args());
+            } else if (lex.is("(") || lex.is("{") || lex.type == LuaLexer.STRING) {
+                expr = new Call(unwrap(expr), null, args());
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private List<Expr> args() throws LuaSyntaxException {
+        if (lex.type == LuaLexer.STRING) {
+            final Expr arg = new Literal(lex.text(), true);
+            lex.next();
+            return Collections.singletonList(arg);
+        } else if (lex.is("{")) {
+            return Collections.singletonList(table());
+        }
+
+        final int line = lex.line();
+        check("(");
+        final List<Expr> args = lex.is(")") ? Collections.emptyList() : exprList();
+        checkMatch(")", "(", line);
+        return args;
+    }
+
+    private Expr table() throws LuaSyntaxException {
+        final int line = lex.line();
+        check("{");
+        final List<Field> fields = new ArrayList<>();
+
+        while (!lex.is("}")) {
+            if (accept("[")) {
+                final Expr key = expr();
+                check("]");
+                check("=");
+                fields.add(new Field(key, null, expr()));
+            } else if (lex.type == LuaLexer.NAME && lex.peekAssign()) {
+                final String name = name();
+                check("=");
+                fields.add(new Field(null, name, expr()));
+            } else {
+                fields.add(new Field(null, null, expr()));
+            }
+
+            if (!accept(",") && !accept(";"))
+                break;
+        }
+
+        checkMatch("}", "{", line);
+        return new Table(fields);
+    }
+
+    /**
+     * Parentheses around the base of an index or call only matter to the syntax, they are written again where needed
+     */
+    private static Expr unwrap(Expr expr) {
+        return expr instanceof Paren ? ((Paren) expr).inner : expr;
+    }
+
+    // ---------------------------------------- Tokens ----------------------------------------
+
+    private String name() throws LuaSyntaxException {
+        if (lex.type != LuaLexer.NAME)
+            throw error("<name> expected");
+
+        final String name = lex.text();
+        lex.next();
+        return name;
+    }
+
+    private boolean accept(String symbol) throws LuaSyntaxException {
+        if (!lex.is(symbol))
+            return false;
+
+        lex.next();
+        return true;
+    }
+
+    private void check(String symbol) throws LuaSyntaxException {
+        if (!accept(symbol))
+            throw error("'" + symbol + "' expected");
+    }
+
+    private void checkMatch(String symbol, String opening, int line) throws LuaSyntaxException {
+        if (accept(symbol))
+            return;
+
+        if (line == lex.line())
+            throw error("'" + symbol + "' expected");
+        else
+            throw error(String.format("'%s' expected (to close '%s' at line %d)", symbol, opening, line));
+    }
+
+    private LuaSyntaxException error(String message) {
+        final String near = lex.type == LuaLexer.EOF ? "<eof>" : lex.text();
+        return new LuaSyntaxException(message + " near '" + near + "'", lex.line());
+    }
+}
@@ -0,0 +1,19 @@
+package com.mattc.autotyper.minify;
+
+import javax.script.ScriptException;
+
+/**
+ * Thrown when Lua source can not be minified because it is not valid Lua. It is a
+ * {@link ScriptException} like the errors of luamin, so that callers of the {@link Minifier} handle
+ * both alike.
+ *
+ * @author Glossawy
+ */
+public class LuaSyntaxException extends ScriptException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LuaSyntaxException(String message, int line) {
+        super(message + " on line " + line, null, line);
+    }
+}
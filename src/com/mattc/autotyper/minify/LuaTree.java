@@ -0,0 +1,387 @@
+package com.mattc.autotyper.minify;
+
+import java.util.List;
+
+/**
+ * The syntax tree the {@link LuaParser} builds and the {@link LuaMinifier} writes back out. It only
+ * keeps what is needed to write the program again: comments and whitespace are gone, names are already
+ * resolved to the {@link Local} they refer to. <br />
+ * <br />
+ * Literals are kept exactly as they were written.
+ *
+ * @author Glossawy
+ */
+final class LuaTree {
+
+    private LuaTree() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * A parsed source file
+     */
+    static final class Chunk {
+        final Block body;
+
+        Chunk(Block body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * A local variable. Every declaration is a new variable, even if it has the name of another.
+     */
+    static final class Local {
+        final String name;
+        /**
+         * Whether the name is fixed, i.e. the implicit 'self' of methods
+         */
+        final boolean fixed;
+
+        Local(String name, boolean fixed) {
+            this.name = name;
+            this.fixed = fixed;
+        }
+    }
+
+    static final class Block {
+        final List<Stat> stats;
+
+        Block(List<Stat> stats) {
+            this.stats = stats;
+        }
+    }
+
+    static final class FuncBody {
+        /**
+         * Implicit 'self' of methods, null for other functions
+         */
+        final Local self;
+        final List<Local> params;
+        final boolean vararg;
+        final Block body;
+
+        FuncBody(Local self, List<Local> params, boolean vararg, Block body) {
+            this.self = self;
+            this.params = params;
+            this.vararg = vararg;
+            this.body = body;
+        }
+    }
+
+    // ---------------------------------------- Statements ----------------------------------------
+
+    abstract static class Stat {
+    }
+
+    static final class LocalStat extends Stat {
+        final List<Local> vars;
+        final List<Expr> values;
+
+        LocalStat(List<Local> vars, List<Expr> values) {
+            this.vars = vars;
+            this.values = values;
+        }
+    }
+
+    static final class LocalFunctionStat extends Stat {
+        final Local var;
+        final FuncBody func;
+
+        LocalFunctionStat(Local var, FuncBody func) {
+            this.var = var;
+            this.func = func;
+        }
+    }
+
+    static final class AssignStat extends Stat {
+        final List<Expr> targets;
+        final List<Expr> values;
+
+        AssignStat(List<Expr> targets, List<Expr> values) {
+            this.targets = targets;
+            this.values = values;
+        }
+    }
+
+    static final class CallStat extends Stat {
+        final Call call;
+
+        CallStat(Call call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * <code>function a.b.c:d() end</code>
+     */
+    static final class FunctionStat extends Stat {
+        /**
+         * The name, a.b.c of the example
+         */
+        final Expr name;
+        /**
+         * Name of the method, d of the example, null if the function is not a method
+         */
+        final String method;
+        final FuncBody func;
+
+        FunctionStat(Expr name, String method, FuncBody func) {
+            this.name = name;
+            this.method = method;
+            this.func = func;
+        }
+    }
+
+    static final class DoStat extends Stat {
+        final Block body;
+
+        DoStat(Block body) {
+            this.body = body;
+        }
+    }
+
+    static final class WhileStat extends Stat {
+        final Expr cond;
+        final Block body;
+
+        WhileStat(Expr cond, Block body) {
+            this.cond = cond;
+            this.body = body;
+        }
+    }
+
+    /**
+     * The condition of a repeat is part of the scope of its body
+     */
+    static final class RepeatStat extends Stat {
+        final Block body;
+        final Expr cond;
+
+        RepeatStat(Block body, Expr cond) {
+            this.body = body;
+            this.cond = cond;
+        }
+    }
+
+    static final class IfStat extends Stat {
+        final List<Expr> conds;
+        final List<Block> blocks;
+        /**
+         * Body of the else clause, null if there is none
+         */
+        final Block orElse;
+
+        IfStat(List<Expr> conds, List<Block> blocks, Block orElse) {
+            this.conds = conds;
+            this.blocks = blocks;
+            this.orElse = orElse;
+        }
+    }
+
+    static final class NumericForStat extends Stat {
+        final Local var;
+        final Expr start, limit;
+        /**
+         * Step of the loop, null if there is none
+         */
+        final Expr step;
+        final Block body;
+
+        NumericForStat(Local var, Expr start, Expr limit, Expr step, Block body) {
+            this.var = var;
+            this.start = start;
+            this.limit = limit;
+            this.step = step;
+            this.body = body;
+        }
+    }
+
+    static final class GenericForStat extends Stat {
+        final List<Local> vars;
+        final List<Expr> iterators;
+        final Block body;
+
+        GenericForStat(List<Local> vars, List<Expr> iterators, Block body) {
+            this.vars = vars;
+            this.iterators = iterators;
+            this.body = body;
+        }
+    }
+
+    static final class ReturnStat extends Stat {
+        final List<Expr> values;
+
+        ReturnStat(List<Expr> values) {
+            this.values = values;
+        }
+    }
+
+    static final class BreakStat extends Stat {
+    }
+
+    static final class GotoStat extends Stat {
+        final String label;
+
+        GotoStat(String label) {
+            this.label = label;
+        }
+    }
+
+    static final class LabelStat extends Stat {
+        final String label;
+
+        LabelStat(String label) {
+            this.label = label;
+        }
+    }
+
+    // ---------------------------------------- Expressions ----------------------------------------
+
+    abstract static class Expr {
+    }
+
+    /**
+     * nil, true, false, a number or a string, as written
+     */
+    static final class Literal extends Expr {
+        final String raw;
+        final boolean string;
+
+        Literal(String raw, boolean string) {
+            this.raw = raw;
+            this.string = string;
+        }
+    }
+
+    static final class Vararg extends Expr {
+    }
+
+    static final class Name extends Expr {
+        final String name;
+        /**
+         * The variable referred to, null if it is a global
+         */
+        final Local local;
+
+        Name(String name, Local local) {
+            this.name = name;
+            this.local = local;
+        }
+    }
+
+    /**
+     * <code>base[key]</code>
+     */
+    static final class Index extends Expr {
+        final Expr base, key;
+
+        Index(Expr base, Expr key) {
+            this.base = base;
+            this.key = key;
+        }
+    }
+
+    /**
+     * <code>base.name</code>
+     */
+    static final class Member extends Expr {
+        final Expr base;
+        final String name;
+
+        Member(Expr base, String name) {
+            this.base = base;
+            this.name = name;
+        }
+    }
+
+    /**
+     * <code>base(args)</code> or <code>base:method(args)</code>
+     */
+    static final class Call extends Expr {
+        final Expr base;
+        /**
+         * Name of the method, null if this is not a method call
+         */
+        final String method;
+        final List<Expr> args;
+
+        Call(Expr base, String method, List<Expr> args) {
+            this.base = base;
+            this.method = method;
+            this.args = args;
+        }
+    }
+
+    static final class Function extends Expr {
+        final FuncBody func;
+
+        Function(FuncBody func) {
+            this.func = func;
+        }
+    }
+
+    static final class Table extends Expr {
+        final List<Field> fields;
+
+        Table(List<Field> fields) {
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * A field of a table constructor, <code>[key]=value</code>, <code>name=value</code> or
+     * <code>value</code>
+     */
+    static final class Field {
+        /**
+         * Key of a <code>[key]=value</code> field, otherwise null
+         */
+        final Expr key;
+        /**
+         * Key of a <code>name=value</code> field, otherwise null
+         */
+        final String name;
+        final Expr value;
+
+        Field(Expr key, String name, Expr value) {
+            this.key = key;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    static final class Binary extends Expr {
+        final String op;
+        final Expr left, right;
+
+        Binary(String op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Unary extends Expr {
+        final String op;
+        final Expr operand;
+
+        Unary(String op, Expr operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    /**
+     * Parentheses as written, except around the base of an index or call. They only matter where they cut
+     * a call or vararg down to its first value, elsewhere they are dropped and written again where
+     * precedence needs them.
+     */
+    static final class Paren extends Expr {
+        final Expr inner;
+
+        Paren(Expr inner) {
+            this.inner = inner;
+        }
+    }
+}
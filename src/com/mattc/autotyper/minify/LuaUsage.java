@@ -0,0 +1,222 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.minify.LuaTree.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where every variable of a {@link Chunk} is declared, goes out of scope and is referred to, so that
+ * the {@link LuaMinifier} can tell when a local may take the name of another variable. <br />
+ * <br />
+ * Positions count declarations, references and the ends of scopes in the order they appear in the
+ * source. A local may hide another variable if that variable is not referred to between where the local
+ * is declared and where it goes out of scope.
+ *
+ * @author Glossawy
+ */
+final class LuaUsage {
+
+    private final Map<Local, Variable> locals = new IdentityHashMap<>();
+    private final Map<String, Variable> globals = new HashMap<>();
+    // Locals declared in each open scope, innermost last
+    private final List<List<Local>> scopes = new ArrayList<>();
+    private int position;
+
+    private LuaUsage() {
+    }
+
+    static LuaUsage of(Chunk chunk) {
+        final LuaUsage usage = new LuaUsage();
+        usage.block(chunk.body);
+        return usage;
+    }
+
+    /**
+     * @return Whether a local declared where the other local is may take the name of the variable
+     */
+    boolean mayHide(Local local, Local hidden) {
+        final Variable var = locals.get(local);
+        return locals.get(hidden).unused(var.declared, var.outOfScope);
+    }
+
+    /**
+     * @return Whether a local declared where the other local is may take the name of the global
+     */
+    boolean mayHide(Local local, String global) {
+        final Variable var = locals.get(local);
+        final Variable hidden = globals.get(global);
+        return hidden == null || hidden.unused(var.declared, var.outOfScope);
+    }
+
+    // ---------------------------------------- Scopes ----------------------------------------
+
+    private void open() {
+        scopes.add(new ArrayList<>());
+    }
+
+    private void close() {
+        position++;
+        for (final Local local : scopes.remove(scopes.size() - 1))
+            locals.get(local).outOfScope = position;
+    }
+
+    private void declare(Local local) {
+        final Variable var = new Variable();
+        var.declared = ++position;
+        locals.put(local, var);
+        scopes.get(scopes.size() - 1).add(local);
+    }
+
+    private void refer(Name name) {
+        final Variable var = name.local == null ? globals.computeIfAbsent(name.name, (k) -> new Variable()) : locals.get(name.local);
+        var.refer(++position);
+    }
+
+    // ---------------------------------------- Tree ----------------------------------------
+
+    private void block(Block block) {
+        open();
+        statements(block.stats);
+        close();
+    }
+
+    private void statements(List<Stat> stats) {
+        for (final Stat stat : stats)
+            statement(stat);
+    }
+
+    private void statement(Stat stat) {
+        if (stat instanceof LocalStat) {
+            // Declared after their values
+            exprs(((LocalStat) stat).values);
+            for (final Local local : ((LocalStat) stat).vars)
+                declare(local);
+        } else if (stat instanceof AssignStat) {
+            exprs(((AssignStat) stat).targets);
+            exprs(((AssignStat) stat).values);
+        } else if (stat instanceof CallStat) {
+            expr(((CallStat) stat).call);
+        } else if (stat instanceof LocalFunctionStat) {
+            declare(((LocalFunctionStat) stat).var);
+            funcBody(((LocalFunctionStat) stat).func);
+        } else if (stat instanceof FunctionStat) {
+            expr(((FunctionStat) stat).name);
+            funcBody(((FunctionStat) stat).func);
+        } else if (stat instanceof IfStat) {
+            final IfStat cond = (IfStat) stat;
+            for (int i = 0; i < cond.conds.size(); i++) {
+                expr(cond.conds.get(i));
+                block(cond.blocks.get(i));
+            }
+            if (cond.orElse != null)
+                block(cond.orElse);
+        } else if (stat instanceof WhileStat) {
+            expr(((WhileStat) stat).cond);
+            block(((WhileStat) stat).body);
+        } else if (stat instanceof DoStat) {
+            block(((DoStat) stat).body);
+        } else if (stat instanceof NumericForStat) {
+            final NumericForStat loop = (NumericForStat) stat;
+            expr(loop.start);
+            expr(loop.limit);
+            if (loop.step != null)
+                expr(loop.step);
+
+            open();
+            declare(loop.var);
+            block(loop.body);
+            close();
+        } else if (stat instanceof GenericForStat) {
+            final GenericForStat loop = (GenericForStat) stat;
+            exprs(loop.iterators);
+
+            open();
+            for (final Local local : loop.vars)
+                declare(local);
+            block(loop.body);
+            close();
+        } else if (stat instanceof RepeatStat) {
+            open();
+            statements(((RepeatStat) stat).body.stats);
+            expr(((RepeatStat) stat).cond);
+            close();
+        } else if (stat instanceof ReturnStat) {
+            exprs(((ReturnStat) stat).values);
+        }
+    }
+
+    private void funcBody(FuncBody func) {
+        open();
+        if (func.self != null)
+            declare(func.self);
+        for (final Local local : func.params)
+            declare(local);
+
+        block(func.body);
+        close();
+    }
+
+    private void exprs(List<Expr> exprs) {
+        for (final Expr expr : exprs)
+            expr(expr);
+    }
+
+    private void expr(Expr expr) {
+        if (expr instanceof Name) {
+            refer((Name) expr);
+        } else if (expr instanceof Index) {
+            expr(((Index) expr).base);
+            expr(((Index) expr).key);
+        } else if (expr instanceof Member) {
+            expr(((Member) expr).base);
+        } else if (expr instanceof Call) {
+            expr(((Call) expr).base);
+            exprs(((Call) expr).args);
+        } else if (expr instanceof Function) {
+            funcBody(((Function) expr).func);
+        } else if (expr instanceof Table) {
+            for (final Field field : ((Table) expr).fields) {
+                if (field.key != null)
+                    expr(field.key);
+                expr(field.value);
+            }
+        } else if (expr instanceof Binary) {
+            expr(((Binary) expr).left);
+            expr(((Binary) expr).right);
+        } else if (expr instanceof Unary) {
+            expr(((Unary) expr).operand);
+        } else if (expr instanceof Paren) {
+            expr(((Paren) expr).inner);
+        }
+    }
+
+    private static final class Variable {
+
+        int declared, outOfScope;
+        // Positions of every reference, ascending
+        private int[] refs = new int[2];
+        private int count;
+
+        void refer(int position) {
+            if (count == refs.length)
+                refs = Arrays.copyOf(refs, count * 2);
+            refs[count++] = position;
+        }
+
+        /**
+         * @return Whether the variable is not referred to between the positions, exclusive
+         */
+        boolean unused(int from, int to) {
+            int i = Arrays.binarySearch(refs, 0, count, from + 1);
+            if (i < 0)
+                i = -i - 1;
+
+            return i == count || refs[i] >= to;
+        }
+    }
+}
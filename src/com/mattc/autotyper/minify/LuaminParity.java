@@ -0,0 +1,306 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.util.IOUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the native {@link LuaMinifier} against luamin, which serves as the oracle: <br />
+ * <br />
+ * <code>java -cp ccautotyper.jar com.mattc.autotyper.minify.LuaminParity &lt;file or directory&gt;...</code> <br />
+ * <br />
+ * For every Lua file it reports whether the native output agrees with luamin, and the size, time and
+ * memory each takes. Programs are compared in their {@link LuaMinifier#canonical(CharSequence) canonical}
+ * form, so differently named locals do not matter. Where luamin differs because of one of its known
+ * {@link LuaminBug bugs}, i.e. dropping the parentheses of <code>a-(b-c)</code>, the native output is
+ * compared to the source instead, as it is when luamin is not available. <br />
+ * <br />
+ * Exits with 1 if the native output of any file disagrees with luamin for any other reason.
+ *
+ * @author Glossawy
+ */
+public final class LuaminParity {
+
+    private static final int RUNS = 5;
+
+    private LuaminParity() {
+        // DO NOT INSTANTIATE
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: LuaminParity <file or directory>...");
+            System.exit(2);
+        }
+
+        final List<Path> files = new ArrayList<>();
+        for (final String arg : args) {
+            try (Stream<Path> paths = Files.walk(Paths.get(arg))) {
+                files.addAll(paths.filter((p) -> p.toString().endsWith(".lua") && Files.isRegularFile(p)).collect(Collectors.toList()));
+            }
+        }
+
+        // Loading luamin is timed on its own, it takes longer than minifying most files
+        long start = System.nanoTime();
+        try {
+            Minifier.luamin("");
+        } catch (final Exception | LinkageError e) {
+            System.out.println("luamin is not available, only checking the native minifier: " + e);
+        }
+        System.out.printf("Loaded luamin in %,d ms%n", (System.nanoTime() - start) / 1000000);
+
+        int failed = 0;
+        for (final Path file : files) {
+            if (!check(file))
+                failed++;
+        }
+
+        System.out.printf("%,d of %,d files minified faithfully%n", files.size() - failed, files.size());
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static boolean check(Path file) throws IOException {
+        final String src = IOUtils.fileToString(file.toFile(), StandardCharsets.UTF_8);
+        System.out.println(file);
+
+        final String expected;
+        try {
+            expected = LuaMinifier.canonical(src);
+        } catch (final LuaSyntaxException e) {
+            System.out.println("\tNot valid Lua: " + e.getMessage());
+            return true;
+        }
+
+        final Run nativeRun = new Run(), luaminRun = new Run();
+        String nativeOut = null, luaminOut = null;
+        for (int i = 0; i < RUNS; i++) {
+            try {
+                nativeOut = nativeRun.time(() -> LuaMinifier.minify(src));
+            } catch (final Exception e) {
+                System.out.println("\tNative minifier failed: " + e);
+                return false;
+            }
+
+            try {
+                luaminOut = luaminRun.time(() -> Minifier.luamin(src));
+            } catch (final Exception | LinkageError e) {
+                luaminOut = null;
+            }
+        }
+
+        System.out.printf("\tNative : %,9d chars %,7d ms %,9d KB%n", nativeOut.length(), nativeRun.millis(), nativeRun.kilobytes());
+        final String actual = canonical(nativeOut, "Native");
+        if (actual == null)
+            return false;
+
+        if (luaminOut == null) {
+            System.out.println("\tluamin failed, only comparing the native output to the source");
+            return agrees(expected, actual, "Native");
+        }
+
+        System.out.printf("\tluamin : %,9d chars %,7d ms %,9d KB%n", luaminOut.length(), luaminRun.millis(), luaminRun.kilobytes());
+        final String oracle = canonical(Minifier.repairBrokenLuaStrings(luaminOut), "luamin");
+        if (actual.equals(oracle))
+            return true;
+
+        final LuaminBug bug = LuaminBug.of(expected, oracle, luaminOut);
+        if (bug == null)
+            return oracle != null && agrees(oracle, actual, "Native");
+
+        System.out.println("\tluamin " + bug.description + ", only comparing the native output to the source");
+        return agrees(expected, actual, "Native");
+    }
+
+    // The canonical form of minified output, null if it is not valid Lua
+    private static String canonical(String minified, String name) {
+        try {
+            return LuaMinifier.canonical(minified);
+        } catch (final LuaSyntaxException e) {
+            System.out.println("\t" + name + " output is not valid Lua: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean agrees(String expected, String actual, String name) {
+        if (expected.equals(actual))
+            return true;
+
+        final int at = mismatch(expected, actual, 0);
+        System.out.printf("\t%s differs at %,d: expected '%s' but got '%s'%n", name, at, excerpt(expected, at), excerpt(actual, at));
+        return false;
+    }
+
+    // Index of the first difference at or after from, the length of the shorter if one starts the other
+    private static int mismatch(CharSequence a, CharSequence b, int from) {
+        int at = from;
+        while (at < a.length() && at < b.length() && a.charAt(at) == b.charAt(at))
+            at++;
+
+        return at;
+    }
+
+    private static String excerpt(String s, int at) {
+        return s.substring(Math.max(0, at - 30), Math.min(s.length(), at + 30)).replace("\n", "\\n");
+    }
+
+    /**
+     * Best time and least memory allocated of the runs of a minifier
+     */
+    private static final class Run {
+
+        private long nanos = Long.MAX_VALUE, bytes = Long.MAX_VALUE;
+
+        String time(Minify minify) throws Exception {
+            final long allocated = allocated();
+            final long start = System.nanoTime();
+            final String result = minify.run();
+
+            nanos = Math.min(nanos, System.nanoTime() - start);
+            bytes = Math.min(bytes, allocated() - allocated);
+            return result;
+        }
+
+        long millis() {
+            return nanos / 1000000;
+        }
+
+        long kilobytes() {
+            return bytes / 1024;
+        }
+
+        // Bytes allocated by this thread so far, where the JVM reports it
+        private static long allocated() {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean)
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+            return 0;
+        }
+    }
+
+    private interface Minify {
+        String run() throws Exception;
+    }
+
+    /**
+     * The bugs of luamin that the native minifier does not share. Where luamin differs from the native
+     * output only because of one of these, luamin is wrong and the native output is compared to the
+     * source instead. Any other difference fails.
+     */
+    private enum LuaminBug {
+
+        /**
+         * <code>("%d"):format(n)</code> is written as <code>"%d":format(n)</code>, which is not valid Lua.
+         */
+        UNWRAPPED_PREFIX("drops the parentheses around a string or table that is indexed or called") {
+            @Override
+            boolean explains(String expected, String oracle, String luamin) {
+                return oracle == null && UNWRAPPED.matcher(luamin).find();
+            }
+        },
+
+        /**
+         * <code>a-(b-c)</code> is written as <code>a-b-c</code>.
+         */
+        DROPPED_PARENTHESES("drops parentheses that change the order of evaluation") {
+            @Override
+            boolean explains(String expected, String oracle, String luamin) {
+                return oracle != null && isWithoutParentheses(expected, oracle);
+            }
+        };
+
+        // A quoted string or table constructor directly followed by an index or a call
+        private static final Pattern UNWRAPPED = Pattern.compile("[\"'}]\\s*(?::|\\.(?!\\.)|\\[|\\()");
+
+        private final String description;
+
+        LuaminBug(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @param expected Canonical form of the source
+         * @param oracle   Canonical form of the luamin output, null if it is not valid Lua
+         * @param luamin   luamin output
+         * @return Whether this bug accounts for luamin differing from the source
+         */
+        abstract boolean explains(String expected, String oracle, String luamin);
+
+        static LuaminBug of(String expected, String oracle, String luamin) {
+            for (final LuaminBug bug : values()) {
+                if (bug.explains(expected, oracle, luamin))
+                    return bug;
+            }
+
+            return null;
+        }
+
+        // Whether removing some parenthesized groups from the expected program, and nothing else, gives the actual
+        private static boolean isWithoutParentheses(String expected, String actual) {
+            final StringBuilder stripped = new StringBuilder(expected);
+            int at = mismatch(stripped, actual, 0);
+            while (at < stripped.length() && stripped.charAt(at) == '(') {
+                final int close = closing(stripped, at);
+                if (close < 0)
+                    return false;
+
+                stripped.deleteCharAt(close).deleteCharAt(at);
+                at = mismatch(stripped, actual, at);
+            }
+
+            return at == stripped.length() && at == actual.length();
+        }
+
+        // Index of the parenthesis closing the one at open, skipping strings, or -1 if there is none
+        private static int closing(CharSequence s, int open) {
+            int depth = 0;
+            for (int i = open; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c == '"' || c == '\'') {
+                    while (++i < s.length() && s.charAt(i) != c) {
+                        if (s.charAt(i) == '\\')
+                            i++;
+                    }
+                } else if (c == '[') {
+                    i = longStringEnd(s, i);
+                    if (i < 0)
+                        return -1;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        // Index of the last character of a long string starting at i, i itself if it is a plain '[', or -1 if unterminated
+        private static int longStringEnd(CharSequence s, int i) {
+            int level = 0;
+            while (i + 1 + level < s.length() && s.charAt(i + 1 + level) == '=')
+                level++;
+            if (i + 1 + level >= s.length() || s.charAt(i + 1 + level) != '[')
+                return i;
+
+            final StringBuilder close = new StringBuilder("]");
+            for (int l = 0; l < level; l++)
+                close.append('=');
+            close.append(']');
+
+            final int end = s.toString().indexOf(close.toString(), i + 2 + level);
+            return end < 0 ? -1 : end + close.length() - 1;
+        }
+    }
+}
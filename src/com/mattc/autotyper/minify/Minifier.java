@@ -1,32 +1,38 @@
 package com.mattc.autotyper.minify;
 
-import com.google.common.base.Charsets;
-import com.google.common.collect.Sets;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
+import com.google.common.io.CharStreams;
 import com.mattc.autotyper.Ref;
+import com.mattc.autotyper.util.Console;
 import com.mattc.autotyper.util.IOUtils;
 import com.mattc.autotyper.util.OS;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
 
 /**
  * A central location for the minification of Lua Files. This will likely
  * be expanded in the future, or at the least an API will be provided allowing for
- * independent Minifiers to be created and used as needed.
+ * independent Minifiers to be created and used as needed. <br />
+ * <br />
+ * Lua is minified natively by the {@link LuaMinifier}. luamin, running in Nashorn, is only loaded
+ * if the native parser rejects a source, since loading it alone takes seconds and Nashorn is not part
+ * of every Java Runtime. luamin is read from the classpath, or from {@link #SCRIPT_DIR} if it is not
+ * packaged.
  *
  * @author Glossawy
  */
@@ -34,189 +40,330 @@ public final class Minifier {
 
     public static final Path SCRIPT_DIR = Paths.get("scripts");
 
-    private static final String HEADER_COMMENT = "-- Minified by " + Ref.APP_NAME + " v" + Ref.VERSION + " by " + Ref.AUTHOR + " (https://matthewcrocco.us) \n" +
-            "-- Using luamin by Mathias Bynens (http://mathiasbynens.be) via Nashorn \n\n";
+    /**
+     * Version of the minified output, part of the key of any cached output. Must be incremented whenever
+     * the output for the same input changes.
+     */
+    static final int VERSION = 1;
+
+    private static final String HEADER_COMMENT = "-- Minified by " + Ref.APP_NAME + " v" + Ref.VERSION + " by " + Ref.AUTHOR + " (https://matthewcrocco.us) \n";
+    private static final String LUAMIN_COMMENT = "-- Using luamin by Mathias Bynens (http://mathiasbynens.be) via Nashorn \n";
 
     /**
-     * Nashorn JavaScript Engine -- {@link ScriptEngine} Object
+     * Classpath directory of luamin and luaparse, they are read from {@link #SCRIPT_DIR} if they are not
+     * on the classpath
      */
-    private static final ScriptEngine nashornJS = new ScriptEngineManager().getEngineByName("nashorn");
+    private static final String SCRIPT_RESOURCE_DIR = "res/";
+    private static final String WARM_UP_RESOURCE = "com/mattc/autotyper/minify/warmup.lua";
+    private static final int WARM_UP_RUNS = 250;
+
+    private static CompletableFuture<Void> warmUp;
+
     /**
-     * Nashorn JavaScript Engine as Invocable -- {@link Invocable} Object
+     * luamin and luaparse compiled and loaded into Nashorn, initialized on first use
      */
-    private static final Invocable nashorn = (Invocable) nashornJS;
+    private static final class Luamin {
 
-    private static final Object luaparseObj, luaminObj;
+        /**
+         * Nashorn JavaScript Engine -- {@link ScriptEngine} Object
+         */
+        private static final ScriptEngine nashornJS = new ScriptEngineManager().getEngineByName("nashorn");
+        /**
+         * Nashorn JavaScript Engine as Invocable -- {@link Invocable} Object
+         */
+        private static final Invocable nashorn = (Invocable) nashornJS;
 
-    static {
-        try {
-            // Load luaparse requirement, then load luamin
-            nashornJS.eval(Files.newBufferedReader(SCRIPT_DIR.resolve(Paths.get("luamin", "node_modules", "luaparse", "luaparse.js"))));
-            nashornJS.eval(Files.newBufferedReader(SCRIPT_DIR.resolve(Paths.get("luamin", "luamin.js"))));
-
-            // Store global Parse Options as JavaScript Object
-            nashornJS.eval("var _PARSE_VARS = {scope: true}");
-
-            // Retrieve LuaParse and LuaMin Objects on which to execute Lua Methods from
-            luaparseObj = nashornJS.get("luaparse");
-            luaminObj = nashornJS.get("luamin");
-        } catch (IOException | ScriptException e) {
-            throw new ExceptionInInitializerError(e);
+        private static final Object luaparseObj, luaminObj;
+
+        static {
+            if (nashornJS == null)
+                throw new ExceptionInInitializerError("Nashorn is not available in this Java Runtime");
+
+            try {
+                final long start = System.nanoTime();
+
+                // Load luaparse requirement, then load luamin
+                compile("luamin/node_modules/luaparse/luaparse.js").eval();
+                compile("luamin/luamin.js").eval();
+
+                // Store global Parse Options as JavaScript Object
+                nashornJS.eval("var _PARSE_VARS = {scope: true}");
+
+                // Retrieve LuaParse and LuaMin Objects on which to execute Lua Methods from
+                luaparseObj = nashornJS.get("luaparse");
+                luaminObj = nashornJS.get("luamin");
+
+                Console.info(String.format("Loaded luamin in %,d ms", (System.nanoTime() - start) / 1000000));
+            } catch (IOException | ScriptException e) {
+                throw new ExceptionInInitializerError(e);
+            }
         }
+
+        private static CompiledScript compile(String script) throws IOException, ScriptException {
+            final InputStream in = Minifier.class.getClassLoader().getResourceAsStream(SCRIPT_RESOURCE_DIR + script);
+
+            try (Reader reader = in != null ? new InputStreamReader(in, StandardCharsets.UTF_8) : Files.newBufferedReader(SCRIPT_DIR.resolve(script), StandardCharsets.UTF_8)) {
+                return ((Compilable) nashornJS).compile(reader);
+            }
+        }
+    }
+
+    /**
+     * Minify a sample program on a background thread until the JIT has compiled the minifier, so that
+     * the first file is minified at full speed. Only the first call starts warming up, later calls
+     * return the same future and their progress is never reported. <br />
+     * <br />
+     * luamin is not warmed up, it is only a fallback and loading it costs seconds and tens of megabytes.
+     *
+     * @param progress Receives the fraction of the warm-up done, on the warm-up thread
+     * @return Future completed once the minifier is warm
+     */
+    public static synchronized CompletableFuture<Void> warmUp(DoubleConsumer progress) {
+        if (warmUp != null)
+            return warmUp;
+
+        warmUp = CompletableFuture.runAsync(() -> {
+            final long start = System.nanoTime();
+
+            try (InputStream in = Minifier.class.getClassLoader().getResourceAsStream(WARM_UP_RESOURCE)) {
+                if (in == null)
+                    throw new IOException(WARM_UP_RESOURCE + " is missing");
+
+                final String sample = CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8));
+                for (int i = 1; i <= WARM_UP_RUNS; i++) {
+                    LuaMinifier.minify(sample);
+                    progress.accept(i / (double) WARM_UP_RUNS);
+                }
+            } catch (IOException | LuaSyntaxException e) {
+                // Only the first minification is slower without it
+                Console.warn("Could not warm up the minifier: " + e.getMessage());
+                progress.accept(1);
+                return;
+            }
+
+            Console.info(String.format("Warmed up the minifier in %,d ms", (System.nanoTime() - start) / 1000000));
+        }, (r) -> {
+            final Thread thread = new Thread(r, "MINIFY_WARMUP");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        });
+
+        return warmUp;
     }
 
     /**
-     * Reads in the entire file and passes to LuaMin for minification.
+     * Reads in the entire file and minifies it.
      *
      * @param path File Path
      * @return Minified Code as String
-     * @throws IOException     If luamin or luaparse is corrupted in some way
-     * @throws ScriptException If an error occurs during evaluation
+     * @throws IOException     If the file could not be read
+     * @throws ScriptException If the file could not be minified
      */
     public static String minifyFile(Path path) throws IOException, ScriptException {
-        String content = IOUtils.fileToString(path.toFile(), StandardCharsets.UTF_8);
-
-        final Object res;
-        final String s;
-        try {
-            // Get Result of luaparse#parse, pass to luamin#minify and get String result
-            res = nashorn.invokeMethod(luaparseObj, "parse", content);
-            s = nashorn.invokeMethod(luaminObj, "minify", res).toString();
-        } catch (NoSuchMethodException e) {
-            throw new IOException("Something is wrong with luaparse.parse and/or luamin.minify! Methods not found!", e);
-        }
-
-        return HEADER_COMMENT + repairBrokenLuaStrings(s.replace(";", "\n"));
+        return minify(IOUtils.fileToString(path.toFile(), StandardCharsets.UTF_8));
     }
 
     /**
      * Minify contents of file the standard way and then write out minified contents
-     * to a temporary file.
+     * to a copy. Copies are kept in the cache, so minifying the same contents again
+     * returns the same copy without minifying.
      *
      * @param file Path to file to minify
      * @return Minified File
-     * @throws IOException If failed to create or write to temporary file
+     * @throws IOException If failed to read the file or to write the copy
      * @throws ScriptException If failed to minify
      */
     public static Path minifyFileToCopy(Path file) throws IOException, ScriptException {
-        String result = minifyFile(file);
+        return MinifyCache.minify(file);
+    }
 
+    /**
+     * Write minified contents out to a temporary file.
+     *
+     * @param content Minified Contents, UTF-8 encoded
+     * @return Temporary File
+     * @throws IOException If failed to create or write to temporary file
+     */
+    static Path writeTemp(byte[] content) throws IOException {
         Path temp;
         if(OS.get() == OS.WINDOWS || OS.get() == OS.UNSUPPORTED)
             temp = Files.createTempFile("ccminify", "");
         else
             temp = Files.createTempFile("ccminify", "", IOUtils.POSIX_STANDARD_PERMS);
 
-        Files.write(temp, result.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        Files.write(temp, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
         return temp;
     }
 
     /**
-     * Use LuaMin to minify a specific piece of code (as a string).
+     * Minify a specific piece of code (as a string), falling back to luamin if it can not be parsed.
      *
      * @param code Code to minify
      * @return Minified Code
-     * @throws ScriptException
+     * @throws ScriptException If the code is not valid Lua
      */
     public static String minify(String code) throws ScriptException {
-        final Object ast;
-        final String res;
-
         try {
-            ast = nashorn.invokeMethod(luaparseObj, "parse", code, nashornJS.get("_PARSE_VARS"));
-            res = nashorn.invokeMethod(luaminObj, "minify", ast).toString();
-        } catch (NoSuchMethodException e) {
-            throw new ScriptException("Something is wrong with luaparse.parse and/or luamin.minify! Methods not found!");
-        }
+            return HEADER_COMMENT + "\n" + LuaMinifier.minify(code);
+        } catch (final LuaSyntaxException e) {
+            final String res;
+            try {
+                res = luamin(code);
+            } catch (ScriptException | LinkageError ex) {
+                // The native error is the more precise of the two
+                throw e;
+            }
 
-        return HEADER_COMMENT + "\n" + res.replace(";", "\n");
+            Console.warn("Minified using luamin, the source could not be parsed: " + e.getMessage());
+            return HEADER_COMMENT + LUAMIN_COMMENT + "\n" + repair(res, true);
+        }
     }
 
-    // Pre-compiled Regex Pattern for Single or Double Quoted String
-    private static Pattern singleQuotePattern = Pattern.compile("('(?:[^']+|'')')", Pattern.CASE_INSENSITIVE | Pattern.DOTALL | Pattern.MULTILINE);
-    private static Pattern doublequotePattern = Pattern.compile("(\"(?:[^\"]+|\"\")\")", Pattern.CASE_INSENSITIVE | Pattern.DOTALL | Pattern.MULTILINE);
-    private static Pattern ccLineEndingPattern = Pattern.compile("\n");
-
-    // Fast Hash Function at 32 bits. We don't need a high quality hash function. Minimal bit count.
-    private static HashFunction captureHasher = Hashing.goodFastHash(32);
-
-    // FIXME The current regular expression of the type:
-    /*
-     "This is aa string \"containing
-     \" another escaped string"
-
-     The line ending after 'containing' will not be fixed and the LuaJ Interpreter will fail
-     claiming the string is unterminated.
-
-     This can possibly be fixed by placing an exception for [\"] and [\'] in the regexs.
+    /**
+     * Use LuaMin to minify a specific piece of code, exactly as luamin writes it. <br />
+     * <br />
+     * The engine is not safe for concurrent use, so calls are serialized. Only sources the native parser
+     * rejects get here, which does not justify a pool of engines that each take seconds to load.
+     *
+     * @param code Code to minify
+     * @return Minified Code
+     * @throws ScriptException If luamin fails
+     * @throws LinkageError    If luamin could not be loaded
      */
+    static String luamin(String code) throws ScriptException {
+        final Object ast;
+
+        synchronized (Luamin.nashornJS) {
+            try {
+                ast = Luamin.nashorn.invokeMethod(Luamin.luaparseObj, "parse", code, Luamin.nashornJS.get("_PARSE_VARS"));
+                return Luamin.nashorn.invokeMethod(Luamin.luaminObj, "minify", ast).toString();
+            } catch (NoSuchMethodException e) {
+                throw new ScriptException("Something is wrong with luaparse.parse and/or luamin.minify! Methods not found!");
+            }
+        }
+    }
 
     /**
-     * Repair Lua Strings that are broken by LuaMin during minification. This induces some overhead
-     * but attempts to use pre-compiled regular expression.
-     *
-     * Specifically this checks if a line contains any line endings. If they do, a '\' is inserted
-     * before the line ending to allow Lua to continue to the next line. This is done for each
-     * line ending in the string. <br />
+     * Repair Lua Strings that contain line endings, i.e. those broken by luamin during minification. <br />
      * <br />
-     * This method makes extensive use of Regular Expressions. Any patterns are pre-compiled and thus
-     * cached for performance later on.
+     * Specifically a '\' is inserted before every line ending in a quoted string, which allows Lua to
+     * continue the string on the next line instead of claiming it is unterminated. Escaped characters,
+     * comments and long strings (<code>[[...]]</code>, <code>[==[...]==]</code>) are copied as they are.
+     * The text is scanned once, so this takes linear time.
      *
      * @param s String to repair
      * @return String repaired as described above
      */
-    private static String repairBrokenLuaStrings(String s) {
-        Matcher singleMatcher = singleQuotePattern.matcher(s);
-        Matcher doubleMatcher = doublequotePattern.matcher(s);
-        Set<HashCode> hashes = Sets.newHashSetWithExpectedSize(singleMatcher.groupCount() + doubleMatcher.groupCount());
-
-        // First fix Single Quote Strings, then fix Double Quote Strings
-        s = applyLineEndingFix(s, singleMatcher, hashes);
-        s = applyLineEndingFix(s, doubleMatcher, hashes);
-
-        return s;
+    static String repairBrokenLuaStrings(String s) {
+        return repair(s, false);
     }
 
-
     /**
-     * Applies the line ending fix which will replace any line ending characters ('\n' for CC) with
-     * '\\\n' which inserts a backslash before the line ending, this is so Lua will move on to the next line
-     * without claiming something like a String is unterminated when the end quote is in the proceeding lines. <br />
+     * Repair broken strings as {@link #repairBrokenLuaStrings(String)} does in a single pass over the
+     * text, writing into one buffer. <br />
      * <br />
-     * If a HashSet is passed in, the HashSet will be populated with any HashCodes generated in this method
-     * as a side effect. <br />
-     * <br />
-     * If no HashSet is provided, a new one is created for temporary use.
+     * If statements are split, every ';' outside of strings and comments is replaced by a line ending
+     * so the output is typed a statement per line. A ';' inside of a string is left alone.
      *
-     * @param text Text to Scan
-     * @param matcher Regular Expression Matcher to use
-     * @param usedStringHashes HashSet to store HashCodes so that we do not evaluate the same capture over again
-     * @return The String with any captures containing '\n' being fixed with '\\\n'
+     * @param s               Text to repair
+     * @param splitStatements Whether to replace statement separators by line endings
+     * @return The repaired text
+     */
+    private static String repair(CharSequence s, boolean splitStatements) {
+        final int len = s.length();
+        final StringBuilder out = new StringBuilder(len + 16);
+
+        int i = 0;
+        while (i < len) {
+            final char c = s.charAt(i);
+
+            if (c == '"' || c == '\'') {
+                // Quoted string, up to the closing quote or the end of the text
+                out.append(c);
+                i++;
+                while (i < len) {
+                    final char d = s.charAt(i++);
+                    if (d == '\\' && i < len) {
+                        // An escaped line ending may be \r\n, which is one line ending to Lua
+                        final char e = s.charAt(i++);
+                        out.append(d).append(e);
+                        if (e == '\r' && i < len && s.charAt(i) == '\n')
+                            out.append(s.charAt(i++));
+                    } else if (d == '\n' || d == '\r') {
+                        out.append('\\').append(d);
+                        if (d == '\r' && i < len && s.charAt(i) == '\n')
+                            out.append(s.charAt(i++));
+                    } else {
+                        out.append(d);
+                        if (d == c)
+                            break;
+                    }
+                }
+            } else if (c == '-' && i + 1 < len && s.charAt(i + 1) == '-') {
+                // Comment, long or up to the end of the line
+                int end = longBracketEnd(s, i + 2);
+                if (end < 0) {
+                    end = i + 2;
+                    while (end < len && s.charAt(end) != '\n' && s.charAt(end) != '\r')
+                        end++;
+                }
+
+                out.append(s, i, end);
+                i = end;
+            } else if (c == '[') {
+                final int end = longBracketEnd(s, i);
+                if (end < 0) {
+                    out.append(c);
+                    i++;
+                } else {
+                    out.append(s, i, end);
+                    i = end;
+                }
+            } else {
+                out.append(splitStatements && c == ';' ? '\n' : c);
+                i++;
+            }
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * @return The end of the long bracket, i.e. <code>[==[...]==]</code>, at the index, the length of the
+     * text if it is not closed and -1 if there is no long bracket at the index
      */
-    private static String applyLineEndingFix(String text, Matcher matcher, Set<HashCode> usedStringHashes) {
-        if(usedStringHashes == null)
-            usedStringHashes = Sets.newHashSetWithExpectedSize(matcher.groupCount());
-
-        if(matcher.find()) {
-            for(int i = 1; i <= matcher.groupCount(); i++) {
-                // Get the next capture and generate it's accompanying GoodFastHash
-                String capture = matcher.group(i);
-                HashCode cHash = captureHasher.hashString(capture, Charsets.UTF_8);
-
-                // If we have already evaluated this capture, continue to next iteration
-                if(usedStringHashes.contains(cHash))
-                    continue;
-
-                // Only apply fix if '\n' exists in the capture.
-                Matcher cMatcher = ccLineEndingPattern.matcher(capture);
-                if(cMatcher.find())
-                    text = text.replace(capture, cMatcher.replaceAll("\\\\\n"));
-
-                usedStringHashes.add(cHash);
+    private static int longBracketEnd(CharSequence s, int start) {
+        final int len = s.length();
+        if (start >= len || s.charAt(start) != '[')
+            return -1;
+
+        int level = 0;
+        int i = start + 1;
+        while (i < len && s.charAt(i) == '=') {
+            level++;
+            i++;
+        }
+
+        if (i >= len || s.charAt(i) != '[')
+            return -1;
+
+        // Find ']', exactly 'level' '=' and ']'
+        for (i++; i < len; i++) {
+            if (s.charAt(i) != ']')
+                continue;
+
+            int j = i + 1, eq = 0;
+            while (j < len && s.charAt(j) == '=') {
+                eq++;
+                j++;
             }
+
+            if (eq == level && j < len && s.charAt(j) == ']')
+                return j + 1;
         }
 
-        return text;
+        return len;
     }
 }
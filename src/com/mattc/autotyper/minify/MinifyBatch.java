@@ -0,0 +1,171 @@
+package com.mattc.autotyper.minify;
+
+import com.mattc.autotyper.util.OS;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Minifies many files at once, spread over a pool of as many threads as there are processors. Every file
+ * is cached as {@link Minifier#minifyFileToCopy(Path)} caches it, but nothing a batch produced is evicted
+ * while the batch is still running. <br />
+ * <br />
+ * The native minifier keeps no state between files, so every thread minifies independently. Only files
+ * that fall back to luamin wait on each other, since there is a single Nashorn engine. <br />
+ * <br />
+ * It can also be run on its own: <br />
+ * <br />
+ * <code>java -cp ccautotyper.jar com.mattc.autotyper.minify.MinifyBatch &lt;file or directory&gt;...</code>
+ *
+ * @author Glossawy
+ */
+public final class MinifyBatch {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(OS.processorCount(), (pool) -> {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("MINIFY-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    private MinifyBatch() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * Minify every file in parallel.
+     *
+     * @param files Files to minify
+     * @return The result for every file, in the order of the files
+     */
+    public static List<Result> minify(List<Path> files) {
+        final List<ForkJoinTask<Result>> tasks = new ArrayList<>(files.size());
+        for (final Path file : files)
+            tasks.add(POOL.submit(() -> minify(file)));
+
+        final List<Result> results = tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+        MinifyCache.unpin(results.stream().filter(Result::isSuccess).map(Result::getMinified).collect(Collectors.toList()));
+        return results;
+    }
+
+    /**
+     * Minify every Lua file in a directory and its subdirectories in parallel.
+     *
+     * @param dir Directory to minify
+     * @return The result for every file, ordered by path
+     * @throws IOException If the directory could not be read
+     */
+    public static List<Result> minifyDirectory(Path dir) throws IOException {
+        return minify(luaFiles(dir));
+    }
+
+    private static Result minify(Path file) {
+        final long start = System.nanoTime();
+        try {
+            return new Result(file, MinifyCache.minify(file, true), null, System.nanoTime() - start);
+        } catch (final Exception e) {
+            return new Result(file, null, e, System.nanoTime() - start);
+        }
+    }
+
+    private static List<Path> luaFiles(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter((p) -> p.toString().endsWith(".lua") && Files.isRegularFile(p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: MinifyBatch <file or directory>...");
+            System.exit(2);
+        }
+
+        final List<Path> files = new ArrayList<>();
+        for (final String arg : args) {
+            final Path path = Paths.get(arg);
+            if (Files.isDirectory(path))
+                files.addAll(luaFiles(path));
+            else
+                files.add(path);
+        }
+
+        final long start = System.nanoTime();
+        final List<Result> results = minify(files);
+        final long millis = (System.nanoTime() - start) / 1000000;
+
+        int failed = 0;
+        for (final Result result : results) {
+            System.out.println(result);
+            if (!result.isSuccess())
+                failed++;
+        }
+
+        System.out.printf("Minified %,d of %,d files in %,d ms on %,d threads%n", files.size() - failed, files.size(), millis, POOL.getParallelism());
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * The outcome of minifying one file of a batch
+     */
+    public static final class Result {
+
+        private final Path file, minified;
+        private final Exception error;
+        private final long nanos;
+
+        private Result(Path file, Path minified, Exception error, long nanos) {
+            this.file = file;
+            this.minified = minified;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return The minified copy of the file, null if it could not be minified. It stays in the cache
+         * at least until the next file is minified after the batch.
+         */
+        public Path getMinified() {
+            return minified;
+        }
+
+        /**
+         * @return Why the file could not be minified, null if it was
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return Milliseconds taken to minify the file, or to find it in the cache
+         */
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null)
+                return String.format("%s: failed in %,d ms: %s", file, getMillis(), error.getMessage());
+
+            return String.format("%s: %s in %,d ms", file, minified, getMillis());
+        }
+    }
+}
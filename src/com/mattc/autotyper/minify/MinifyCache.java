@@ -0,0 +1,161 @@
+package com.mattc.autotyper.minify;
+
+import com.google.common.hash.Hashing;
+import com.mattc.autotyper.Downloader;
+import com.mattc.autotyper.Ref;
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.FileAgeComparator;
+import com.mattc.autotyper.util.OS;
+
+import javax.script.ScriptException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores minified Lua in the '.cctyper-cache' directory so that minifying the same content again only
+ * costs a hash of it. <br />
+ * <br />
+ * Output is keyed by a Murmur3 hash of the source content, the {@link Minifier#VERSION minifier version}
+ * and the application version, which is part of the header of the output. The least recently used
+ * output is evicted once the cache holds more than {@link #MAX_BYTES} bytes, except the output of a
+ * {@link MinifyBatch} that is still running.
+ *
+ * @author Glossawy
+ */
+final class MinifyCache {
+
+    private static final Path MINIFIED_DIR = Downloader.CACHE_DIR.resolve("minified");
+    private static final String MINIFIED_EXT = ".lua";
+    private static final long MAX_BYTES = OS.MemoryUnit.BYTES.convert(8, OS.MemoryUnit.MEGABYTES);
+
+    // Files never evicted, with the number of running batches that produced each
+    private static final Map<Path, Integer> pinned = new HashMap<>();
+
+    private MinifyCache() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * Retrieve the minified copy of a file from the cache or minify it and cache the result.
+     *
+     * @param file File to minify
+     * @return Minified File
+     * @throws IOException     If the file could not be read
+     * @throws ScriptException If the file could not be minified
+     */
+    static Path minify(Path file) throws IOException, ScriptException {
+        return minify(file, false);
+    }
+
+    /**
+     * Retrieve the minified copy of a file from the cache or minify it and cache the result.
+     *
+     * @param file File to minify
+     * @param pin  Whether to keep the copy from being evicted until it is {@link #unpin(Collection) unpinned}
+     * @return Minified File
+     * @throws IOException     If the file could not be read
+     * @throws ScriptException If the file could not be minified
+     */
+    static Path minify(Path file, boolean pin) throws IOException, ScriptException {
+        final byte[] content = Files.readAllBytes(file);
+        final String key = Hashing.murmur3_128().newHasher()
+                .putBytes(content)
+                .putInt(Minifier.VERSION)
+                .putString(Ref.VERSION, StandardCharsets.UTF_8)
+                .hash().toString();
+        final Path cached = MINIFIED_DIR.resolve(key + MINIFIED_EXT);
+        if (pin)
+            pin(cached);
+
+        final OS.MemoryUnit mem = OS.MemoryUnit.KILOBYTES;
+        final long size = mem.convert(content.length, OS.MemoryUnit.BYTES);
+
+        if (Files.isRegularFile(cached)) {
+            try {
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                Console.info(String.format("Loaded minified %s (%,d KB) from cache", file.getFileName(), size));
+                return cached;
+            } catch (final IOException e) {
+                Console.warn("Cached minified file " + cached.getFileName() + " is inaccessible, minifying... " + e.getMessage());
+            }
+        }
+
+        final long start = System.nanoTime();
+        final byte[] result;
+        try {
+            result = Minifier.minify(new String(content, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        } catch (final ScriptException | RuntimeException e) {
+            if (pin)
+                unpin(Collections.singleton(cached));
+            throw e;
+        }
+        Console.info(String.format("Minified %s (%,d KB) to %,d KB in %,d ms", file.getFileName(), size, mem.convert(result.length, OS.MemoryUnit.BYTES), (System.nanoTime() - start) / 1000000));
+
+        try {
+            write(cached, result);
+            clean();
+            return cached;
+        } catch (final IOException e) {
+            // A failure to cache should never prevent typing
+            Console.warn("Could not cache minified file: " + e.getMessage());
+            if (pin)
+                unpin(Collections.singleton(cached));
+            return Minifier.writeTemp(result);
+        }
+    }
+
+    private static synchronized void pin(Path path) {
+        pinned.merge(path, 1, Integer::sum);
+    }
+
+    /**
+     * Allow minified files to be evicted again, once for every time they were pinned.
+     *
+     * @param paths Minified Files
+     */
+    static synchronized void unpin(Collection<Path> paths) {
+        for (final Path path : paths)
+            pinned.computeIfPresent(path, (p, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Written beside the cache and moved in, so a cached file is never seen half written
+    private static void write(Path path, byte[] content) throws IOException {
+        Files.createDirectories(MINIFIED_DIR);
+
+        final Path temp = Files.createTempFile(MINIFIED_DIR, "ccminify", ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Retains the most recently used files that fit in MAX_BYTES, always at least the newest and the pinned
+    private static synchronized void clean() throws IOException {
+        final List<Path> list;
+        try (Stream<Path> paths = Files.list(MINIFIED_DIR)) {
+            list = paths.filter((p) -> p.toString().endsWith(MINIFIED_EXT))
+                    .sorted(FileAgeComparator.INSTANCE)
+                    .collect(Collectors.toList());
+        }
+
+        long total = 0;
+        for (int i = 0; i < list.size(); i++) {
+            total += Files.size(list.get(i));
+            if (i > 0 && total > MAX_BYTES && !pinned.containsKey(list.get(i)))
+                Files.deleteIfExists(list.get(i));
+        }
+    }
+}
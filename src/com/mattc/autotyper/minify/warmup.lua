@@ -0,0 +1,85 @@
+-- Minified repeatedly by Minifier.warmUp so that the JIT compiles the minifier before it is needed.
+-- It only has to cover the syntax, it is never run.
+
+local Queue = {}
+Queue.__index = Queue
+
+local insert, remove, floor = table.insert, table.remove, math.floor
+
+function Queue.new(capacity, ...)
+  local self = setmetatable({ first = 1, last = 0, items = {}, capacity = capacity or 16 }, Queue)
+  for i = 1, select("#", ...) do
+    self:push((select(i, ...)))
+  end
+  return self
+end
+
+function Queue:push(value)
+  if self.last - self.first + 1 >= self.capacity then
+    error(("queue is full (%d items)"):format(self.capacity), 2)
+  end
+  self.last = self.last + 1
+  self.items[self.last] = value
+end
+
+function Queue:pop()
+  if self.first > self.last then return nil end
+  local value = self.items[self.first]
+  self.items[self.first] = nil
+  self.first = self.first + 1
+  return value
+end
+
+local function checksum(s)
+  local sum, len = 0, #s
+  for i = 1, len, 2 do
+    local a, b = s:byte(i, i + 1)
+    sum = (sum * 31 + a * 256 + (b or 0)) % 65536
+  end
+  return sum
+end
+
+local escapes = { ["\n"] = "\\n", ['"'] = '\\"', [ [[\]] ] = [[\\]] }
+local banner = [==[
+  Long strings keep their ]] and [[ as written
+]==]
+
+local function describe(value, depth)
+  depth = depth or 0
+  local kind = type(value)
+  if kind == "table" and depth < 3 then
+    local parts = {}
+    for k, v in pairs(value) do
+      parts[#parts + 1] = tostring(k) .. "=" .. describe(v, depth + 1)
+    end
+    return "{" .. table.concat(parts, ", ") .. "}"
+  elseif kind == "string" then
+    return '"' .. value:gsub('[\n"\\]', escapes) .. '"'
+  elseif kind == "number" and value ~= floor(value) then
+    return string.format("%.3f", value)
+  else
+    return tostring(value)
+  end
+end
+
+local q = Queue.new(8, 0x1F, 2.5e-3, -7, not true, nil == false)
+repeat
+  local item = q:pop()
+  if item == nil then break end
+  print(describe(item), checksum(describe(item)) ^ 2 / 3 - -1 .. "")
+until #q.items == 0 and not (q.first <= q.last)
+
+local n = 0
+while n < 10 do
+  n = n + 1
+  if n % 2 == 0 then goto continue end
+  insert(q.items, { n, n * n, [n] = -n, name = "item" .. n })
+  ::continue::
+end
+
+do
+  local ok, err = pcall(function(...) return remove(q.items, 1), ... end, banner)
+  print(ok and err or "failed", #banner, (ok))
+end
+
+return Queue
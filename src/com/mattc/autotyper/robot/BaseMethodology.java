@@ -2,38 +2,61 @@ package com.mattc.autotyper.robot;
 
 import static java.awt.event.KeyEvent.VK_BACK_SPACE;
 
-import com.google.common.collect.Queues;
 import com.mattc.autotyper.util.Console;
-import com.mattc.autotyper.util.IOUtils;
+import com.mattc.autotyper.util.IntRingBuffer;
 import org.jnativehook.keyboard.NativeKeyEvent;
 import org.jnativehook.keyboard.NativeKeyListener;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Base Implementation for {@link Methodology} objects, which define how a {@link Keyboard} should
  * handle input. <br />
  * <br />
  * The benefit of extending BaseMethodology include a working implementation of {@link NativeKeyListener}
- * which can also pause input and handle key combinations based on alt, particularly (alt-S and alt-p for stop and play
- * respectively though this will be expanded in the future to allow arbitrary alt-combination or even just
- * arbitrary combinations), and a schedule system that handles communication between the NativeKey Thread
- * and the Main Thread.
+ * which handles the global key chords configured by {@link Hotkeys} (alt-P and alt-S for pause and stop by
+ * default), and a schedule system that handles communication between the NativeKey Thread and the Main Thread.
+ * The NativeKey Thread never blocks: it folds modifier keys into a bitmask, matches chords against it and
+ * either changes the mode directly or hands the action to the typing thread. <br />
+ * <br />
+ * The {@link Keyboard.KeyboardMode mode} is a small state machine: INACTIVE becomes ACTIVE when typing starts,
+ * ACTIVE and PAUSED toggle on the pause chord, and anything becomes INACTIVE on the stop chord or when typing
+ * ends. While paused, or while a chord modifier is held, the typing thread is parked in {@link #awaitResume()} and is unparked by the
+ * NativeKey Thread the moment it may continue, so resuming does not wait on any polling interval. How long
+ * that takes is recorded in the {@link PauseMetrics}.
  *
  * @author Glossawy
  *         Created 4/3/2015 at 4:53 PM
  */
 public abstract class BaseMethodology implements Methodology {
 
-    // This queue is maintained for key presses that must be communicated to the Native Key Thread
-    private final Queue<Integer> schedule = Queues.newConcurrentLinkedQueue();
+    // Only a handful of corrections are ever pending at once
+    private static final int SCHEDULE_CAPACITY = 64;
+    private static final Hotkeys.Action[] ACTIONS = Hotkeys.Action.values();
+
+    // Key presses the Native Key Thread (the only producer) communicates to the typing thread (the only consumer)
+    private final IntRingBuffer schedule = new IntRingBuffer(SCHEDULE_CAPACITY);
+
+    private final AtomicReference<Keyboard.KeyboardMode> mode = new AtomicReference<>(Keyboard.KeyboardMode.INACTIVE);
+    private final PauseMetrics metrics = new PauseMetrics();
+
+    // The thread that is typing, parked while paused
+    private volatile Thread typist;
+    private volatile long pauseRequested;
+    private volatile long resumeRequested;
 
-    private volatile Keyboard.KeyboardMode mode = Keyboard.KeyboardMode.INACTIVE;
-    private volatile boolean alt = false;
-    private volatile boolean bspace = false;
-    private volatile boolean keypressed = false;
+    private volatile Hotkeys hotkeys = Hotkeys.DEFAULT;
+
+    // Actions the Native Key Thread hands to the typing thread
+    private final IntRingBuffer actions = new IntRingBuffer(SCHEDULE_CAPACITY);
+
+    // Modifier bits held down, written by the Native Key Thread only
+    private volatile int modifiers;
+    // Characters typed into the target by chords, only accessed by the Native Key Thread
+    private int strays;
 
     @Override
     public abstract void type(char c);
@@ -44,104 +67,153 @@ public abstract class BaseMethodology implements Methodology {
     @Override
     public abstract void typeFile(File file) throws IOException;
 
+    @Override
+    public abstract void typeProgram(KeyProgram program);
+
+    @Override
+    public abstract void typeStream(KeyProgramSource source) throws IOException;
+
     @Override
     public Keyboard.KeyboardMode mode() {
-        return mode;
+        return mode.get();
     }
 
     /**
      * @return If Current KeyboardMode == KeyboardMode.ACTIVE
      */
     public boolean isActive() {
-        return mode == Keyboard.KeyboardMode.ACTIVE;
+        return mode.get() == Keyboard.KeyboardMode.ACTIVE;
     }
 
     /**
      * @return If Current KeyboardMode == KeyboardMode.PAUSED
      */
     public boolean isPaused() {
-        return mode == Keyboard.KeyboardMode.PAUSED;
+        return mode.get() == Keyboard.KeyboardMode.PAUSED;
     }
 
     /**
      * @return If Current KeyboardMode == KeyboardMode.INACTIVE
      */
     public boolean isInactive() {
-        return mode == Keyboard.KeyboardMode.INACTIVE;
+        return mode.get() == Keyboard.KeyboardMode.INACTIVE;
+    }
+
+    /**
+     * @return Pause and Resume statistics of the current, or last, typing session
+     */
+    public PauseMetrics getPauseMetrics() {
+        return metrics;
     }
 
     /**
-     * Will return true if it is determined that the <em>Left</em> Alt Key is down.
+     * Will return true if any modifier of a hotkey chord (i.e. the <em>Left</em> Alt Key) is down,
+     * typing halts until it is released.
      *
-     * @return true if Left alt is down
+     * @return true if a chord modifier is down
      */
-    public boolean isAltDown() {
-        return alt;
+    public boolean isChordHeld() {
+        return (modifiers & hotkeys.holdMask()) != 0;
     }
 
     @Override
-    public void nativeKeyTyped(NativeKeyEvent e) {
-        // Ignore if alt is not pressed, it's all we care about.
-        if (!this.alt) return;
-
-        String log = this.mode.name() + "...";
-        if (this.alt && (e.getKeyChar() == 'p')) {
-            // Toggle for Alt + P
-            switch (this.mode) {
-                case ACTIVE:
-                    this.mode = Keyboard.KeyboardMode.PAUSED;
-                    break;
-                case PAUSED:
-                    this.mode = Keyboard.KeyboardMode.ACTIVE;
-                    break;
-                default:
-                    break;
-            }
-        } else if (this.alt && (e.getKeyChar() == 's')) {
-            if (this.mode == Keyboard.KeyboardMode.PAUSED)
-                schedule.add(VK_BACK_SPACE);
-
-            // Terminate Current Session for Alt + S
-            this.mode = Keyboard.KeyboardMode.INACTIVE;
-            schedule.add(VK_BACK_SPACE);
-            this.alt = false;
-        }
+    public void setHotkeys(Hotkeys hotkeys) {
+        this.hotkeys = hotkeys;
+    }
+
+    @Override
+    public Hotkeys getHotkeys() {
+        return hotkeys;
+    }
 
-        log = "Keyboard set to " + this.mode.name() + " from " + log;
-        Console.debug(log);
-        IOUtils.sleep(20);
+    @Override
+    public void nativeKeyTyped(NativeKeyEvent e) {
+        // Chords are matched on key presses
     }
 
     @Override
     public void nativeKeyReleased(NativeKeyEvent e) {
-        // If Keyboard is Active and Left Alt is released
-        if ((e.getKeyCode() == NativeKeyEvent.VC_ALT_L) && (this.mode == Keyboard.KeyboardMode.ACTIVE)) {
-            this.alt = false;
-
-            // Delete the 1 or 2 stray characters
-            // Alt + P will print P in computer craft, this deletes the P
-            // if the user did not.
-            if (!this.bspace && this.keypressed) {
-                schedule.add(VK_BACK_SPACE);
-            } else {
-                this.bspace = false;
-            }
-
-            if (this.keypressed)
-                schedule.add(VK_BACK_SPACE);
+        final int bit = Hotkeys.modifierBit(e.getKeyCode());
+        if (bit == 0) return;
+
+        final int held = this.modifiers & ~bit;
+        this.modifiers = held;
+
+        if ((held & hotkeys.holdMask()) == 0) {
+            // Delete the characters typed by chords, Alt + P will print P in computer craft.
+            // While paused, wait for the chord that resumes typing.
+            if (this.mode.get() == Keyboard.KeyboardMode.ACTIVE)
+                scheduleStrays();
+
+            // Scheduled keys are handled once the typing thread wakes up
+            wake();
         }
     }
 
     @Override
     public void nativeKeyPressed(NativeKeyEvent e) {
-        // If Left Alt is Pressed, set the Alt Flag to true.
-        if (e.getKeyCode() == NativeKeyEvent.VC_ALT_L) {
-            this.alt = true;
-        } else if (this.alt && (e.getKeyCode() == NativeKeyEvent.VC_BACKSPACE)) {
-            this.bspace = true;
-        } else if (this.alt && (e.getKeyCode() == NativeKeyEvent.VC_P || e.getKeyCode() == NativeKeyEvent.VC_S)) {
-            this.keypressed = true;
+        final int code = e.getKeyCode();
+        final int bit = Hotkeys.modifierBit(code);
+        final Hotkeys hotkeys = this.hotkeys;
+
+        if (bit != 0) {
+            if ((this.modifiers & hotkeys.holdMask()) == 0 && (bit & hotkeys.holdMask()) != 0)
+                pauseRequested = System.nanoTime();
+
+            this.modifiers |= bit;
+            return;
         }
+
+        if ((this.modifiers & hotkeys.holdMask()) == 0)
+            return;
+
+        if (code == NativeKeyEvent.VC_BACKSPACE) {
+            // The user deleted a stray character themselves
+            this.strays = Math.max(0, this.strays - 1);
+            return;
+        }
+
+        final Hotkeys.Action action = hotkeys.lookup(this.modifiers, code);
+        if (action == null)
+            return;
+
+        this.strays++;
+        switch (action) {
+            case PAUSE:
+                // Toggle Pause, the typing thread is already halted while the chord is held
+                if (!transition(Keyboard.KeyboardMode.ACTIVE, Keyboard.KeyboardMode.PAUSED))
+                    transition(Keyboard.KeyboardMode.PAUSED, Keyboard.KeyboardMode.ACTIVE);
+                break;
+            case STOP:
+                // Terminate Current Session, cleaning up now since the typing thread stops on waking
+                scheduleStrays();
+                setMode(Keyboard.KeyboardMode.INACTIVE);
+                break;
+            default:
+                // Handled by the typing thread, never block the Native Key Thread
+                if (!actions.offer(action.ordinal()))
+                    this.strays--;
+                break;
+        }
+    }
+
+    private void scheduleStrays() {
+        for (; this.strays > 0; this.strays--)
+            schedule.offer(VK_BACK_SPACE);
+    }
+
+    /*
+        Returns the next action the typing thread must handle, or null if there is none.
+     */
+    protected Hotkeys.Action nextAction() {
+        return actions.isEmpty() ? null : ACTIONS[actions.remove()];
+    }
+
+    /*
+        Returns true if there are no actions for the typing thread to handle.
+     */
+    protected boolean isActionsEmpty() {
+        return actions.isEmpty();
     }
 
     /*
@@ -165,7 +237,25 @@ public abstract class BaseMethodology implements Methodology {
         schedule.clear();
     }
 
+    /**
+     * Park the calling thread for as long as typing is paused or alt is held down. Returns immediately
+     * otherwise.
+     */
+    protected void awaitResume() {
+        if (!isPaused() && !isChordHeld())
+            return;
+
+        final long parked = System.nanoTime();
+        while ((isPaused() || isChordHeld()) && !isInactive())
+            LockSupport.park(this);
+
+        final long resumed = System.nanoTime();
+        metrics.record(parked - pauseRequested, resumed - parked, resumed - resumeRequested);
+    }
+
     protected void start() {
+        this.typist = Thread.currentThread();
+        metrics.reset();
         setMode(Keyboard.KeyboardMode.ACTIVE);
     }
 
@@ -175,9 +265,43 @@ public abstract class BaseMethodology implements Methodology {
 
     protected void end() {
         setMode(Keyboard.KeyboardMode.INACTIVE);
+        this.typist = null;
+
+        if (metrics.getPauses() > 0)
+            Console.info(metrics);
     }
 
     protected void setMode(Keyboard.KeyboardMode mode) {
-        this.mode = mode;
+        this.mode.set(mode);
+        onModeChanged(mode);
+    }
+
+    /**
+     * Atomically move from one mode to another, waking the typing thread.
+     *
+     * @return false if the current mode was not the expected one
+     */
+    protected boolean transition(Keyboard.KeyboardMode from, Keyboard.KeyboardMode to) {
+        if (!this.mode.compareAndSet(from, to))
+            return false;
+
+        onModeChanged(to);
+        return true;
+    }
+
+    private void onModeChanged(Keyboard.KeyboardMode mode) {
+        if (mode == Keyboard.KeyboardMode.PAUSED)
+            pauseRequested = System.nanoTime();
+        else
+            wake();
+    }
+
+    // Unpark the typing thread so it reevaluates the mode
+    private void wake() {
+        resumeRequested = System.nanoTime();
+
+        final Thread thread = this.typist;
+        if (thread != null)
+            LockSupport.unpark(thread);
     }
 }
@@ -0,0 +1,378 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.IOUtils;
+import com.mattc.autotyper.util.LineReader;
+import com.mattc.autotyper.util.OS;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that every character of a source can be typed before typing starts, so that a session never
+ * stops halfway through at a stray character. Compiling ahead of time already fails before the first
+ * key, but only at the first untypable character, and files that are streamed are only compiled as
+ * they are typed. <br />
+ * <br />
+ * Scanning happens in two passes:
+ * <ol>
+ * <li>The source is split into chunks that are searched in parallel for characters the
+ * {@link KeyLayout} can not type. Usually there are none and scanning ends here.</li>
+ * <li>Otherwise the lines are walked in order, following block comments exactly as the
+ * {@link KeystrokeCompiler} does, to tell which of those characters would actually be typed. Those in
+ * comments are dropped by the compiler anyway.</li>
+ * </ol>
+ * Files that are {@link Keyboard#isStreamed(java.io.File) streamed} are never read whole, they are
+ * scanned and copied a line at a time instead so that memory use does not depend on their size. <br />
+ * <br />
+ * Typed characters with a typable replacement in the {@link Transliteration} table are replaced, every
+ * other one is reported with its line and column.
+ *
+ * @author Glossawy
+ */
+public final class CharacterScanner {
+
+    /**
+     * Characters searched per task
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private CharacterScanner() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * Check a file before it is typed, applying the transliteration to a copy if any character needs replacing.
+     *
+     * @param file   File to type
+     * @param layout Layout of the Keyboard the file will be typed with
+     * @param table  Replacements for characters the layout can not type
+     * @return The file to type instead, the given file itself if nothing was replaced
+     * @throws IOException              If the file could not be read or the copy could not be written
+     * @throws IllegalArgumentException If a character that would be typed can not be typed, even after transliteration
+     */
+    public static Path preflight(Path file, KeyLayout layout, Transliteration table) throws IOException {
+        final long start = System.nanoTime();
+        final boolean streamed = Keyboard.isStreamed(file.toFile());
+        final String text = streamed ? null : new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        final Report report = streamed ? scanLines(file, layout, table, null) : scan(text, layout, table);
+        final long millis = (System.nanoTime() - start) / 1000000;
+
+        if (!report.isTypable()) {
+            for (final Problem problem : report.getProblems())
+                Console.warn(file.getFileName() + ":" + problem);
+
+            throw new IllegalArgumentException(String.format("%s can not be typed using the %s keyboard layout: %s", file.getFileName(), layout.name(), report));
+        } else if (report.getReplaced() == 0) {
+            Console.info(String.format("Every character of %s can be typed (scanned in %,d ms)", file.getFileName(), millis));
+            return file;
+        }
+
+        final Path copy;
+        if (OS.get() == OS.WINDOWS || OS.get() == OS.UNSUPPORTED)
+            copy = Files.createTempFile("cctranslit", "");
+        else
+            copy = Files.createTempFile("cctranslit", "", IOUtils.POSIX_STANDARD_PERMS);
+
+        if (streamed) {
+            try (Writer out = Files.newBufferedWriter(copy, StandardCharsets.UTF_8)) {
+                scanLines(file, layout, table, out);
+            }
+        } else {
+            Files.write(copy, report.apply(text).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Console.info(String.format("Replaced %,d characters of %s using the %s transliteration (scanned in %,d ms)", report.getReplaced(), file.getFileName(), table.name(), millis));
+        return copy;
+    }
+
+    /**
+     * Find every character of the source that would be typed but can not be.
+     *
+     * @param text   Source Text
+     * @param layout Layout of the Keyboard the source will be typed with
+     * @param table  Replacements for characters the layout can not type
+     * @return The Report
+     */
+    public static Report scan(CharSequence text, KeyLayout layout, Transliteration table) {
+        final int length = text.length();
+        final int[] candidates = IntStream.range(0, (length + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .parallel()
+                .flatMap((chunk) -> {
+                    final int end = Math.min(length, (chunk + 1) * CHUNK_SIZE);
+                    return IntStream.range(chunk * CHUNK_SIZE, end).filter((i) -> !isTypable(text.charAt(i), layout));
+                })
+                .toArray();
+
+        if (candidates.length == 0)
+            return new Report(table, Collections.emptyList(), new int[0], 0);
+
+        return classify(text, candidates, layout, table);
+    }
+
+    /**
+     * Walk the lines containing candidates, keeping track of block comments the same way compiling does.
+     */
+    private static Report classify(CharSequence text, int[] candidates, KeyLayout layout, Transliteration table) {
+        final Classifier classifier = new Classifier(layout, table);
+        final int[] replace = new int[candidates.length];
+        final int length = text.length();
+        int next = 0;
+
+        for (int start = 0, lineNo = 1; start <= length && next < candidates.length; lineNo++) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r')
+                end++;
+
+            classifier.line(text, start, end, candidates[next] < end);
+            for (; next < candidates.length && candidates[next] < end; next++) {
+                if (classifier.replaces(text, start, candidates[next], lineNo))
+                    replace[classifier.replaced - 1] = candidates[next];
+            }
+
+            start = end < length && text.charAt(end) == '\r' && end + 1 < length && text.charAt(end + 1) == '\n' ? end + 2 : end + 1;
+        }
+
+        return new Report(table, classifier.problems, replace, classifier.replaced);
+    }
+
+    /**
+     * Scan a file a line at a time, writing it to out with every replaceable character replaced if out is
+     * not null. Lines are written ending in '\n', which types the same as any other line ending. <br />
+     * <br />
+     * The Report only counts the replaced characters, it can not be {@link Report#apply(CharSequence) applied}.
+     */
+    private static Report scanLines(Path file, KeyLayout layout, Transliteration table, Writer out) throws IOException {
+        final Classifier classifier = new Classifier(layout, table);
+        final StringBuilder line = new StringBuilder(128);
+
+        try (LineReader reader = LineReader.open(file, StandardCharsets.UTF_8)) {
+            for (int lineNo = 1; reader.readLine(line); lineNo++) {
+                int at = 0;
+                while (at < line.length() && isTypable(line.charAt(at), layout))
+                    at++;
+
+                classifier.line(line, 0, line.length(), at < line.length());
+
+                int last = 0;
+                for (; at < line.length(); at++) {
+                    if (isTypable(line.charAt(at), layout) || !classifier.replaces(line, 0, at, lineNo))
+                        continue;
+
+                    if (out != null)
+                        out.append(line, last, at).append(table.get(line.charAt(at)));
+                    last = at + 1;
+                }
+
+                if (out != null)
+                    out.append(line, last, line.length()).append('\n');
+            }
+        }
+
+        return new Report(table, classifier.problems, new int[0], classifier.replaced);
+    }
+
+    /**
+     * Whitespace is collapsed or dropped before typing, everything else must be in the layout
+     */
+    private static boolean isTypable(char c, KeyLayout layout) {
+        return c <= ' ' || layout.lookup(c) != KeyLayout.UNMAPPED;
+    }
+
+    private static boolean isTypable(String text, KeyLayout layout) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isTypable(text.charAt(i), layout))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, int start, int end, String target) {
+        outer:
+        for (int i = start; i <= end - target.length(); i++) {
+            for (int j = 0; j < target.length(); j++) {
+                if (text.charAt(i + j) != target.charAt(j))
+                    continue outer;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Follows block comments from line to line exactly as the {@link KeystrokeCompiler} does, and tells
+     * which characters that can not be typed would be typed, and whether they can be replaced.
+     */
+    private static final class Classifier {
+
+        private final KeyLayout layout;
+        private final Transliteration table;
+        private final List<Problem> problems = new ArrayList<>();
+        private final StringBuilder collapsed = new StringBuilder(128);
+
+        private boolean block, typed;
+        private int comment, replaced;
+
+        Classifier(KeyLayout layout, Transliteration table) {
+            this.layout = layout;
+            this.table = table;
+        }
+
+        /**
+         * Move on to the line text[start, end), which is the next line of the source.
+         *
+         * @param candidate Whether the line contains characters that can not be typed
+         */
+        void line(CharSequence text, int start, int end, boolean candidate) {
+            comment = indexOf(text, start, end, "--");
+
+            // Lines can only start or end a block comment if they contain a comment, or are in one
+            typed = false;
+            if (candidate || block || comment >= 0) {
+                KeystrokeCompiler.collapseWhitespace(text, start, end, collapsed);
+                block = KeystrokeCompiler.filterLine(collapsed, block);
+                typed = collapsed.length() > 0;
+            }
+        }
+
+        /**
+         * Classify a character of the current line that can not be typed. A problem is recorded if it
+         * would be typed and has no typable replacement.
+         *
+         * @return Whether the character is replaced
+         */
+        boolean replaces(CharSequence text, int start, int at, int lineNo) {
+            // Whatever follows a comment is never typed
+            if (!typed || (comment >= 0 && at >= comment))
+                return false;
+
+            final char c = text.charAt(at);
+            final String replacement = table.get(c);
+            if (replacement != null && isTypable(replacement, layout)) {
+                replaced++;
+                return true;
+            }
+
+            problems.add(new Problem(lineNo, at - start + 1, c, replacement));
+            return false;
+        }
+    }
+
+    /**
+     * The outcome of a scan
+     */
+    public static final class Report {
+
+        private final Transliteration table;
+        private final List<Problem> problems;
+        private final int[] replace;
+        private final int replaced;
+
+        private Report(Transliteration table, List<Problem> problems, int[] replace, int replaced) {
+            this.table = table;
+            this.problems = Collections.unmodifiableList(problems);
+            this.replace = replace;
+            this.replaced = replaced;
+        }
+
+        /**
+         * @return true if every character that would be typed can be, once transliterated
+         */
+        public boolean isTypable() {
+            return problems.isEmpty();
+        }
+
+        /**
+         * @return Every character that would be typed but can not be, in order
+         */
+        public List<Problem> getProblems() {
+            return problems;
+        }
+
+        /**
+         * @return Number of characters that are replaced by the transliteration
+         */
+        public int getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * Apply the transliteration to the text that was scanned.
+         *
+         * @param text The scanned text
+         * @return The text with every replaceable character replaced
+         */
+        public String apply(CharSequence text) {
+            final StringBuilder sb = new StringBuilder(text.length());
+            int last = 0;
+
+            for (int i = 0; i < replaced; i++) {
+                final int at = replace[i];
+                sb.append(text, last, at).append(table.get(text.charAt(at)));
+                last = at + 1;
+            }
+
+            return sb.append(text, last, text.length()).toString();
+        }
+
+        @Override
+        public String toString() {
+            if (problems.isEmpty())
+                return String.format("Typable, %,d characters replaced", replaced);
+
+            final Problem first = problems.get(0);
+            return String.format("%,d untypable characters, the first %s", problems.size(), first);
+        }
+    }
+
+    /**
+     * A character that would be typed but can not be
+     */
+    public static final class Problem {
+
+        private final int line, column;
+        private final char character;
+        private final String replacement;
+
+        private Problem(int line, int column, char character, String replacement) {
+            this.line = line;
+            this.column = column;
+            this.character = character;
+            this.replacement = replacement;
+        }
+
+        /**
+         * @return 1-based Line Number
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return 1-based Column, in characters
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        public char getCharacter() {
+            return character;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d '%s' (U+%04X)%s", line, column, character, (int) character,
+                    replacement == null ? "" : ", its replacement '" + replacement + "' can not be typed either");
+        }
+    }
+}
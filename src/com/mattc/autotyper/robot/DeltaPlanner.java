@@ -0,0 +1,447 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.Console;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plans the key events that turn a program already typed into <code>edit</code> into a newer version
+ * of it, so that a small change to a large program does not mean typing all of it again. <br />
+ * <br />
+ * The lines typed last time are diffed against the lines of the new program (Myers' algorithm, after
+ * trimming the common prefix and suffix) and every changed region is patched in place from the top of
+ * the file down:
+ * <ul>
+ * <li><b>Changed lines</b> - Only the characters between the common prefix and suffix of the old and
+ * new line are deleted and typed</li>
+ * <li><b>Removed lines</b> - Deleted with DELETE, which joins the following line once a line is empty</li>
+ * <li><b>Added lines</b> - Typed like any other line, followed by ENTER</li>
+ * </ul>
+ * The cursor is moved between regions with whichever mix of arrows, HOME / END and PAGE UP / PAGE DOWN
+ * takes the fewest keys, following the cursor exactly as <code>edit</code> clamps it to shorter lines.
+ * The patch is then compared with clearing the file and retyping it in full and the quicker of the two,
+ * according to the {@link KeystrokeCostModel}, is returned. Either way the result must be typed with the
+ * cursor at the start of the file, which is where <code>edit</code> opens it.
+ *
+ * @author Glossawy
+ */
+public final class DeltaPlanner {
+
+    /**
+     * Lines moved by PAGE UP / PAGE DOWN in <code>edit</code>, one less than the height of the terminal.
+     * 18 for the 51x19 screen of a Computer.
+     */
+    public static final int DEFAULT_PAGE_LINES = 18;
+
+    /**
+     * Lines added or removed beyond which the file is retyped in full without diffing further
+     */
+    public static final int MAX_EDITS = 2048;
+
+    private final KeyLayout layout;
+    private final KeystrokeCostModel model;
+    private final int pageLines;
+
+    public DeltaPlanner(KeyLayout layout, KeystrokeCostModel model) {
+        this(layout, model, DEFAULT_PAGE_LINES);
+    }
+
+    /**
+     * @param layout    Layout of the Keyboard the patch will be typed with
+     * @param model     Cost of the methodology and timing the patch will be typed with
+     * @param pageLines Lines moved by PAGE UP / PAGE DOWN, see {@link #DEFAULT_PAGE_LINES}
+     */
+    public DeltaPlanner(KeyLayout layout, KeystrokeCostModel model, int pageLines) {
+        if (pageLines < 1)
+            throw new IllegalArgumentException("Page must be at least 1 line, was " + pageLines);
+
+        this.layout = layout;
+        this.model = model;
+        this.pageLines = pageLines;
+    }
+
+    /**
+     * Plan the cheapest way to turn the typed lines into the target program.
+     *
+     * @param typed  Lines as they were typed last time, which <code>edit</code> holds now
+     * @param target Program of the new version, compiled with the layout of this planner
+     * @return A program typing either the patch or a full retype, to be typed with the cursor at the start of the file
+     */
+    public KeyProgram plan(List<String> typed, KeyProgram target) {
+        final long start = System.nanoTime();
+        final String[] lines = target.text();
+        final List<int[]> regions = diff(typed, lines, MAX_EDITS);
+        final KeyProgram retype = retype(typed, target);
+        final KeyProgram patch = regions == null ? null : new Patch(typed).apply(regions, lines);
+        final long millis = (System.nanoTime() - start) / 1000000;
+
+        final KeystrokeCostModel.Estimate retypeCost = model.estimate(retype);
+        if (patch == null) {
+            Console.info(String.format("More than %,d lines changed, retyping all %,d lines: %s (planned in %,d ms)", MAX_EDITS, lines.length, retypeCost, millis));
+            return retype;
+        }
+
+        final KeystrokeCostModel.Estimate patchCost = model.estimate(patch);
+        Console.info(String.format("%,d regions of %,d lines changed, patching takes %,d key events (%s) and retyping %,d (%s), planned in %,d ms",
+                regions.size(), lines.length, patchCost.eventCount(), patchCost.formatDuration(), retypeCost.eventCount(), retypeCost.formatDuration(), millis));
+
+        return patchCost.getDuration(TimeUnit.NANOSECONDS) < retypeCost.getDuration(TimeUnit.NANOSECONDS) ? patch : retype;
+    }
+
+    /**
+     * Clear the file by deleting everything from the start of it and type the target from scratch.
+     */
+    private KeyProgram retype(List<String> typed, KeyProgram target) {
+        final KeyProgram.ProgramBuilder program = new KeyProgram.ProgramBuilder(target.length() + 16);
+        final StrokeWriter writer = writer(program);
+
+        // Every character and every line break before the final, empty, line
+        long deletes = typed.size();
+        for (final String line : typed)
+            deletes += line.length();
+
+        for (long i = 0; i < deletes; i++) {
+            program.boundary();
+            writer.stroke(KeyEvent.VK_DELETE);
+        }
+
+        program.include(target);
+        return program.build();
+    }
+
+    private static StrokeWriter writer(KeyProgram.ProgramBuilder program) {
+        return new StrokeWriter() {
+            @Override
+            void emitPress(int code) {
+                program.press(code);
+            }
+
+            @Override
+            void emitRelease(int code) {
+                program.release(code);
+            }
+        };
+    }
+
+    /**
+     * Diff two lists of lines.
+     *
+     * @return Changed regions as <code>{oldStart, oldEnd, newStart, newEnd}</code> in order, or null if more
+     * than maxEdits lines were added or removed
+     */
+    static List<int[]> diff(List<String> before, String[] after, int maxEdits) {
+        // Compare lines by identifiers rather than by content
+        final Map<String, Integer> ids = new HashMap<>();
+        final int[] a = new int[before.size()];
+        final int[] b = new int[after.length];
+        for (int i = 0; i < a.length; i++)
+            a[i] = ids.computeIfAbsent(before.get(i), (k) -> ids.size());
+        for (int i = 0; i < b.length; i++)
+            b[i] = ids.computeIfAbsent(after[i], (k) -> ids.size());
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix])
+            prefix++;
+
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix && a[a.length - 1 - suffix] == b[b.length - 1 - suffix])
+            suffix++;
+
+        final int n = a.length - prefix - suffix;
+        final int m = b.length - prefix - suffix;
+        final boolean[] removed = new boolean[n];
+        final boolean[] added = new boolean[m];
+
+        if (n == 0 || m == 0) {
+            Arrays.fill(removed, true);
+            Arrays.fill(added, true);
+        } else if (!myers(a, b, prefix, n, m, maxEdits, removed, added)) {
+            return null;
+        }
+
+        // Group the removed and added lines between common lines into regions
+        final List<int[]> regions = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !removed[i] && !added[j]) {
+                i++;
+                j++;
+                continue;
+            }
+
+            final int i1 = i, j1 = j;
+            while (i < n && removed[i]) i++;
+            while (j < m && added[j]) j++;
+            regions.add(new int[]{prefix + i1, prefix + i, prefix + j1, prefix + j});
+        }
+
+        return regions;
+    }
+
+    /**
+     * Myers' O(ND) diff of a[offset, offset + n) and b[offset, offset + m), flagging the lines of the shortest edit script.
+     *
+     * @return false if the script is longer than maxEdits
+     */
+    private static boolean myers(int[] a, int[] b, int offset, int n, int m, int maxEdits, boolean[] removed, boolean[] added) {
+        final int max = Math.min(n + m, maxEdits);
+        final int center = max + 1;
+        final int[] v = new int[2 * max + 3];
+        // Furthest reaching x per diagonal k in [-d, d] after every d, to walk the path back
+        final List<int[]> trace = new ArrayList<>();
+
+        int edits = -1;
+        search:
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[center + k - 1] < v[center + k + 1]) ? v[center + k + 1] : v[center + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[offset + x] == b[offset + y]) {
+                    x++;
+                    y++;
+                }
+
+                v[center + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, center - d, center + d + 1));
+                    edits = d;
+                    break search;
+                }
+            }
+
+            trace.add(Arrays.copyOfRange(v, center - d, center + d + 1));
+        }
+
+        if (edits < 0)
+            return false;
+
+        int x = n, y = m;
+        for (int d = edits; d > 0; d--) {
+            final int[] previous = trace.get(d - 1);
+            final int k = x - y;
+            final boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+            final int prevK = down ? k + 1 : k - 1;
+            final int prevX = previous[prevK + d - 1];
+            final int prevY = prevX - prevK;
+
+            if (down)
+                added[prevY] = true;
+            else
+                removed[prevX] = true;
+
+            x = prevX;
+            y = prevY;
+        }
+
+        return true;
+    }
+
+    /**
+     * The patch being built along with the buffer of <code>edit</code> as it will be once the keys so far are typed.
+     */
+    private final class Patch {
+
+        private final KeyProgram.ProgramBuilder program = new KeyProgram.ProgramBuilder(256);
+        private final StrokeWriter writer = writer(program);
+        private final List<String> lines;
+        private int x, y;
+
+        private Patch(List<String> typed) {
+            // Every typed line ended with ENTER, leaving an empty line at the end
+            this.lines = new ArrayList<>(typed.size() + 1);
+            lines.addAll(typed);
+            lines.add("");
+        }
+
+        private KeyProgram apply(List<int[]> regions, String[] after) {
+            // Lines added minus lines removed above the current region
+            int shift = 0;
+
+            for (final int[] region : regions) {
+                final int removed = region[1] - region[0];
+                final int added = region[3] - region[2];
+                final int changed = Math.min(removed, added);
+                int row = region[0] + shift;
+
+                for (int i = 0; i < changed; i++)
+                    change(row++, after[region[2] + i]);
+
+                if (removed > changed)
+                    remove(row, removed - changed);
+
+                for (int j = region[2] + changed; j < region[3]; j++)
+                    add(row++, after[j], j + 1);
+
+                shift += added - removed;
+            }
+
+            writer.releaseModifiers();
+            return program.build();
+        }
+
+        private void change(int row, String line) {
+            final String old = lines.get(row);
+            final int common = Math.min(old.length(), line.length());
+
+            int prefix = 0;
+            while (prefix < common && old.charAt(prefix) == line.charAt(prefix))
+                prefix++;
+
+            int suffix = 0;
+            while (suffix < common - prefix && old.charAt(old.length() - 1 - suffix) == line.charAt(line.length() - 1 - suffix))
+                suffix++;
+
+            // Delete forwards from the start of the difference or backwards from its end, whichever is closer
+            final int end = old.length() - suffix;
+            final boolean fromEnd = move(end, row, false) < move(prefix, row, false);
+            move(fromEnd ? end : prefix, row, true);
+
+            for (int i = prefix; i < end; i++)
+                key(fromEnd ? KeyEvent.VK_BACK_SPACE : KeyEvent.VK_DELETE);
+
+            for (int i = prefix, len = line.length() - suffix; i < len; i++) {
+                program.mark();
+                writer.write(layout.lookup(line.charAt(i)));
+            }
+
+            lines.set(row, line);
+            x = line.length() - suffix;
+        }
+
+        private void remove(int row, int count) {
+            move(0, row, true);
+
+            for (int i = 0; i < count; i++) {
+                // The line's characters then the line break joining the next line
+                for (int c = lines.remove(row).length(); c >= 0; c--)
+                    key(KeyEvent.VK_DELETE);
+            }
+        }
+
+        private void add(int row, String line, int lineNumber) {
+            move(0, row, true);
+
+            program.text(line);
+            for (int i = 0; i < line.length(); i++) {
+                program.mark();
+                writer.write(layout.lookup(line.charAt(i)));
+            }
+            writer.stroke(KeyEvent.VK_ENTER);
+            program.line(lineNumber);
+
+            // Typed lines never start with a space, so ENTER does not indent
+            lines.add(row, line);
+            x = 0;
+            y = row + 1;
+        }
+
+        /**
+         * Find the fewest keys moving the cursor to the given position and optionally type them.
+         *
+         * @return Number of keys
+         */
+        private int move(int toX, int toY, boolean type) {
+            final int distance = Math.abs(toY - y);
+            final int direction = toY < y ? -1 : 1;
+
+            // Arrows only, or as many pages as fit and arrows for the rest, or one page more and arrows back
+            int bestPages = 0, bestKeys = Integer.MAX_VALUE;
+            for (int pages = 0; pages <= distance / pageLines + 1; pages = pages == 0 ? Math.max(distance / pageLines, 1) : pages + 1) {
+                final int keys = pages + vertical(pages, direction, toY, false) + horizontal(column(pages, direction, toY), toX, toY, false);
+                if (keys < bestKeys) {
+                    bestKeys = keys;
+                    bestPages = pages;
+                }
+            }
+
+            if (type) {
+                vertical(bestPages, direction, toY, true);
+                horizontal(x, toX, toY, true);
+            }
+
+            return bestKeys;
+        }
+
+        /**
+         * @return Number of arrows after the pages, moving the cursor if typing
+         */
+        private int vertical(int pages, int direction, int toY, boolean type) {
+            final int landed = page(pages, direction);
+            if (type) {
+                for (int i = 0; i < pages; i++)
+                    key(direction < 0 ? KeyEvent.VK_PAGE_UP : KeyEvent.VK_PAGE_DOWN);
+                for (int row = landed; row != toY; row += Integer.signum(toY - row))
+                    key(toY < row ? KeyEvent.VK_UP : KeyEvent.VK_DOWN);
+
+                x = column(pages, direction, toY);
+                y = toY;
+            }
+
+            return Math.abs(toY - landed);
+        }
+
+        /**
+         * @return Number of keys moving from one column to another along the same line, moving the cursor if typing
+         */
+        private int horizontal(int fromX, int toX, int row, boolean type) {
+            final int length = lines.get(row).length();
+            final int arrows = Math.abs(toX - fromX);
+            final int home = 1 + toX;
+            final int end = 1 + length - toX;
+
+            if (type) {
+                if (arrows <= home && arrows <= end) {
+                    for (int i = 0; i < arrows; i++)
+                        key(toX < fromX ? KeyEvent.VK_LEFT : KeyEvent.VK_RIGHT);
+                } else if (home <= end) {
+                    key(KeyEvent.VK_HOME);
+                    for (int i = 0; i < toX; i++)
+                        key(KeyEvent.VK_RIGHT);
+                } else {
+                    key(KeyEvent.VK_END);
+                    for (int i = toX; i < length; i++)
+                        key(KeyEvent.VK_LEFT);
+                }
+
+                x = toX;
+            }
+
+            return Math.min(arrows, Math.min(home, end));
+        }
+
+        /**
+         * @return Line the cursor is on after the given pages, <code>edit</code> stops at the first and last line
+         */
+        private int page(int pages, int direction) {
+            return Math.max(0, Math.min(lines.size() - 1, y + direction * pages * pageLines));
+        }
+
+        /**
+         * @return Column the cursor is in after the given pages and arrows, clamped to every line it stopped on
+         */
+        private int column(int pages, int direction, int toY) {
+            int column = x;
+            for (int i = 1; i <= pages; i++)
+                column = Math.min(column, lines.get(page(i, direction)).length());
+
+            final int landed = page(pages, direction);
+            for (int row = landed; row != toY; ) {
+                row += Integer.signum(toY - row);
+                column = Math.min(column, lines.get(row).length());
+            }
+
+            return column;
+        }
+
+        private void key(int code) {
+            program.boundary();
+            writer.stroke(code);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.mattc.autotyper.robot;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A headless backend that emulates the buffer of ComputerCraft's <code>edit</code> program, turning key
+ * events back into text the way the game would. Typing a program into it and comparing the result with
+ * the source is an end to end check of the layout, the compiler and the methodologies without a display
+ * or a running game, see {@link EditorHarness}. <br />
+ * <br />
+ * Key presses are translated back into characters using the reverse of a {@link KeyLayout}, including
+ * dead keys and SHIFT / ALT GRAPH (or CTRL + ALT, as on Windows). Like the game, only printable ASCII and
+ * Latin-1 characters are accepted. The editing keys behave as they do in <code>edit</code>:
+ * <ul>
+ * <li><b>ENTER</b> - Splits the line, indenting the new line as far as the current one</li>
+ * <li><b>BACKSPACE / DELETE</b> - Remove a character or join two lines</li>
+ * <li><b>TAB</b> - Indents the current line by two spaces</li>
+ * <li><b>Arrows, HOME, END, PAGE UP, PAGE DOWN</b> - Move the cursor, pages are one less than the height of the terminal</li>
+ * <li><b>CTRL + V / CMD + V</b> - Inserts the clipboard up to its first line break, at most
+ * {@value PasteMethodology#DEFAULT_PASTE_LIMIT} characters</li>
+ * </ul>
+ * <b>Note:</b> The menu <code>edit</code> opens when CTRL is pressed is not emulated, CTRL on its own is
+ * ignored. Keys that would produce nothing in the game are counted as dropped.
+ *
+ * @author Glossawy
+ */
+public final class EditorEmulator implements KeyboardBackend {
+
+    private static final int STROKES = 1 << KeyLayout.STROKE_BITS;
+
+    private final KeyLayout layout;
+    private final int pageLines;
+
+    // Single stroke to character, 0 if the stroke produces nothing
+    private final char[] chars = new char[STROKES];
+    private final boolean[] dead = new boolean[STROKES];
+    // Sorted packed dead key + base stroke pairs and the characters they compose
+    private final int[] composed;
+    private final char[] composedChars;
+
+    private final List<StringBuilder> lines = new ArrayList<>();
+    private int x, y;
+
+    private boolean shift, ctrl, alt, meta, altGraph;
+    private int pendingDead = KeyLayout.UNMAPPED;
+    private String clipboard = "";
+
+    private long presses, releases, pastes, syncs, dropped;
+
+    public EditorEmulator(KeyLayout layout) {
+        this(layout, DeltaPlanner.DEFAULT_PAGE_LINES);
+    }
+
+    /**
+     * @param layout    Layout to translate key presses with
+     * @param pageLines Lines moved by PAGE UP / PAGE DOWN
+     */
+    public EditorEmulator(KeyLayout layout, int pageLines) {
+        this.layout = layout;
+        this.pageLines = pageLines;
+
+        int pairs = 0;
+        final int[] keys = new int[Character.MAX_VALUE + 1];
+        final char[] values = new char[keys.length];
+
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            final int packed = layout.lookup((char) c);
+            if (packed == KeyLayout.UNMAPPED || !isPrintable((char) c))
+                continue;
+
+            final int deadStroke = KeyLayout.deadStroke(packed);
+            if (deadStroke == KeyLayout.UNMAPPED) {
+                if (chars[packed] == 0)
+                    chars[packed] = (char) c;
+            } else {
+                dead[deadStroke] = true;
+                keys[pairs] = packed;
+                values[pairs++] = (char) c;
+            }
+        }
+
+        // Sort the pairs by packed strokes so they can be binary searched
+        final long[] sorted = new long[pairs];
+        for (int i = 0; i < pairs; i++)
+            sorted[i] = ((long) keys[i] << 16) | values[i];
+        Arrays.sort(sorted);
+
+        this.composed = new int[pairs];
+        this.composedChars = new char[pairs];
+        for (int i = 0; i < pairs; i++) {
+            composed[i] = (int) (sorted[i] >>> 16);
+            composedChars[i] = (char) sorted[i];
+        }
+
+        clear();
+    }
+
+    @Override
+    public void keyPress(int code) {
+        presses++;
+
+        switch (code) {
+            case KeyEvent.VK_SHIFT:
+                shift = true;
+                return;
+            case KeyEvent.VK_CONTROL:
+                ctrl = true;
+                return;
+            case KeyEvent.VK_ALT:
+                alt = true;
+                return;
+            case KeyEvent.VK_META:
+                meta = true;
+                return;
+            case KeyEvent.VK_ALT_GRAPH:
+                altGraph = true;
+                return;
+        }
+
+        final boolean altGr = altGraph || (ctrl && alt);
+        if ((ctrl || meta) && !altGr) {
+            if (code == KeyEvent.VK_V)
+                paste();
+            else
+                dropped++;
+            return;
+        }
+
+        if (!altGr && editKey(code))
+            return;
+
+        final int stroke = (code & KeyLayout.KEY_MASK) | (shift ? KeyLayout.SHIFT : 0) | (altGr ? KeyLayout.ALT_GRAPH : 0);
+        if (pendingDead != KeyLayout.UNMAPPED) {
+            final int index = Arrays.binarySearch(composed, (pendingDead << KeyLayout.STROKE_BITS) | stroke);
+            pendingDead = KeyLayout.UNMAPPED;
+
+            if (index >= 0)
+                insert(String.valueOf(composedChars[index]));
+            else
+                dropped++;
+        } else if (dead[stroke]) {
+            pendingDead = stroke;
+        } else if (chars[stroke] != 0) {
+            insert(String.valueOf(chars[stroke]));
+        } else {
+            dropped++;
+        }
+    }
+
+    @Override
+    public void keyRelease(int code) {
+        releases++;
+
+        switch (code) {
+            case KeyEvent.VK_SHIFT:
+                shift = false;
+                break;
+            case KeyEvent.VK_CONTROL:
+                ctrl = false;
+                break;
+            case KeyEvent.VK_ALT:
+                alt = false;
+                break;
+            case KeyEvent.VK_META:
+                meta = false;
+                break;
+            case KeyEvent.VK_ALT_GRAPH:
+                altGraph = false;
+                break;
+        }
+    }
+
+    @Override
+    public void waitForIdle() {
+        syncs++;
+    }
+
+    @Override
+    public void setClipboard(String text) {
+        this.clipboard = text;
+    }
+
+    /**
+     * Handle a key that edits rather than types, as <code>edit</code> does.
+     *
+     * @return false if the key is not an editing key
+     */
+    private boolean editKey(int code) {
+        final StringBuilder line = lines.get(y);
+
+        switch (code) {
+            case KeyEvent.VK_ENTER:
+                int spaces = 0;
+                while (spaces < line.length() && line.charAt(spaces) == ' ')
+                    spaces++;
+
+                final StringBuilder next = new StringBuilder(spaces + line.length() - x);
+                for (int i = 0; i < spaces; i++)
+                    next.append(' ');
+                next.append(line, x, line.length());
+
+                line.setLength(x);
+                lines.add(++y, next);
+                x = spaces;
+                break;
+            case KeyEvent.VK_BACK_SPACE:
+                if (x > 0) {
+                    line.deleteCharAt(--x);
+                } else if (y > 0) {
+                    final StringBuilder prev = lines.get(y - 1);
+                    x = prev.length();
+                    prev.append(lines.remove(y--));
+                }
+                break;
+            case KeyEvent.VK_DELETE:
+                if (x < line.length())
+                    line.deleteCharAt(x);
+                else if (y < lines.size() - 1)
+                    line.append(lines.remove(y + 1));
+                break;
+            case KeyEvent.VK_TAB:
+                line.insert(0, "  ");
+                x += 2;
+                break;
+            case KeyEvent.VK_LEFT:
+                if (x > 0) x--;
+                else if (y > 0) x = lines.get(--y).length();
+                break;
+            case KeyEvent.VK_RIGHT:
+                if (x < line.length()) x++;
+                else if (y < lines.size() - 1) { y++; x = 0; }
+                break;
+            case KeyEvent.VK_UP:
+                if (y > 0) x = Math.min(x, lines.get(--y).length());
+                break;
+            case KeyEvent.VK_DOWN:
+                if (y < lines.size() - 1) x = Math.min(x, lines.get(++y).length());
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                y = Math.max(y - pageLines, 0);
+                x = Math.min(x, lines.get(y).length());
+                break;
+            case KeyEvent.VK_PAGE_DOWN:
+                y = Math.min(y + pageLines, lines.size() - 1);
+                x = Math.min(x, lines.get(y).length());
+                break;
+            case KeyEvent.VK_HOME:
+                x = 0;
+                break;
+            case KeyEvent.VK_END:
+                x = line.length();
+                break;
+            default:
+                return false;
+        }
+
+        pendingDead = KeyLayout.UNMAPPED;
+        return true;
+    }
+
+    private void paste() {
+        pastes++;
+
+        String text = clipboard;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                text = text.substring(0, i);
+                break;
+            }
+        }
+
+        if (text.length() > PasteMethodology.DEFAULT_PASTE_LIMIT)
+            text = text.substring(0, PasteMethodology.DEFAULT_PASTE_LIMIT);
+
+        insert(text);
+    }
+
+    private void insert(String text) {
+        lines.get(y).insert(x, text);
+        x += text.length();
+    }
+
+    /**
+     * ComputerCraft only queues char events for printable ASCII and Latin-1 characters.
+     */
+    private static boolean isPrintable(char c) {
+        return (c >= 32 && c <= 126) || (c >= 160 && c <= 255);
+    }
+
+    /**
+     * Empty the buffer and reset every counter.
+     */
+    public void clear() {
+        lines.clear();
+        lines.add(new StringBuilder());
+        x = y = 0;
+        shift = ctrl = alt = meta = altGraph = false;
+        pendingDead = KeyLayout.UNMAPPED;
+        clipboard = "";
+        presses = releases = pastes = syncs = dropped = 0;
+    }
+
+    /**
+     * Empty the buffer and fill it with the given lines, with the cursor at the start as <code>edit</code>
+     * opens a file.
+     */
+    public void open(List<String> text) {
+        clear();
+        lines.clear();
+        for (final String line : text)
+            lines.add(new StringBuilder(line));
+        if (lines.isEmpty())
+            lines.add(new StringBuilder());
+    }
+
+    /**
+     * @return Every line currently in the buffer
+     */
+    public List<String> getLines() {
+        final List<String> result = new ArrayList<>(lines.size());
+        for (final StringBuilder line : lines)
+            result.add(line.toString());
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return The buffer as <code>edit</code> would save it, every line followed by '\n'
+     */
+    public String getText() {
+        final StringBuilder sb = new StringBuilder();
+        for (final StringBuilder line : lines)
+            sb.append(line).append('\n');
+
+        return sb.toString();
+    }
+
+    /**
+     * @return Cursor column, 0 based
+     */
+    public int getCursorX() {
+        return x;
+    }
+
+    /**
+     * @return Cursor line, 0 based
+     */
+    public int getCursorY() {
+        return y;
+    }
+
+    /**
+     * @return Number of key presses and releases received
+     */
+    public long eventCount() {
+        return presses + releases;
+    }
+
+    public long pasteCount() {
+        return pastes;
+    }
+
+    public long syncCount() {
+        return syncs;
+    }
+
+    /**
+     * @return Number of key presses that produced nothing in the editor
+     */
+    public long droppedCount() {
+        return dropped;
+    }
+
+    public KeyLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EditorEmulator[%s, %,d lines, %,d events, %,d pastes, %,d dropped]", layout.name(), lines.size(), eventCount(), pastes, dropped);
+    }
+
+    /**
+     * Provides an emulator for the {@link KeyLayout#getDefault() default layout}
+     */
+    public static final class Provider implements KeyboardBackendProvider {
+
+        @Override
+        public String name() {
+            return "edit";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public int priority() {
+            return -3;
+        }
+
+        @Override
+        public KeyboardBackend create() {
+            return new EditorEmulator(KeyLayout.getDefault());
+        }
+    }
+}
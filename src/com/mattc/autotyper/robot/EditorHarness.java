@@ -0,0 +1,175 @@
+package com.mattc.autotyper.robot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Types files into an {@link EditorEmulator} without a display and checks that the editor ends up with
+ * exactly the text that was meant to be typed, reporting the throughput of every methodology. <br />
+ * <br />
+ * Each file is compiled once and typed with every requested {@link KeyboardMethodology} through the
+ * same {@link SwingKeyboard} pipeline used for real typing, only the backend differs. The result is
+ * compared line by line with the filtered text of the program, or with the file itself when it is
+ * expected to survive filtering unchanged (i.e. minified code). <br />
+ * <br />
+ * Usage: <code>EditorHarness [-layout name] [-inDelay ms] [-method typing|paste|all] [-expect typed|source] [-runs n] file...</code>
+ * <br />
+ * The default input delay is 4 microseconds, just enough for pasting to be worth it, and the emulator
+ * reads the clipboard immediately so pastes do not wait to settle. Exits with 1 if any result differs.
+ *
+ * @author Glossawy
+ */
+public final class EditorHarness {
+
+    private static final long DEFAULT_DELAY = TimeUnit.MICROSECONDS.toNanos(4);
+
+    private EditorHarness() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        KeyLayout layout = KeyLayout.forName(KeyLayout.DEFAULT_LAYOUT);
+        long delay = DEFAULT_DELAY;
+        List<KeyboardMethodology> methods = Arrays.asList(KeyboardMethodology.values());
+        boolean source = false;
+        int runs = 1;
+        final List<Path> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(Paths.get(arg));
+                continue;
+            } else if (i + 1 == args.length) {
+                usage("Missing value for " + arg);
+            }
+
+            final String value = args[++i];
+            switch (arg.toLowerCase(Locale.ROOT)) {
+                case "-layout":
+                    layout = KeyLayout.forName(value);
+                    break;
+                case "-indelay":
+                    delay = Math.round(Double.parseDouble(value) * TimeUnit.MILLISECONDS.toNanos(1));
+                    break;
+                case "-method":
+                    methods = value.equalsIgnoreCase("all")
+                            ? Arrays.asList(KeyboardMethodology.values())
+                            : Arrays.asList(KeyboardMethodology.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "-expect":
+                    source = value.equalsIgnoreCase("source");
+                    break;
+                case "-runs":
+                    runs = Math.max(Integer.parseInt(value), 1);
+                    break;
+                default:
+                    usage("Unknown flag " + arg);
+            }
+        }
+
+        if (files.isEmpty())
+            usage("No files given");
+
+        final KeyTiming timing = new KeyTiming.Builder(KeyTiming.fromDelay(delay, TimeUnit.NANOSECONDS))
+                .pasteSettle(0, TimeUnit.NANOSECONDS)
+                .build();
+        final KeystrokeCompiler compiler = new KeystrokeCompiler(layout);
+
+        boolean passed = true;
+        for (final Path file : files) {
+            final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            final KeyProgram program;
+            try {
+                program = compiler.compile(text);
+            } catch (final IllegalArgumentException e) {
+                System.out.println(String.format("%s: %s", file.getFileName(), e.getMessage()));
+                passed = false;
+                continue;
+            }
+
+            final List<String> expected = source ? sourceLines(text) : typedLines(program);
+
+            System.out.println(String.format("%s: %s, %s", file.getFileName(), program, layout));
+            for (final KeyboardMethodology method : methods) {
+                for (int run = 1; run <= runs; run++)
+                    passed &= run(program, expected, method, timing, layout);
+            }
+        }
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Type a program into a fresh emulator and report whether it matched.
+     */
+    private static boolean run(KeyProgram program, List<String> expected, KeyboardMethodology method, KeyTiming timing, KeyLayout layout) {
+        final EditorEmulator editor = new EditorEmulator(layout);
+        final SwingKeyboard keys = new SwingKeyboard(timing, layout, editor, false);
+        keys.setMethod(method.create(keys));
+
+        final long start = System.nanoTime();
+        keys.typeProgram(program);
+        final long elapsed = System.nanoTime() - start;
+        keys.destroy();
+
+        final List<String> actual = editor.getLines();
+        final int mismatch = firstMismatch(expected, actual);
+        final double seconds = elapsed / 1e9;
+
+        System.out.println(String.format("  %-7s %s in %,.1f ms: %,d events (%,.0f/s), %,.0f chars/s, %,d pastes, %,d dropped",
+                method, mismatch < 0 ? "OK" : "MISMATCH", elapsed / 1e6, editor.eventCount(), editor.eventCount() / seconds,
+                program.characterCount() / seconds, editor.pasteCount(), editor.droppedCount()));
+
+        if (mismatch >= 0) {
+            System.out.println(String.format("    line %d expected: %s", mismatch + 1, mismatch < expected.size() ? expected.get(mismatch) : "<none>"));
+            System.out.println(String.format("    line %d actual:   %s", mismatch + 1, mismatch < actual.size() ? actual.get(mismatch) : "<none>"));
+        }
+
+        return mismatch < 0;
+    }
+
+    /**
+     * @return Index of the first line that differs, -1 if both are equal
+     */
+    private static int firstMismatch(List<String> expected, List<String> actual) {
+        final int common = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < common; i++) {
+            if (!expected.get(i).equals(actual.get(i)))
+                return i;
+        }
+
+        return expected.size() == actual.size() ? -1 : common;
+    }
+
+    /**
+     * Every line of a program is followed by ENTER, leaving the cursor on an empty last line.
+     */
+    private static List<String> typedLines(KeyProgram program) {
+        final List<String> lines = new ArrayList<>(Arrays.asList(program.text()));
+        lines.add("");
+        return lines;
+    }
+
+    private static List<String> sourceLines(String text) {
+        final List<String> lines = new ArrayList<>(Arrays.asList(text.split("\r\n|\r|\n", -1)));
+        if (lines.get(lines.size() - 1).isEmpty())
+            lines.remove(lines.size() - 1);
+
+        lines.add("");
+        return lines;
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: EditorHarness [-layout name] [-inDelay ms] [-method typing|paste|all] [-expect typed|source] [-runs n] file...");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,250 @@
+package com.mattc.autotyper.robot;
+
+import static org.jnativehook.NativeInputEvent.ALT_L_MASK;
+import static org.jnativehook.NativeInputEvent.CTRL_L_MASK;
+import static org.jnativehook.NativeInputEvent.META_L_MASK;
+import static org.jnativehook.NativeInputEvent.SHIFT_L_MASK;
+
+import org.jnativehook.keyboard.NativeKeyEvent;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * An immutable set of global key bindings, each binding a chord of modifiers and a single key to an
+ * {@link Action}. <br />
+ * <br />
+ * Chords are written like <code>ALT+P</code> or <code>CTRL+SHIFT+UP</code>, where the key is the name
+ * of a JNativeHook <code>VC_</code> key code without its prefix. Modifiers are the <em>left</em> SHIFT,
+ * CTRL, ALT and META keys, the right hand keys are left alone since ALT GRAPH is often the right ALT.
+ * Every chord must include CTRL, ALT or META: holding one of those down halts typing, so that the
+ * chord is never mixed up with keys being typed. <br />
+ * <br />
+ * Bindings are given as a comma separated list of <code>action=chord</code>, i.e.
+ * <code>pause=alt+p,faster=ctrl+alt+up</code>. Actions that are not listed keep their default chord,
+ * an action bound to <code>none</code> is disabled.
+ *
+ * @author Glossawy
+ */
+public final class Hotkeys {
+
+    public enum Action {
+        /**
+         * Toggle Pause
+         */
+        PAUSE("alt+p"),
+        /**
+         * Terminate the Typing Session
+         */
+        STOP("alt+s"),
+        /**
+         * Type faster, shortening every interval of the {@link KeyTiming}
+         */
+        FASTER("alt+equals"),
+        /**
+         * Type slower, lengthening every interval of the {@link KeyTiming}
+         */
+        SLOWER("alt+minus");
+
+        private final String defaultChord;
+
+        Action(String defaultChord) {
+            this.defaultChord = defaultChord;
+        }
+    }
+
+    /**
+     * Modifier bits of a chord, the same bits JNativeHook uses for the left hand modifiers
+     */
+    static final int SHIFT = SHIFT_L_MASK, CTRL = CTRL_L_MASK, META = META_L_MASK, ALT = ALT_L_MASK;
+
+    private static final int NONE = -1;
+    private static final Action[] ACTIONS = Action.values();
+
+    public static final Hotkeys DEFAULT = createDefault();
+
+    // Chords indexed by Action ordinal: modifiers in the high 16 bits, key code in the low 16 bits
+    private final int[] chords;
+    private final int holdMask;
+
+    private Hotkeys(int[] chords) {
+        int hold = 0;
+        for (final int chord : chords) {
+            if (chord != NONE)
+                hold |= modifiers(chord) & ~SHIFT;
+        }
+
+        this.chords = chords;
+        this.holdMask = hold;
+    }
+
+    private static Hotkeys createDefault() {
+        final int[] chords = new int[ACTIONS.length];
+        for (final Action action : ACTIONS)
+            chords[action.ordinal()] = parseChord(action.defaultChord);
+
+        return new Hotkeys(chords);
+    }
+
+    /**
+     * Parse a list of bindings, see the class documentation for the format.
+     *
+     * @throws IllegalArgumentException If a binding is malformed
+     */
+    public static Hotkeys parse(String bindings) {
+        final int[] chords = DEFAULT.chords.clone();
+
+        for (final String binding : bindings.split(",")) {
+            if (binding.trim().isEmpty())
+                continue;
+
+            final String[] parts = binding.split("=");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Expected 'action=chord' but got '" + binding.trim() + "'");
+
+            final Action action;
+            try {
+                action = Action.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown action '" + parts[0].trim() + "'! Available: " + Arrays.toString(ACTIONS));
+            }
+
+            final String chord = parts[1].trim();
+            chords[action.ordinal()] = chord.equalsIgnoreCase("none") ? NONE : parseChord(chord);
+        }
+
+        return new Hotkeys(chords);
+    }
+
+    /**
+     * Find the action bound to a chord.
+     *
+     * @param modifiers Modifier bits currently held down
+     * @param keyCode   JNativeHook key code of the key pressed
+     * @return The bound action or null if there is none
+     */
+    Action lookup(int modifiers, int keyCode) {
+        final int chord = (modifiers << 16) | keyCode;
+
+        for (int i = 0; i < chords.length; i++) {
+            if (chords[i] == chord)
+                return ACTIONS[i];
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Modifier bits that halt typing while held down
+     */
+    int holdMask() {
+        return holdMask;
+    }
+
+    /**
+     * @return The modifier bit of a left hand modifier key, 0 for any other key
+     */
+    static int modifierBit(int keyCode) {
+        switch (keyCode) {
+            case NativeKeyEvent.VC_SHIFT_L:
+                return SHIFT;
+            case NativeKeyEvent.VC_CONTROL_L:
+                return CTRL;
+            case NativeKeyEvent.VC_META_L:
+                return META;
+            case NativeKeyEvent.VC_ALT_L:
+                return ALT;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isModifierKey(int keyCode) {
+        switch (keyCode) {
+            case NativeKeyEvent.VC_SHIFT_R:
+            case NativeKeyEvent.VC_CONTROL_R:
+            case NativeKeyEvent.VC_META_R:
+            case NativeKeyEvent.VC_ALT_R:
+                return true;
+            default:
+                return modifierBit(keyCode) != 0;
+        }
+    }
+
+    /**
+     * @return Human readable chord of an action, i.e. "alt+P", or null if the action is disabled
+     */
+    public String describe(Action action) {
+        final int chord = chords[action.ordinal()];
+        if (chord == NONE)
+            return null;
+
+        final int modifiers = modifiers(chord);
+        final StringBuilder sb = new StringBuilder();
+        if ((modifiers & CTRL) != 0) sb.append("ctrl+");
+        if ((modifiers & META) != 0) sb.append("meta+");
+        if ((modifiers & ALT) != 0) sb.append("alt+");
+        if ((modifiers & SHIFT) != 0) sb.append("shift+");
+
+        return sb.append(NativeKeyEvent.getKeyText(chord & 0xFFFF)).toString();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Hotkeys[");
+        for (final Action action : ACTIONS) {
+            if (action.ordinal() > 0)
+                sb.append(", ");
+            final String chord = describe(action);
+            sb.append(action.name().toLowerCase(Locale.ROOT)).append('=').append(chord == null ? "none" : chord);
+        }
+
+        return sb.append(']').toString();
+    }
+
+    private static int modifiers(int chord) {
+        return chord >>> 16;
+    }
+
+    private static int parseChord(String token) {
+        final String[] parts = token.split("\\+");
+        int modifiers = 0;
+
+        for (int i = 0; i < parts.length - 1; i++) {
+            switch (parts[i].trim().toUpperCase(Locale.ROOT)) {
+                case "SHIFT":
+                    modifiers |= SHIFT;
+                    break;
+                case "CTRL":
+                case "CONTROL":
+                    modifiers |= CTRL;
+                    break;
+                case "META":
+                case "CMD":
+                    modifiers |= META;
+                    break;
+                case "ALT":
+                    modifiers |= ALT;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown modifier '" + parts[i].trim() + "' in '" + token + "'");
+            }
+        }
+
+        if ((modifiers & ~SHIFT) == 0)
+            throw new IllegalArgumentException("Chord '" + token + "' must include ctrl, alt or meta");
+
+        final String key = parts[parts.length - 1].trim().toUpperCase(Locale.ROOT);
+        final int code;
+        try {
+            code = NativeKeyEvent.class.getField("VC_" + key).getInt(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown key 'VC_" + key + "' in '" + token + "'");
+        }
+
+        if (isModifierKey(code) || (code & ~0xFFFF) != 0)
+            throw new IllegalArgumentException("Key 'VC_" + key + "' cannot be used in a chord");
+
+        return (modifiers << 16) | code;
+    }
+}
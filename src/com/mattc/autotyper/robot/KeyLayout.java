@@ -0,0 +1,307 @@
+package com.mattc.autotyper.robot;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.mattc.autotyper.meta.IORuntimeException;
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.IOUtils;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A Keyboard Layout compiled into a primitive lookup table that maps every typable character to
+ * the keystrokes that produce it. <br />
+ * <br />
+ * Layouts are described by plain text <code>.layout</code> files (see the <code>layouts</code>
+ * resource directory beside this class for the format). A <code>layouts</code> directory in the
+ * working directory is searched first, allowing users to add or correct layouts without rebuilding.
+ * Once compiled, looking up a character is a single array access. <br />
+ * <br />
+ * Each entry is a packed <code>int</code> made up of up to two keystrokes of {@value #STROKE_BITS}
+ * bits each. The low stroke is the key that produces the character; the high stroke, if present, is a
+ * dead key that must be struck first. A stroke holds a virtual key code and the SHIFT and ALT GRAPH
+ * modifier bits. An entry of {@link #UNMAPPED} means the character cannot be typed.
+ *
+ * @author Glossawy
+ */
+public final class KeyLayout {
+
+    /**
+     * Lookup result for characters that this layout cannot type
+     */
+    public static final int UNMAPPED = 0;
+
+    /**
+     * Name of the layout used when no better layout can be determined
+     */
+    public static final String DEFAULT_LAYOUT = "us";
+
+    /**
+     * Names of the layouts shipped with the application
+     */
+    public static final String[] BUNDLED_LAYOUTS = {"us", "uk", "de", "fr"};
+
+    static final int STROKE_BITS = 12;
+    static final int STROKE_MASK = (1 << STROKE_BITS) - 1;
+    static final int KEY_MASK = 0x3FF;
+    static final int SHIFT = 0x400;
+    static final int ALT_GRAPH = 0x800;
+
+    private static final String LAYOUT_EXT = ".layout";
+    private static final String LAYOUT_RESOURCE_DIR = "com/mattc/autotyper/robot/layouts/";
+    private static final Path LAYOUT_DIR = Paths.get("layouts");
+    private static final Map<String, KeyLayout> layouts = Maps.newConcurrentMap();
+
+    private final String name;
+    private final int[] table;
+    private final long fingerprint;
+
+    private KeyLayout(String name, int[] table) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (final int entry : table)
+            hasher.putInt(entry);
+
+        this.name = name;
+        this.table = table;
+        this.fingerprint = hasher.hash().asLong();
+    }
+
+    /**
+     * Look up the packed keystrokes that produce the given character.
+     *
+     * @param c Character to type
+     * @return Packed keystrokes or {@link #UNMAPPED} if this layout cannot type the character
+     */
+    public int lookup(char c) {
+        return c < table.length ? table[c] : UNMAPPED;
+    }
+
+    /**
+     * @return true if this layout maps the character to some keystroke
+     */
+    public boolean canType(char c) {
+        return lookup(c) != UNMAPPED;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return A hash of the compiled table, changes whenever the layout maps any character differently
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyLayout[" + name + "]";
+    }
+
+    /**
+     * Retrieve the compiled layout of the given name. Layouts are compiled once and cached.
+     *
+     * @param name Layout Name, e.g. "us" or "de"
+     * @return The Compiled Layout
+     * @throws IllegalArgumentException If no such layout exists or it is malformed
+     * @throws IORuntimeException       If the layout could not be read
+     */
+    public static KeyLayout forName(String name) {
+        final String key = name.trim().toLowerCase(Locale.ROOT);
+        KeyLayout layout = layouts.get(key);
+
+        if (layout == null) {
+            layout = load(key);
+            final KeyLayout prev = layouts.putIfAbsent(key, layout);
+            if (prev != null)
+                layout = prev;
+        }
+
+        return layout;
+    }
+
+    /**
+     * Guess the keyboard layout from a Locale. This is only a best guess, users with a keyboard that
+     * does not match their locale should specify the layout explicitly.
+     *
+     * @return The Layout most likely to be used with the given Locale
+     */
+    public static KeyLayout forLocale(Locale locale) {
+        final String language = locale.getLanguage();
+        final String country = locale.getCountry();
+
+        if (language.equals("de") && (country.isEmpty() || country.equals("DE") || country.equals("AT")))
+            return forName("de");
+        else if (language.equals("fr") && (country.isEmpty() || country.equals("FR")))
+            return forName("fr");
+        else if (language.equals("en") && (country.equals("GB") || country.equals("IE")))
+            return forName("uk");
+
+        return forName(DEFAULT_LAYOUT);
+    }
+
+    /**
+     * @return The Layout for the default Locale of this JVM
+     * @see #forLocale(Locale)
+     */
+    public static KeyLayout getDefault() {
+        return forLocale(Locale.getDefault());
+    }
+
+    /**
+     * @return The Virtual Key Code of a single stroke
+     */
+    static int keyCode(int stroke) {
+        return stroke & KEY_MASK;
+    }
+
+    /**
+     * @return true if the stroke requires SHIFT to be held
+     */
+    static boolean isShifted(int stroke) {
+        return (stroke & SHIFT) != 0;
+    }
+
+    /**
+     * @return true if the stroke requires ALT GRAPH to be held
+     */
+    static boolean isAltGraph(int stroke) {
+        return (stroke & ALT_GRAPH) != 0;
+    }
+
+    /**
+     * @return The stroke that produces the character
+     */
+    static int baseStroke(int packed) {
+        return packed & STROKE_MASK;
+    }
+
+    /**
+     * @return The dead key stroke that must precede the base stroke, or {@link #UNMAPPED} if none
+     */
+    static int deadStroke(int packed) {
+        return (packed >>> STROKE_BITS) & STROKE_MASK;
+    }
+
+    private static KeyLayout load(String name) {
+        final Path local = LAYOUT_DIR.resolve(name + LAYOUT_EXT);
+        InputStream in = null;
+
+        try {
+            if (Files.isRegularFile(local)) {
+                Console.info("Loading keyboard layout '" + name + "' from " + local.toAbsolutePath());
+                in = Files.newInputStream(local);
+            } else {
+                in = KeyLayout.class.getClassLoader().getResourceAsStream(LAYOUT_RESOURCE_DIR + name + LAYOUT_EXT);
+            }
+
+            if (in == null)
+                throw new IllegalArgumentException("No keyboard layout named '" + name + "'! Available: " + Arrays.toString(BUNDLED_LAYOUTS));
+
+            return compile(name, new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (final IOException e) {
+            throw new IORuntimeException("Failed to read keyboard layout '" + name + "'", e);
+        } finally {
+            if (in != null)
+                IOUtils.close(in);
+        }
+    }
+
+    /**
+     * Compile a layout description into its lookup table. Every line is of the form
+     * <code>&lt;character&gt; &lt;keystroke&gt; [&lt;keystroke&gt;]</code>.
+     */
+    static KeyLayout compile(String name, BufferedReader reader) throws IOException {
+        final int[] packed = new int[Character.MAX_VALUE + 1];
+        int max = 0;
+        int lineNo = 0;
+
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNo++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+
+            final String[] parts = line.split("\\s+");
+            if (parts.length < 2 || parts.length > 3)
+                throw malformed(name, lineNo, "Expected '<character> <keystroke> [<keystroke>]' but got '" + line + "'");
+
+            final char c = parseCharacter(name, lineNo, parts[0]);
+            int entry = parseStroke(name, lineNo, parts[1]);
+            if (parts.length == 3)
+                entry = (entry << STROKE_BITS) | parseStroke(name, lineNo, parts[2]);
+
+            packed[c] = entry;
+            max = Math.max(max, c);
+        }
+
+        return new KeyLayout(name, Arrays.copyOf(packed, max + 1));
+    }
+
+    private static char parseCharacter(String name, int lineNo, String token) {
+        if (token.length() == 1)
+            return token.charAt(0);
+
+        if (token.startsWith("U+")) {
+            try {
+                final int cp = Integer.parseInt(token.substring(2), 16);
+                if (cp <= Character.MAX_VALUE)
+                    return (char) cp;
+            } catch (final NumberFormatException e) {
+                // Fall through to the failure below
+            }
+        }
+
+        throw malformed(name, lineNo, "'" + token + "' is not a single character or U+XXXX code point");
+    }
+
+    private static int parseStroke(String name, int lineNo, String token) {
+        final String[] parts = token.split("\\+");
+        int stroke = 0;
+
+        for (int i = 0; i < parts.length - 1; i++) {
+            switch (parts[i].toUpperCase(Locale.ROOT)) {
+                case "SHIFT":
+                    stroke |= SHIFT;
+                    break;
+                case "ALTGR":
+                case "ALT_GRAPH":
+                    stroke |= ALT_GRAPH;
+                    break;
+                default:
+                    throw malformed(name, lineNo, "Unknown modifier '" + parts[i] + "' in '" + token + "'");
+            }
+        }
+
+        final String key = parts[parts.length - 1].toUpperCase(Locale.ROOT);
+        final int code;
+        try {
+            code = KeyEvent.class.getField("VK_" + key).getInt(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw malformed(name, lineNo, "Unknown key 'VK_" + key + "' in '" + token + "'");
+        }
+
+        if (code == KeyEvent.VK_UNDEFINED || (code & ~KEY_MASK) != 0)
+            throw malformed(name, lineNo, "Key 'VK_" + key + "' cannot be used in a layout");
+
+        return stroke | code;
+    }
+
+    private static IllegalArgumentException malformed(String name, int lineNo, String message) {
+        return new IllegalArgumentException(String.format("%s%s:%d: %s", name, LAYOUT_EXT, lineNo, message));
+    }
+}
@@ -0,0 +1,73 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.OS;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces key events against deadlines on the monotonic {@link System#nanoTime()} clock. <br />
+ * <br />
+ * Every event schedules the earliest time the next one may be sent, relative to the previous
+ * deadline rather than to when the event returned, so the cost of sending events does not accumulate.
+ * Waiting parks the thread while the deadline is far away, then yields and finally spins for the last
+ * few microseconds, which allows intervals well below the millisecond granularity of
+ * {@link Thread#sleep(long)}. <br />
+ * <br />
+ * If typing stalls (i.e. it was paused) the pacer does not try to catch up by sending a burst of
+ * events, deadlines more than {@link #MAX_LAG} in the past are moved up to the present.
+ *
+ * @author Glossawy
+ */
+final class KeyPacer {
+
+    /**
+     * Time before a deadline at which we stop parking. Windows timers are far coarser than those of
+     * other systems, parking for less than this often oversleeps.
+     */
+    private static final long PARK_MARGIN = OS.get() == OS.WINDOWS ? TimeUnit.MICROSECONDS.toNanos(1500) : TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Time before a deadline at which we stop yielding and spin
+     */
+    private static final long YIELD_MARGIN = TimeUnit.MICROSECONDS.toNanos(20);
+
+    /**
+     * How far we may fall behind schedule before the schedule is reset
+     */
+    private static final long MAX_LAG = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private long deadline = System.nanoTime();
+
+    /**
+     * Block until the current deadline has passed.
+     */
+    void await() {
+        long remaining = deadline - System.nanoTime();
+
+        while (remaining > PARK_MARGIN) {
+            LockSupport.parkNanos(remaining - PARK_MARGIN);
+            remaining = deadline - System.nanoTime();
+        }
+
+        while (remaining > YIELD_MARGIN) {
+            Thread.yield();
+            remaining = deadline - System.nanoTime();
+        }
+
+        while (remaining > 0)
+            remaining = deadline - System.nanoTime();
+    }
+
+    /**
+     * Schedule the next deadline the given number of nanoseconds after the current one.
+     */
+    void schedule(long interval) {
+        final long now = System.nanoTime();
+
+        if (now - deadline > MAX_LAG)
+            deadline = now;
+
+        deadline += interval;
+    }
+}
@@ -0,0 +1,210 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.Builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled sequence of key events ready to be replayed by a {@link Keyboard}. <br />
+ * <br />
+ * Every instruction is a single <code>int</code> holding an 8 bit opcode and a 24 bit operand.
+ * Besides pressing and releasing keys a program marks the points at which typing may safely be
+ * paused or stopped (only SHIFT may be held down at a mark) and the start and end of every source line.
+ * The start of a line refers to the line's text so that a {@link Methodology} may transfer the line by
+ * other means than its key events, i.e. by pasting it. Timing is deliberately left out of the program
+ * so that the same program can be replayed at any input delay.
+ *
+ * @author Glossawy
+ * @see KeystrokeCompiler
+ */
+public final class KeyProgram {
+
+    /**
+     * Press the key with the Virtual Key Code given by the operand
+     */
+    static final int OP_PRESS = 1;
+    /**
+     * Release the key with the Virtual Key Code given by the operand
+     */
+    static final int OP_RELEASE = 2;
+    /**
+     * A character boundary. Typing may be paused or stopped here once held modifiers are released.
+     */
+    static final int OP_MARK = 3;
+    /**
+     * The end of a source line, after its ENTER has been typed. The operand is the 1-based line number.
+     */
+    static final int OP_LINE = 4;
+    /**
+     * The start of a source line. The operand is the index of the line's text, as typed, in the text pool.
+     */
+    static final int OP_TEXT = 5;
+
+    private static final int OPCODE_SHIFT = 24;
+    private static final int OPERAND_MASK = (1 << OPCODE_SHIFT) - 1;
+
+    private final int[] code;
+    private final String[] text;
+    private final int characters;
+    private final int lines;
+
+    KeyProgram(int[] code, String[] text, int characters, int lines) {
+        this.code = code;
+        this.text = text;
+        this.characters = characters;
+        this.lines = lines;
+    }
+
+    /**
+     * The instructions of this program. The returned array is not copied and must not be modified.
+     */
+    int[] code() {
+        return code;
+    }
+
+    /**
+     * The text pool referenced by {@link #OP_TEXT} instructions. The returned array is not copied and
+     * must not be modified.
+     */
+    String[] text() {
+        return text;
+    }
+
+    /**
+     * @return Number of instructions in this program
+     */
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * @return Number of characters this program types, excluding line endings
+     */
+    public int characterCount() {
+        return characters;
+    }
+
+    /**
+     * @return Number of lines this program types
+     */
+    public int lineCount() {
+        return lines;
+    }
+
+    /**
+     * @return Number of key presses and releases this program sends
+     */
+    public int eventCount() {
+        int count = 0;
+        for (final int instruction : code) {
+            final int op = opcode(instruction);
+            if (op == OP_PRESS || op == OP_RELEASE)
+                count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeyProgram[%,d characters, %,d lines, %,d instructions]", characters, lines, code.length);
+    }
+
+    static int opcode(int instruction) {
+        return instruction >>> OPCODE_SHIFT;
+    }
+
+    static int operand(int instruction) {
+        return instruction & OPERAND_MASK;
+    }
+
+    static int instruction(int opcode, int operand) {
+        return (opcode << OPCODE_SHIFT) | (operand & OPERAND_MASK);
+    }
+
+    /**
+     * Accumulates instructions into a growing buffer, used by the {@link KeystrokeCompiler}.
+     */
+    static final class ProgramBuilder implements Builder<KeyProgram> {
+
+        private final List<String> text = new ArrayList<>();
+        private int[] code;
+        private int length;
+        private int characters;
+        private int lines;
+
+        ProgramBuilder(int expectedLength) {
+            this.code = new int[Math.max(16, expectedLength)];
+        }
+
+        void press(int key) {
+            append(instruction(OP_PRESS, key));
+        }
+
+        void release(int key) {
+            append(instruction(OP_RELEASE, key));
+        }
+
+        void text(CharSequence line) {
+            append(instruction(OP_TEXT, text.size()));
+            text.add(line.toString());
+        }
+
+        void mark() {
+            append(instruction(OP_MARK, 0));
+            characters++;
+        }
+
+        /**
+         * A point between keys that do not type a character, i.e. navigation keys, at which typing may
+         * still be paused or stopped.
+         */
+        void boundary() {
+            append(instruction(OP_MARK, 0));
+        }
+
+        /**
+         * Append every instruction of another program.
+         */
+        void include(KeyProgram program) {
+            final int base = text.size();
+            for (final int instruction : program.code)
+                append(opcode(instruction) == OP_TEXT ? instruction(OP_TEXT, base + operand(instruction)) : instruction);
+
+            text.addAll(Arrays.asList(program.text));
+            characters += program.characters;
+            lines += program.lines;
+        }
+
+        void line(int lineNumber) {
+            append(instruction(OP_LINE, lineNumber));
+            lines++;
+        }
+
+        /**
+         * Discard everything built so far, keeping the allocated capacity.
+         */
+        void reset() {
+            text.clear();
+            length = characters = lines = 0;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        private void append(int instruction) {
+            if (length == code.length)
+                code = Arrays.copyOf(code, length + (length >> 1));
+
+            code[length++] = instruction;
+        }
+
+        @Override
+        public KeyProgram build() {
+            return new KeyProgram(Arrays.copyOf(code, length), text.toArray(new String[text.size()]), characters, lines);
+        }
+    }
+}
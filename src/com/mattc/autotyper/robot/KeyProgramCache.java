@@ -0,0 +1,180 @@
+package com.mattc.autotyper.robot;
+
+import com.google.common.hash.Hashing;
+import com.mattc.autotyper.Downloader;
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.FileAgeComparator;
+import com.mattc.autotyper.util.OS;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores compiled {@link KeyProgram KeyPrograms} in the '.cctyper-cache' directory so that typing the
+ * same content again skips compilation entirely. <br />
+ * <br />
+ * Programs are keyed by a SHA-1 of the source content, the {@link KeyLayout} it was compiled for and the
+ * {@link KeystrokeCompiler#VERSION compiler version}. Only the most recently used programs are kept.
+ *
+ * @author Glossawy
+ */
+public final class KeyProgramCache {
+
+    private static final Path PROGRAM_DIR = Downloader.CACHE_DIR.resolve("programs");
+    private static final String PROGRAM_EXT = ".ccprog";
+    private static final int MAX_PROGRAMS = 20;
+
+    private static final int MAGIC = 0x43435047; // 'CCPG'
+    private static final int HEADER_INTS = 6;
+
+    private KeyProgramCache() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * Retrieve the program for a file from the cache or compile it and cache the result.
+     *
+     * @param file   File to type
+     * @param layout Layout of the Keyboard the program will be typed with
+     * @return The Compiled Program
+     * @throws IOException If the file could not be read
+     */
+    public static KeyProgram compile(Path file, KeyLayout layout) throws IOException {
+        final byte[] content = Files.readAllBytes(file);
+        final String key = Hashing.sha1().newHasher()
+                .putBytes(content)
+                .putString(layout.name(), StandardCharsets.UTF_8)
+                .putLong(layout.fingerprint())
+                .putInt(KeystrokeCompiler.VERSION)
+                .hash().toString();
+        final Path cached = PROGRAM_DIR.resolve(key + PROGRAM_EXT);
+
+        final OS.MemoryUnit mem = OS.MemoryUnit.KILOBYTES;
+        final long size = mem.convert(content.length, OS.MemoryUnit.BYTES);
+
+        if (Files.isRegularFile(cached)) {
+            try {
+                final KeyProgram program = read(cached);
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                Console.info(String.format("Loaded compiled program for %s (%,d KB) from cache: %s", file.getFileName(), size, program));
+                return program;
+            } catch (final IOException e) {
+                Console.warn("Cached program " + cached.getFileName() + " is unreadable, recompiling... " + e.getMessage());
+            }
+        }
+
+        final long start = System.nanoTime();
+        final KeyProgram program = new KeystrokeCompiler(layout).compile(new String(content, StandardCharsets.UTF_8));
+        Console.info(String.format("Compiled %s (%,d KB) in %,d ms: %s", file.getFileName(), size, (System.nanoTime() - start) / 1000000, program));
+
+        try {
+            write(cached, program);
+            clean();
+        } catch (final IOException e) {
+            // A failure to cache should never prevent typing
+            Console.warn("Could not cache compiled program: " + e.getMessage());
+        }
+
+        return program;
+    }
+
+    // Layout: header ints, instructions, then every pooled text as its UTF-8 length and bytes
+    private static KeyProgram read(Path path) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        try {
+            if (buf.remaining() < HEADER_INTS * 4 || buf.getInt() != MAGIC || buf.getInt() != KeystrokeCompiler.VERSION)
+                throw new IOException("Not a compiled program of version " + KeystrokeCompiler.VERSION);
+
+            final int characters = buf.getInt();
+            final int lines = buf.getInt();
+            final int[] code = new int[length(buf, 4)];
+            final String[] text = new String[length(buf, 4)];
+
+            final IntBuffer ints = buf.asIntBuffer();
+            ints.get(code);
+            buf.position(buf.position() + code.length * 4);
+
+            for (int i = 0; i < text.length; i++) {
+                final byte[] bytes = new byte[length(buf, 1)];
+                buf.get(bytes);
+                text[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            if (buf.hasRemaining())
+                throw new IOException(buf.remaining() + " unexpected trailing bytes");
+
+            return new KeyProgram(code, text, characters, lines);
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Compiled program is truncated", e);
+        }
+    }
+
+    // Reads a count of elements of the given size, which must fit in the rest of the file
+    private static int length(ByteBuffer buf, int size) throws IOException {
+        final int length = buf.getInt();
+        if (length < 0 || (long) length * size > buf.remaining())
+            throw new IOException("Compiled program is corrupt, it has an invalid length of " + length);
+
+        return length;
+    }
+
+    private static void write(Path path, KeyProgram program) throws IOException {
+        Files.createDirectories(PROGRAM_DIR);
+
+        final int[] code = program.code();
+        final String[] text = program.text();
+        final byte[][] encoded = new byte[text.length][];
+        int size = (HEADER_INTS + code.length + text.length) * 4;
+
+        for (int i = 0; i < text.length; i++) {
+            encoded[i] = text[i].getBytes(StandardCharsets.UTF_8);
+            size += encoded[i].length;
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC)
+                .putInt(KeystrokeCompiler.VERSION)
+                .putInt(program.characterCount())
+                .putInt(program.lineCount())
+                .putInt(code.length)
+                .putInt(text.length);
+        buf.asIntBuffer().put(code);
+        buf.position(buf.position() + code.length * 4);
+
+        for (final byte[] bytes : encoded)
+            buf.putInt(bytes.length).put(bytes);
+
+        buf.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining())
+                channel.write(buf);
+        }
+    }
+
+    // Retains the MAX_PROGRAMS most recently used programs
+    private static void clean() throws IOException {
+        final List<Path> list;
+        try (Stream<Path> paths = Files.list(PROGRAM_DIR)) {
+            list = paths.filter((p) -> p.toString().endsWith(PROGRAM_EXT))
+                    .sorted(FileAgeComparator.INSTANCE)
+                    .collect(Collectors.toList());
+        }
+
+        // Sorted newest first, remove from the end
+        while (list.size() > MAX_PROGRAMS)
+            Files.deleteIfExists(list.remove(list.size() - 1));
+    }
+}
@@ -0,0 +1,36 @@
+package com.mattc.autotyper.robot;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stream of {@link KeyProgram KeyPrograms}, usually a program per line of a source that is read,
+ * downloaded or compiled while earlier programs are already being typed. See {@link Keyboard#typeStream(KeyProgramSource)}.
+ *
+ * @author Glossawy
+ */
+@FunctionalInterface
+public interface KeyProgramSource {
+
+    /**
+     * Retrieve the next program, blocking until it is available.
+     *
+     * @return The next program or null once the source is exhausted
+     * @throws IOException If the source failed
+     */
+    KeyProgram next() throws IOException;
+
+    /**
+     * Wait until {@link #next()} can return without blocking, so that whoever types the programs can
+     * handle a pause or a stop while a slow source catches up. Sources that never block are always
+     * ready.
+     *
+     * @param timeout Longest time to wait
+     * @param unit    Unit of the timeout
+     * @return true if the next program, or the end of the source, is available
+     * @throws IOException If the source failed
+     */
+    default boolean await(long timeout, TimeUnit unit) throws IOException {
+        return true;
+    }
+}
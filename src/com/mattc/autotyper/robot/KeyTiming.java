@@ -0,0 +1,168 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.Parameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The intervals a {@link Keyboard} keeps between the key events it sends. All intervals are held in
+ * nanoseconds and are measured from the moment the previous event was sent, not from when it
+ * returned, so the time spent sending an event does not add to the delay. <br />
+ * <br />
+ * <ul>
+ * <li><b>Press Hold</b> - Time a key is held down before it is released (also applies to modifiers)</li>
+ * <li><b>Inter Key</b> - Time between releasing a key and pressing the next one</li>
+ * <li><b>Post Newline</b> - Time after releasing ENTER, gives the target time to handle the new line</li>
+ * <li><b>Paste Settle</b> - Time after a paste before the clipboard may change, gives the target time to
+ * read the clipboard</li>
+ * </ul>
+ *
+ * @author Glossawy
+ */
+public final class KeyTiming {
+
+    private final long pressHold;
+    private final long interKey;
+    private final long postNewline;
+    private final long pasteSettle;
+
+    /**
+     * Default Paste Settle, the time the target gets to read the clipboard does not depend on the input delay
+     */
+    private static final long DEFAULT_PASTE_SETTLE = TimeUnit.MILLISECONDS.toNanos(25);
+
+    private KeyTiming(long pressHold, long interKey, long postNewline, long pasteSettle) {
+        this.pressHold = pressHold;
+        this.interKey = interKey;
+        this.postNewline = postNewline;
+        this.pasteSettle = pasteSettle;
+    }
+
+    /**
+     * Timing equivalent to a single Input Delay, where typing a plain character takes the given
+     * number of milliseconds in total. A quarter of the delay is spent holding the key.
+     *
+     * @param msDelay Input Delay in Milliseconds
+     * @return Timing for the given Input Delay
+     */
+    public static KeyTiming fromDelay(int msDelay) {
+        return fromDelay(TimeUnit.MILLISECONDS.toNanos(Math.max(msDelay, 0)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Timing equivalent to a single Input Delay, where typing a plain character takes the given
+     * time in total. A quarter of the delay is spent holding the key.
+     *
+     * @param delay Input Delay
+     * @param unit  Unit of the Input Delay
+     * @return Timing for the given Input Delay
+     */
+    public static KeyTiming fromDelay(long delay, TimeUnit unit) {
+        final long nanos = unit.toNanos(Math.max(delay, 0));
+        final long hold = nanos / 4;
+
+        return new KeyTiming(hold, nanos - hold, nanos, DEFAULT_PASTE_SETTLE);
+    }
+
+    public long getPressHold(TimeUnit unit) {
+        return unit.convert(pressHold, TimeUnit.NANOSECONDS);
+    }
+
+    public long getInterKey(TimeUnit unit) {
+        return unit.convert(interKey, TimeUnit.NANOSECONDS);
+    }
+
+    public long getPostNewline(TimeUnit unit) {
+        return unit.convert(postNewline, TimeUnit.NANOSECONDS);
+    }
+
+    public long getPasteSettle(TimeUnit unit) {
+        return unit.convert(pasteSettle, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Scale the time taken per key, the Paste Settle is left as is since it depends only on the target.
+     *
+     * @param factor Factor to multiply every interval by, less than 1 to type faster
+     * @return The Scaled Timing
+     */
+    public KeyTiming scale(double factor) {
+        return new KeyTiming(Math.round(pressHold * factor), Math.round(interKey * factor), Math.round(postNewline * factor), pasteSettle);
+    }
+
+    /**
+     * @return Total time to type a single plain character, rounded to milliseconds
+     */
+    public int toDelay() {
+        return (int) TimeUnit.NANOSECONDS.toMillis(pressHold + interKey);
+    }
+
+    long pressHoldNanos() {
+        return pressHold;
+    }
+
+    long interKeyNanos() {
+        return interKey;
+    }
+
+    long postNewlineNanos() {
+        return postNewline;
+    }
+
+    long pasteSettleNanos() {
+        return pasteSettle;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeyTiming[hold=%.3f ms, inter=%.3f ms, newline=%.3f ms, paste=%.3f ms]", pressHold / 1e6, interKey / 1e6, postNewline / 1e6, pasteSettle / 1e6);
+    }
+
+    /**
+     * Builds a {@link KeyTiming} with every interval specified individually. Unset intervals are
+     * taken from the base timing, or the {@link Parameters#DEFAULT_DELAY default delay} if none is given.
+     */
+    public static final class Builder implements com.mattc.autotyper.util.Builder<KeyTiming> {
+
+        private long pressHold;
+        private long interKey;
+        private long postNewline;
+        private long pasteSettle;
+
+        public Builder() {
+            this(KeyTiming.fromDelay(Parameters.DEFAULT_DELAY));
+        }
+
+        public Builder(KeyTiming base) {
+            this.pressHold = base.pressHold;
+            this.interKey = base.interKey;
+            this.postNewline = base.postNewline;
+            this.pasteSettle = base.pasteSettle;
+        }
+
+        public Builder pressHold(long time, TimeUnit unit) {
+            this.pressHold = unit.toNanos(Math.max(time, 0));
+            return this;
+        }
+
+        public Builder interKey(long time, TimeUnit unit) {
+            this.interKey = unit.toNanos(Math.max(time, 0));
+            return this;
+        }
+
+        public Builder postNewline(long time, TimeUnit unit) {
+            this.postNewline = unit.toNanos(Math.max(time, 0));
+            return this;
+        }
+
+        public Builder pasteSettle(long time, TimeUnit unit) {
+            this.pasteSettle = unit.toNanos(Math.max(time, 0));
+            return this;
+        }
+
+        @Override
+        public KeyTiming build() {
+            return new KeyTiming(pressHold, interKey, postNewline, pasteSettle);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.mattc.autotyper.util.Console;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Common Implementation for any Keyboard Implementations.
@@ -14,16 +15,46 @@ import java.io.IOException;
  */
 public abstract class Keyboard {
 
+    /**
+     * Size in bytes above which files are streamed by {@link #typeFile(File)} rather than compiled ahead of time
+     */
+    public static final long STREAMING_THRESHOLD = 1 << 20;
+
     /**
      * Determines the proper Keyboard type to use and returns that. By default it will return
-     * {@link SwingKeyboard}
+     * {@link SwingKeyboard} using the {@link KeyLayout#getDefault() default layout}.
      *
      * @param preferred Preferred {@link KeyboardMethodology}, this may not be used if there are issues.
      * @return The Proper Keyboard Object
      */
     public static Keyboard retrieveKeyboard(KeyboardMethodology preferred) {
-        Console.info("SwingKeyboard Created!");
-        Keyboard keyboard = new SwingKeyboard(Parameters.DEFAULT_DELAY);
+        return retrieveKeyboard(preferred, KeyLayout.getDefault());
+    }
+
+    /**
+     * Determines the proper Keyboard type to use and returns that. By default it will return
+     * {@link SwingKeyboard} using the {@link KeyboardBackends#createDefault() default backend}.
+     *
+     * @param preferred Preferred {@link KeyboardMethodology}, this may not be used if there are issues.
+     * @param layout    Keyboard Layout of the machine being typed on
+     * @return The Proper Keyboard Object
+     */
+    public static Keyboard retrieveKeyboard(KeyboardMethodology preferred, KeyLayout layout) {
+        return retrieveKeyboard(preferred, layout, KeyboardBackends.createDefault());
+    }
+
+    /**
+     * Determines the proper Keyboard type to use and returns that. By default it will return
+     * {@link SwingKeyboard}
+     *
+     * @param preferred Preferred {@link KeyboardMethodology}, this may not be used if there are issues.
+     * @param layout    Keyboard Layout of the machine being typed on
+     * @param backend   Where Key Events are sent, see {@link KeyboardBackends}
+     * @return The Proper Keyboard Object
+     */
+    public static Keyboard retrieveKeyboard(KeyboardMethodology preferred, KeyLayout layout, KeyboardBackend backend) {
+        Console.info("SwingKeyboard Created with " + layout + " and " + backend.getClass().getSimpleName() + "!");
+        Keyboard keyboard = new SwingKeyboard(KeyTiming.fromDelay(Parameters.DEFAULT_DELAY), layout, backend);
 
         Console.info("Keyboard Methodology Created for " + preferred + "...");
         keyboard.setMethod(preferred.create(keyboard));
@@ -72,13 +103,64 @@ public abstract class Keyboard {
     public abstract void type(String str);
 
     /**
-     * Type an entire file's contents to the screen.
+     * Type an entire file's contents to the screen. The file is streamed, it is compiled and typed a
+     * line at a time so that typing starts immediately and memory use does not depend on the file size.
+     * Unlike {@link #compile(File)} a character that cannot be typed is only found once typing reaches it.
      *
      * @param f
      * @throws IOException
      */
     public abstract void typeFile(File f) throws IOException;
 
+    /**
+     * @return true if a file is large enough that it should be typed with {@link #typeFile(File)} rather
+     * than compiled ahead of time, see {@link #STREAMING_THRESHOLD}
+     */
+    public static boolean isStreamed(File f) {
+        return f.length() > STREAMING_THRESHOLD;
+    }
+
+    /**
+     * Compile an entire file's contents into a program for the current {@link KeyLayout}, ready
+     * to be typed using {@link #typeProgram(KeyProgram)}. Compiled programs are cached.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public abstract KeyProgram compile(File f) throws IOException;
+
+    /**
+     * Type a program compiled ahead of time to the screen.
+     *
+     * @param program
+     */
+    public abstract void typeProgram(KeyProgram program);
+
+    /**
+     * Type programs as they become available, see {@link TypingPipeline}.
+     *
+     * @param source
+     * @throws IOException
+     */
+    public abstract void typeStream(KeyProgramSource source) throws IOException;
+
+    /**
+     * Set the journal recording the progress of the next sessions, null to stop journaling. Streams
+     * skip the lines a resumed journal typed before by themselves, a program has to be passed through
+     * {@link TypingJournal#skip(KeyProgram)} first.
+     *
+     * @param journal
+     */
+    public abstract void setJournal(TypingJournal journal);
+
+    /**
+     * Get the journal recording the progress of sessions, if any
+     *
+     * @return
+     */
+    public abstract TypingJournal getJournal();
+
     /**
      * Take image of screen and save.
      */
@@ -86,7 +168,8 @@ public abstract class Keyboard {
     public abstract void writeCrashImage();
 
     /**
-     * Set Input Delay (On a per Keystroke Basis)
+     * Set Input Delay (On a per Keystroke Basis). Shorthand for {@link #setTiming(KeyTiming)} using
+     * {@link KeyTiming#fromDelay(int)}.
      *
      * @param msDelay
      */
@@ -99,6 +182,55 @@ public abstract class Keyboard {
      */
     public abstract int getInputDelay();
 
+    /**
+     * Set the intervals kept between individual Key Events
+     *
+     * @param timing
+     */
+    public abstract void setTiming(KeyTiming timing);
+
+    /**
+     * Get the intervals kept between individual Key Events
+     *
+     * @return
+     */
+    public abstract KeyTiming getTiming();
+
+    /**
+     * Set how often the Keyboard waits for sent Key Events to be processed
+     *
+     * @param policy
+     */
+    public abstract void setSyncPolicy(SyncPolicy policy);
+
+    /**
+     * Get how often the Keyboard waits for sent Key Events to be processed
+     *
+     * @return
+     */
+    public abstract SyncPolicy getSyncPolicy();
+
+    /**
+     * Set the global key chords that control typing, i.e. pausing and stopping.
+     *
+     * @param hotkeys
+     */
+    public abstract void setHotkeys(Hotkeys hotkeys);
+
+    /**
+     * Set the Keyboard Layout used to map characters to keystrokes
+     *
+     * @param layout
+     */
+    public abstract void setLayout(KeyLayout layout);
+
+    /**
+     * Get the Keyboard Layout used to map characters to keystrokes
+     *
+     * @return
+     */
+    public abstract KeyLayout getLayout();
+
     /**
      * Get current Keyboard State
      *
@@ -117,6 +249,32 @@ public abstract class Keyboard {
 
     abstract void release(int code);
 
+    /**
+     * Release any modifier held down across characters, i.e. SHIFT during a run of capitals. Must be
+     * called before typing is paused or ended.
+     *
+     * @return The released modifiers, to be passed to {@link #restoreModifiers(int)} when typing resumes
+     */
+    abstract int releaseModifiers();
+
+    /**
+     * Hold down modifiers released by {@link #releaseModifiers()} again.
+     */
+    abstract void restoreModifiers(int modifiers);
+
+    /**
+     * Put the text on the system clipboard and send the paste shortcut. The clipboard is not
+     * changed again until the target had time to read it, see {@link KeyTiming#getPasteSettle(TimeUnit)}.
+     *
+     * @param text Text to paste, should not contain line breaks
+     */
+    abstract void paste(String text);
+
+    /**
+     * Wait until all Key Events sent so far have been processed, regardless of the {@link SyncPolicy}.
+     */
+    abstract void sync();
+
     abstract void doType(int... codes);
 
 }
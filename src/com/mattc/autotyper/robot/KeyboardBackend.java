@@ -0,0 +1,39 @@
+package com.mattc.autotyper.robot;
+
+/**
+ * Where a {@link Keyboard} sends its key events. The default backend drives a {@link java.awt.Robot},
+ * others may record events or discard them entirely to measure or test typing without a display. <br />
+ * <br />
+ * Backends are discovered through {@link KeyboardBackendProvider providers}, see {@link KeyboardBackends}.
+ * A backend is only ever used by one typing thread at a time.
+ *
+ * @author Glossawy
+ */
+public interface KeyboardBackend {
+
+    /**
+     * Press the key with the given {@link java.awt.event.KeyEvent} Virtual Key Code
+     */
+    void keyPress(int code);
+
+    /**
+     * Release the key with the given {@link java.awt.event.KeyEvent} Virtual Key Code
+     */
+    void keyRelease(int code);
+
+    /**
+     * Block until every key event sent so far has been processed
+     */
+    void waitForIdle();
+
+    /**
+     * Replace the contents of the clipboard the target pastes from
+     */
+    void setClipboard(String text);
+
+    /**
+     * Release any resources held by this backend
+     */
+    default void close() {
+    }
+}
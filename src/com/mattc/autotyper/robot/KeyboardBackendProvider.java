@@ -0,0 +1,34 @@
+package com.mattc.autotyper.robot;
+
+/**
+ * Creates {@link KeyboardBackend KeyboardBackends}. Providers are found with a {@link java.util.ServiceLoader},
+ * so additional backends can be added by listing their provider in
+ * <code>META-INF/services/com.mattc.autotyper.robot.KeyboardBackendProvider</code> on the classpath.
+ *
+ * @author Glossawy
+ */
+public interface KeyboardBackendProvider {
+
+    /**
+     * @return Unique name of the backend, i.e. "robot"
+     */
+    String name();
+
+    /**
+     * @return false if the backend cannot be created in this environment, i.e. without a display
+     */
+    boolean isAvailable();
+
+    /**
+     * @return Preference of this backend when none is requested by name, the highest available wins. A
+     * backend of negative priority, which does not type on the screen, is only used if requested by name.
+     */
+    int priority();
+
+    /**
+     * Create a new backend.
+     *
+     * @throws IllegalStateException If the backend could not be created
+     */
+    KeyboardBackend create();
+}
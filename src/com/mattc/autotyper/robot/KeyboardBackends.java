@@ -0,0 +1,97 @@
+package com.mattc.autotyper.robot;
+
+import com.google.common.collect.ImmutableList;
+import com.mattc.autotyper.util.Console;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+/**
+ * Looks up {@link KeyboardBackendProvider KeyboardBackendProviders} using a {@link ServiceLoader}.
+ *
+ * @author Glossawy
+ */
+public final class KeyboardBackends {
+
+    /**
+     * System Property naming the backend to use when none is given explicitly, i.e. -Dcctyper.backend=recording
+     */
+    public static final String BACKEND_PROPERTY = "cctyper.backend";
+
+    private static volatile List<KeyboardBackendProvider> providers;
+
+    private KeyboardBackends() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * @return Every provider on the classpath, available or not
+     */
+    public static List<KeyboardBackendProvider> providers() {
+        List<KeyboardBackendProvider> list = providers;
+
+        if (list == null) {
+            final ImmutableList.Builder<KeyboardBackendProvider> builder = ImmutableList.builder();
+            for (final KeyboardBackendProvider provider : ServiceLoader.load(KeyboardBackendProvider.class, KeyboardBackends.class.getClassLoader()))
+                builder.add(provider);
+
+            providers = list = builder.build();
+        }
+
+        return list;
+    }
+
+    /**
+     * Create the backend of the given name.
+     *
+     * @throws IllegalArgumentException If there is no such backend
+     * @throws IllegalStateException    If the backend is not available in this environment
+     */
+    public static KeyboardBackend create(String name) {
+        final String key = name.trim().toLowerCase(Locale.ROOT);
+
+        for (final KeyboardBackendProvider provider : providers()) {
+            if (provider.name().equals(key)) {
+                if (!provider.isAvailable())
+                    throw new IllegalStateException("Keyboard backend '" + key + "' is not available in this environment!");
+
+                return provider.create();
+            }
+        }
+
+        throw new IllegalArgumentException("No keyboard backend named '" + key + "'! Available: " + names());
+    }
+
+    /**
+     * Create the backend named by the {@value #BACKEND_PROPERTY} System Property, or else the available
+     * backend of the highest priority. Backends of negative priority are never chosen this way.
+     *
+     * @throws IllegalStateException If no backend is available
+     */
+    public static KeyboardBackend createDefault() {
+        final String requested = System.getProperty(BACKEND_PROPERTY);
+        if (requested != null)
+            return create(requested);
+
+        KeyboardBackendProvider best = null;
+        for (final KeyboardBackendProvider provider : providers()) {
+            if (provider.priority() >= 0 && provider.isAvailable() && (best == null || provider.priority() > best.priority()))
+                best = provider;
+        }
+
+        if (best == null)
+            throw new IllegalStateException("No keyboard backend is available! Choose one of " + names() + " by name to type without a display");
+
+        Console.info("Using the '" + best.name() + "' keyboard backend");
+        return best.create();
+    }
+
+    /**
+     * @return Names of every provider on the classpath
+     */
+    public static List<String> names() {
+        return providers().stream().map(KeyboardBackendProvider::name).collect(Collectors.toList());
+    }
+}
@@ -19,6 +19,16 @@ public enum KeyboardMethodology {
         TypingMethodology create(Keyboard keys) {
             return new TypingMethodology(keys);
         }
+    },
+
+    /**
+     * A Methodology that pastes line by line, typing only lines too short to be worth pasting.
+     */
+    PASTE {
+        @Override
+        PasteMethodology create(Keyboard keys) {
+            return new PasteMethodology(keys, PasteMethodology.DEFAULT_PASTE_LIMIT);
+        }
     };
 
 
@@ -0,0 +1,234 @@
+package com.mattc.autotyper.robot;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * Compiles source text into a {@link KeyProgram} ahead of time so that typing only has to walk an
+ * array of key events. <br />
+ * <br />
+ * Compilation applies the same filtering that typing always has: lines are trimmed, runs of
+ * whitespace are collapsed to a single space, empty lines and comments are dropped. Every character
+ * is resolved against the {@link KeyLayout} up front, so an untypable character is reported before
+ * a single key is pressed rather than in the middle of a session.
+ *
+ * @author Glossawy
+ */
+public final class KeystrokeCompiler {
+
+    /**
+     * Version of the compiler output, part of the key of any cached program. Must be incremented whenever
+     * the instructions generated for the same input change.
+     */
+    static final int VERSION = 3;
+
+    private final KeyLayout layout;
+
+    public KeystrokeCompiler(KeyLayout layout) {
+        this.layout = layout;
+    }
+
+    public KeyLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Compile the given text into a program.
+     *
+     * @param text Text to type, lines may end in '\n', '\r\n' or '\r'
+     * @return The Compiled Program
+     * @throws IllegalArgumentException If the text contains a character that can not be typed using this layout
+     */
+    public KeyProgram compile(CharSequence text) {
+        final KeyProgram.ProgramBuilder program = new KeyProgram.ProgramBuilder(text.length() * 3);
+        final LineCompiler lines = new LineCompiler(program);
+        final int length = text.length();
+        int start = 0;
+
+        for (int i = 0; i <= length; i++) {
+            final char c = i < length ? text.charAt(i) : '\n';
+            if (c != '\n' && c != '\r')
+                continue;
+
+            // Do not produce an empty line for the trailing line ending
+            if (i == length && start == length)
+                break;
+
+            lines.append(text, start, i);
+
+            if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+                i++;
+            start = i + 1;
+        }
+
+        return program.build();
+    }
+
+    /**
+     * @return A compiler for a source that is given a line at a time
+     */
+    public LineCompiler lines() {
+        return new LineCompiler(new KeyProgram.ProgramBuilder(256));
+    }
+
+    /**
+     * Compiles a source one line at a time, as it is read, into a separate program per line. The
+     * programs are exactly the instructions {@link #compile(CharSequence)} would generate for each line,
+     * so typing them one after another is the same as typing the program of the whole source. State
+     * carried between lines, i.e. being inside a block comment, is kept by the LineCompiler.
+     */
+    public final class LineCompiler {
+
+        private final KeyProgram.ProgramBuilder program;
+        private final StringBuilder collapsed = new StringBuilder(128);
+        private final StrokeWriter writer;
+        private boolean block = false;
+        private int lineNo = 0;
+
+        private LineCompiler(KeyProgram.ProgramBuilder program) {
+            this.program = program;
+            this.writer = new StrokeWriter() {
+                @Override
+                void emitPress(int code) {
+                    program.press(code);
+                }
+
+                @Override
+                void emitRelease(int code) {
+                    program.release(code);
+                }
+            };
+        }
+
+        /**
+         * Compile the next line of the source.
+         *
+         * @param line Line without its line ending
+         * @return The program typing the line or null if the line is not typed, i.e. it is a comment
+         * @throws IllegalArgumentException If the line contains a character that can not be typed using this layout
+         */
+        public KeyProgram compile(CharSequence line) {
+            program.reset();
+            append(line, 0, line.length());
+            return program.isEmpty() ? null : program.build();
+        }
+
+        /**
+         * @return Number of lines compiled so far
+         */
+        public int lineCount() {
+            return lineNo;
+        }
+
+        private void append(CharSequence text, int start, int end) {
+            lineNo++;
+            collapseWhitespace(text, start, end, collapsed);
+            block = compileLine(collapsed, lineNo, block, program, writer);
+        }
+    }
+
+    /**
+     * Compile a single, already collapsed, line.
+     *
+     * @return Whether the next line begins inside of a block comment
+     */
+    private boolean compileLine(StringBuilder text, int lineNo, boolean block, KeyProgram.ProgramBuilder program, StrokeWriter writer) {
+        block = filterLine(text, block);
+        if (text.length() == 0)
+            return block;
+
+        program.text(text);
+        for (int i = 0, len = text.length(); i < len; i++)
+            emit(text.charAt(i), lineNo, program, writer);
+
+        writer.stroke(KeyEvent.VK_ENTER);
+        program.line(lineNo);
+        return block;
+    }
+
+    /**
+     * Cut a single, already collapsed, line down to what is typed of it. Empty lines and comments are
+     * not typed at all and leave the line empty.
+     *
+     * @param text  The line, modified in place
+     * @param block Whether the line begins inside of a block comment
+     * @return Whether the next line begins inside of a block comment
+     */
+    static boolean filterLine(StringBuilder text, boolean block) {
+        // Ignore Empty Lines and Comments
+        if (text.length() == 0) {
+            return block;
+        } else if (startsWith(text, "--[[")) {
+            block = !endsWith(text, "]]") && !endsWith(text, "]]--");
+            text.setLength(0);
+            return block;
+        } else if (block) {
+            block = !endsWith(text, "]]") && !endsWith(text, "]]--");
+            text.setLength(0);
+            return block;
+        } else if (startsWith(text, "--")) {
+            text.setLength(0);
+            return false;
+        }
+
+        // Stop typing once we hit a comment, which may start a block comment
+        final int comment = text.indexOf("--");
+        if (comment >= 0) {
+            block = startsWith(text, comment + 2, "[[") && text.indexOf("]]", comment + 4) < 0;
+            text.setLength(comment);
+        }
+
+        return block;
+    }
+
+    private void emit(char c, int lineNo, KeyProgram.ProgramBuilder program, StrokeWriter writer) {
+        final int packed = layout.lookup(c);
+
+        if (packed == KeyLayout.UNMAPPED)
+            throw new IllegalArgumentException(String.format("Cannot type character '%s' (U+%04X) on line %d using the %s keyboard layout", c, (int) c, lineNo, layout.name()));
+
+        program.mark();
+        writer.write(packed);
+    }
+
+    /**
+     * Copy text[start, end) into the given builder, trimmed and with every run of whitespace collapsed
+     * into a single space. Every character up to and including the space is whitespace.
+     */
+    static void collapseWhitespace(CharSequence text, int start, int end, StringBuilder out) {
+        out.setLength(0);
+        boolean space = false;
+
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+
+            if (c <= ' ') {
+                space = out.length() > 0;
+            } else {
+                if (space)
+                    out.append(' ');
+                out.append(c);
+                space = false;
+            }
+        }
+    }
+
+    private static boolean startsWith(StringBuilder text, String prefix) {
+        return startsWith(text, 0, prefix);
+    }
+
+    private static boolean startsWith(StringBuilder text, int offset, String prefix) {
+        if (offset < 0 || text.length() - offset < prefix.length())
+            return false;
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean endsWith(StringBuilder text, String suffix) {
+        return startsWith(text, text.length() - suffix.length(), suffix);
+    }
+}
@@ -0,0 +1,262 @@
+package com.mattc.autotyper.robot;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Predicts what typing a {@link KeyProgram} costs with a given {@link KeyboardMethodology} and
+ * {@link KeyTiming}, without typing it. <br />
+ * <br />
+ * The program is walked the way the methodology would replay it and every key event is charged the
+ * interval the {@link KeyPacer} schedules after it: the Press Hold after a press, the Inter Key after a
+ * release or the Post Newline after releasing ENTER. Modifiers are key events like any other and are
+ * counted separately as well. Lines the {@link PasteMethodology} would paste are charged the paste
+ * shortcut and the Paste Settle of every chunk instead, using the very decision the methodology makes
+ * while typing. <br />
+ * <br />
+ * Waiting for the target to process key events, see {@link SyncPolicy}, depends on the target and is
+ * not part of the estimate, nor are pauses made by the user.
+ *
+ * @author Glossawy
+ */
+public final class KeystrokeCostModel {
+
+    /**
+     * Key events sent per paste, i.e. CTRL and V pressed and released
+     */
+    static final int PASTE_EVENTS = 4;
+
+    private final KeyTiming timing;
+    private final int pasteLimit;
+
+    /**
+     * @param method Methodology the program would be typed with
+     * @param timing Timing the program would be typed with
+     */
+    public KeystrokeCostModel(KeyboardMethodology method, KeyTiming timing) {
+        this(timing, method == KeyboardMethodology.PASTE ? PasteMethodology.DEFAULT_PASTE_LIMIT : 0);
+    }
+
+    /**
+     * @param pasteLimit Most characters in a single paste, 0 if lines are never pasted
+     */
+    KeystrokeCostModel(KeyTiming timing, int pasteLimit) {
+        this.timing = timing;
+        this.pasteLimit = pasteLimit;
+    }
+
+    /**
+     * Estimate typing a compiled program.
+     *
+     * @param program Program to type
+     * @return The Estimate
+     */
+    public Estimate estimate(KeyProgram program) {
+        final int[] code = program.code();
+        final String[] text = program.text();
+        final Estimate estimate = new Estimate(program.characterCount(), program.lineCount());
+
+        for (int pc = 0; pc < code.length; pc++) {
+            final int op = KeyProgram.opcode(code[pc]);
+            final int key = KeyProgram.operand(code[pc]);
+
+            if (op == KeyProgram.OP_PRESS) {
+                estimate.event(key, timing.pressHoldNanos());
+            } else if (op == KeyProgram.OP_RELEASE) {
+                estimate.event(key, key == KeyEvent.VK_ENTER ? timing.postNewlineNanos() : timing.interKeyNanos());
+            } else if (op == KeyProgram.OP_TEXT && pasteLimit > 0) {
+                final String line = text[KeyProgram.operand(code[pc])];
+
+                // Count the key events that would type the line, up to its ENTER
+                int end = pc + 1, events = 0;
+                for (int next; (next = KeyProgram.opcode(code[end])) != KeyProgram.OP_LINE; end++) {
+                    if (next == KeyProgram.OP_PRESS || next == KeyProgram.OP_RELEASE)
+                        events++;
+                }
+
+                if (isCheaperToPaste(line.length(), events - 2)) {
+                    final int chunks = chunks(line.length());
+                    estimate.paste(chunks, chunks * pasteNanos());
+                    // Continue with the ENTER press and release right before the end of the line
+                    pc = end - 3;
+                }
+            }
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Estimate typing text exactly as it is, without stripping comments or whitespace. Characters that
+     * can not be typed with the layout are left out.
+     *
+     * @param text   Text to type
+     * @param layout Layout of the Keyboard the text would be typed with
+     * @return The Estimate
+     */
+    public Estimate estimate(CharSequence text, KeyLayout layout) {
+        final KeyProgram.ProgramBuilder program = new KeyProgram.ProgramBuilder(text.length() * 3);
+        final StrokeWriter writer = new StrokeWriter() {
+            @Override
+            void emitPress(int code) {
+                program.press(code);
+            }
+
+            @Override
+            void emitRelease(int code) {
+                program.release(code);
+            }
+        };
+
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0, lineNo = 1, length = text.length(); i <= length; i++) {
+            final char c = i < length ? text.charAt(i) : '\n';
+            if (c == '\r') {
+                continue;
+            } else if (c != '\n') {
+                line.append(c);
+                continue;
+            } else if (i == length && line.length() == 0) {
+                break;
+            }
+
+            program.text(line);
+            for (int j = 0; j < line.length(); j++) {
+                final char ch = line.charAt(j);
+                final int packed = ch == '\t' ? KeyEvent.VK_TAB : layout.lookup(ch);
+
+                if (packed != KeyLayout.UNMAPPED) {
+                    program.mark();
+                    writer.write(packed);
+                }
+            }
+
+            writer.stroke(KeyEvent.VK_ENTER);
+            program.line(lineNo++);
+            line.setLength(0);
+        }
+
+        return estimate(program.build());
+    }
+
+    /**
+     * Compare the time it would take to type a line key by key with the time to paste it.
+     *
+     * @param length Length of the line
+     * @param events Key Events required to type the line, excluding its ENTER
+     * @return true if pasting is quicker
+     */
+    boolean isCheaperToPaste(int length, int events) {
+        if (pasteLimit <= 0)
+            return false;
+
+        // Events come in pairs of a press and a release
+        final long typeCost = events * ((timing.pressHoldNanos() + timing.interKeyNanos()) / 2);
+        final long pasteCost = chunks(length) * pasteNanos();
+        return pasteCost < typeCost;
+    }
+
+    private int chunks(int length) {
+        return (length + pasteLimit - 1) / pasteLimit;
+    }
+
+    // The paste shortcut followed by the time the target needs to read the clipboard
+    private long pasteNanos() {
+        return (PASTE_EVENTS / 2) * (timing.pressHoldNanos() + timing.interKeyNanos()) + timing.pasteSettleNanos();
+    }
+
+    public KeyTiming getTiming() {
+        return timing;
+    }
+
+    /**
+     * The predicted cost of typing something
+     */
+    public static final class Estimate {
+
+        private final long characters, lines;
+        private long events, modifiers, pastes, nanos;
+
+        private Estimate(long characters, long lines) {
+            this.characters = characters;
+            this.lines = lines;
+        }
+
+        private void event(int key, long interval) {
+            events++;
+            nanos += interval;
+
+            if (key == KeyEvent.VK_SHIFT || key == KeyEvent.VK_CONTROL || key == KeyEvent.VK_ALT || key == KeyEvent.VK_ALT_GRAPH || key == KeyEvent.VK_META)
+                modifiers++;
+        }
+
+        private void paste(int chunks, long interval) {
+            pastes += chunks;
+            events += chunks * PASTE_EVENTS;
+            modifiers += chunks * (PASTE_EVENTS / 2);
+            nanos += interval;
+        }
+
+        /**
+         * @return Number of characters typed, excluding line endings
+         */
+        public long characterCount() {
+            return characters;
+        }
+
+        public long lineCount() {
+            return lines;
+        }
+
+        /**
+         * @return Number of key presses and releases, including modifiers and those of pastes
+         */
+        public long eventCount() {
+            return events;
+        }
+
+        /**
+         * @return Number of presses and releases of SHIFT, CTRL, ALT, ALT GRAPH and META
+         */
+        public long modifierCount() {
+            return modifiers;
+        }
+
+        public long pasteCount() {
+            return pastes;
+        }
+
+        /**
+         * @return Time typing takes, excluding the countdown
+         */
+        public long getDuration(TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return Fraction of the time this takes less than the other, negative if it takes longer
+         */
+        public double savedOver(Estimate other) {
+            return other.nanos == 0 ? 0 : 1 - (double) nanos / other.nanos;
+        }
+
+        /**
+         * @return The duration as i.e. "1h 02m 03s", "2m 03s" or "3.4s"
+         */
+        public String formatDuration() {
+            final long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+
+            if (seconds >= 3600)
+                return String.format("%dh %02dm %02ds", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+            else if (seconds >= 60)
+                return String.format("%dm %02ds", seconds / 60, seconds % 60);
+            else
+                return String.format("%.1fs", nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d characters, %,d lines, %,d key events (%,d modifiers, %,d pastes), %s", characters, lines, events, modifiers, pastes, formatDuration());
+        }
+    }
+}
@@ -44,12 +44,41 @@ public interface Methodology extends NativeKeyListener {
      */
     void typeFile(File file) throws IOException;
 
+    /**
+     * Type a program compiled ahead of time by a {@link KeystrokeCompiler}. How this is done is implementation
+     * dependent. {@link TypingMethodology} replays the key events, listening to events between characters.
+     *
+     * @param program Compiled Program
+     */
+    void typeProgram(KeyProgram program);
+
+    /**
+     * Type programs as they become available from a source, i.e. lines being downloaded and compiled
+     * concurrently. Typing stops once the source is exhausted or typing is stopped.
+     *
+     * @param source Source of Programs
+     * @throws IOException If the source fails
+     */
+    void typeStream(KeyProgramSource source) throws IOException;
+
     /**
      * @return The current state of the Keyboard (STOPPED, PAUSED, ACTIVE).
      * @see Keyboard.KeyboardMode
      */
     Keyboard.KeyboardMode mode();
 
+    /**
+     * Set the global key chords that control typing, i.e. pausing and stopping.
+     *
+     * @param hotkeys Key Bindings
+     */
+    void setHotkeys(Hotkeys hotkeys);
+
+    /**
+     * @return The global key chords that control typing
+     */
+    Hotkeys getHotkeys();
+
     /**
      * Destroy all destroyable resources, rendering the keyboard unusable and freeing reserved
      * memory (if required).
@@ -0,0 +1,87 @@
+package com.mattc.autotyper.robot;
+
+/**
+ * Transfers a line at a time by putting it on the system clipboard and pasting it, then typing
+ * ENTER. ComputerCraft's editor accepts a paste of a single line, so a long program takes a few
+ * key events per line instead of a few per character. Lines longer than the paste limit of the
+ * target are pasted in chunks. <br />
+ * <br />
+ * Pasting has a fixed cost, the paste shortcut and the time the target needs to read the clipboard,
+ * so lines that are quicker to type than to paste are still typed key by key, as decided by the
+ * {@link KeystrokeCostModel}. Pauses, stops and scheduled key events are handled between chunks
+ * exactly as {@link TypingMethodology} does between characters. <br />
+ * <br />
+ * <b>Note:</b> This replaces the contents of the system clipboard.
+ *
+ * @author Glossawy
+ */
+class PasteMethodology extends TypingMethodology {
+
+    /**
+     * Most characters ComputerCraft accepts in a single paste
+     */
+    static final int DEFAULT_PASTE_LIMIT = 512;
+
+    private final int limit;
+
+    PasteMethodology(Keyboard keys, int limit) {
+        super(keys);
+        this.limit = limit;
+    }
+
+    @Override
+    public void typeLine(String line) {
+        this.start();
+
+        paste(line);
+
+        keys.releaseModifiers();
+        this.end();
+    }
+
+    @Override
+    int typeText(KeyProgram program, int pc) {
+        final int[] code = program.code();
+        final String text = program.text()[KeyProgram.operand(code[pc])];
+
+        // Find the end of the line, counting the key events that would type it
+        int end = pc + 1;
+        int events = 0;
+        for (int op; (op = KeyProgram.opcode(code[end])) != KeyProgram.OP_LINE; end++) {
+            if (op == KeyProgram.OP_PRESS || op == KeyProgram.OP_RELEASE)
+                events++;
+        }
+
+        // Excluding the ENTER that ends the line, it is typed either way
+        if (!new KeystrokeCostModel(keys.getTiming(), limit).isCheaperToPaste(text.length(), events - 2))
+            return pc;
+
+        // Stopped part way, neither the ENTER nor the end of the line may follow
+        if (!paste(text))
+            return -1;
+
+        // Continue with the ENTER press and release right before the end of the line
+        return end - 3;
+    }
+
+    /**
+     * Paste text in chunks no longer than the paste limit, stopping early if typing is stopped.
+     *
+     * @return false if typing was stopped before all of the text was pasted
+     */
+    private boolean paste(String text) {
+        for (int start = 0, len = text.length(); start < len; ) {
+            if (!checkpoint())
+                return false;
+
+            int end = Math.min(len, start + limit);
+            if (end < len && Character.isHighSurrogate(text.charAt(end - 1)))
+                end--;
+
+            keys.paste(text.substring(start, end));
+            start = end;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.mattc.autotyper.robot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pause and Resume statistics of a typing session, kept by {@link BaseMethodology}. <br />
+ * <br />
+ * <ul>
+ * <li><b>Pause Latency</b> - Time from the user pausing (or pressing alt) until typing actually halted</li>
+ * <li><b>Paused Time</b> - Time the typing thread spent parked</li>
+ * <li><b>Resume Latency</b> - Time from the user resuming (or releasing alt) until typing continued</li>
+ * </ul>
+ * Recorded by the typing thread, may be read from any thread.
+ *
+ * @author Glossawy
+ */
+public final class PauseMetrics {
+
+    private volatile int pauses;
+    private volatile long pauseLatency, maxPauseLatency;
+    private volatile long paused;
+    private volatile long resumeLatency, maxResumeLatency;
+
+    PauseMetrics() {
+    }
+
+    synchronized void record(long pauseLatency, long paused, long resumeLatency) {
+        // A pause that was requested before the typing thread last resumed is not a real latency
+        pauseLatency = Math.max(pauseLatency, 0);
+        resumeLatency = Math.max(resumeLatency, 0);
+
+        this.pauses++;
+        this.pauseLatency += pauseLatency;
+        this.maxPauseLatency = Math.max(this.maxPauseLatency, pauseLatency);
+        this.paused += paused;
+        this.resumeLatency += resumeLatency;
+        this.maxResumeLatency = Math.max(this.maxResumeLatency, resumeLatency);
+    }
+
+    synchronized void reset() {
+        pauses = 0;
+        pauseLatency = maxPauseLatency = 0;
+        paused = 0;
+        resumeLatency = maxResumeLatency = 0;
+    }
+
+    /**
+     * @return Number of times typing was paused
+     */
+    public int getPauses() {
+        return pauses;
+    }
+
+    public long getTimePaused(TimeUnit unit) {
+        return unit.convert(paused, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMeanPauseLatency(TimeUnit unit) {
+        return pauses == 0 ? 0 : unit.convert(pauseLatency / pauses, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxPauseLatency(TimeUnit unit) {
+        return unit.convert(maxPauseLatency, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMeanResumeLatency(TimeUnit unit) {
+        return pauses == 0 ? 0 : unit.convert(resumeLatency / pauses, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxResumeLatency(TimeUnit unit) {
+        return unit.convert(maxResumeLatency, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized String toString() {
+        final TimeUnit us = TimeUnit.MICROSECONDS;
+        return String.format("Paused %,d times for %,d ms total. Pause Latency: mean %,d us, max %,d us. Resume Latency: mean %,d us, max %,d us",
+                pauses, getTimePaused(TimeUnit.MILLISECONDS),
+                getMeanPauseLatency(us), getMaxPauseLatency(us),
+                getMeanResumeLatency(us), getMaxResumeLatency(us));
+    }
+}
@@ -0,0 +1,194 @@
+package com.mattc.autotyper.robot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A headless backend that records every key event with a {@link System#nanoTime()} timestamp instead
+ * of sending it anywhere, for measuring the typing pipeline or comparing methodologies without a display. <br />
+ * <br />
+ * Events are written to an off-heap direct buffer of {@value #RECORD_BYTES} byte records, so recording
+ * adds no garbage and little cost to the pipeline being measured. Each record is the timestamp, the
+ * event type and the key code (or the length of the clipboard text). Once the buffer is full further
+ * events are only counted. A backend with a capacity of 0 records nothing and only counts, this is the
+ * "null" backend.
+ *
+ * @author Glossawy
+ */
+public final class RecordingBackend implements KeyboardBackend {
+
+    public static final int PRESS = 1;
+    public static final int RELEASE = 2;
+    public static final int SYNC = 3;
+    public static final int CLIPBOARD = 4;
+
+    /**
+     * Size of a single record: 8 byte timestamp, 4 byte type, 4 byte key code
+     */
+    public static final int RECORD_BYTES = 16;
+
+    /**
+     * Events recorded by default, 1M events take 16 MB
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final ByteBuffer events;
+    private final List<String> clipboard = new ArrayList<>();
+    private long count;
+    private long dropped;
+
+    /**
+     * @param capacity Maximum number of events to record
+     */
+    public RecordingBackend(int capacity) {
+        this.events = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void keyPress(int code) {
+        record(PRESS, code);
+    }
+
+    @Override
+    public void keyRelease(int code) {
+        record(RELEASE, code);
+    }
+
+    @Override
+    public void waitForIdle() {
+        record(SYNC, 0);
+    }
+
+    @Override
+    public void setClipboard(String text) {
+        if (events.capacity() > 0)
+            clipboard.add(text);
+
+        record(CLIPBOARD, text.length());
+    }
+
+    private void record(int type, int code) {
+        count++;
+
+        if (events.remaining() < RECORD_BYTES) {
+            dropped++;
+            return;
+        }
+
+        events.putLong(System.nanoTime()).putInt(type).putInt(code);
+    }
+
+    /**
+     * @return Number of events sent to this backend, recorded or not
+     */
+    public long eventCount() {
+        return count;
+    }
+
+    /**
+     * @return Number of events that were not recorded because the buffer was full
+     */
+    public long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return Number of events recorded
+     */
+    public int recordedCount() {
+        return events.position() / RECORD_BYTES;
+    }
+
+    /**
+     * @return Read only view of the recorded events, {@value #RECORD_BYTES} bytes per event in native byte order
+     */
+    public ByteBuffer recorded() {
+        final ByteBuffer view = events.duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return Every text put on the clipboard, in order
+     */
+    public List<String> clipboardHistory() {
+        return Collections.unmodifiableList(clipboard);
+    }
+
+    /**
+     * @return Nanoseconds between the first and last recorded event
+     */
+    public long elapsedNanos() {
+        final int n = recordedCount();
+        if (n < 2)
+            return 0;
+
+        return events.getLong((n - 1) * RECORD_BYTES) - events.getLong(0);
+    }
+
+    /**
+     * Discard every recorded event.
+     */
+    public void reset() {
+        events.clear();
+        clipboard.clear();
+        count = dropped = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecordingBackend[%,d events, %,d recorded, %,d dropped, %.3f ms]", count, recordedCount(), dropped, elapsedNanos() / 1e6);
+    }
+
+    public static final class Provider implements KeyboardBackendProvider {
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public int priority() {
+            return -1;
+        }
+
+        @Override
+        public KeyboardBackend create() {
+            return new RecordingBackend(DEFAULT_CAPACITY);
+        }
+    }
+
+    /**
+     * Provides a backend that only counts events
+     */
+    public static final class NullProvider implements KeyboardBackendProvider {
+
+        @Override
+        public String name() {
+            return "null";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public int priority() {
+            return -2;
+        }
+
+        @Override
+        public KeyboardBackend create() {
+            return new RecordingBackend(0);
+        }
+    }
+}
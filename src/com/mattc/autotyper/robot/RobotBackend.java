@@ -0,0 +1,74 @@
+package com.mattc.autotyper.robot;
+
+import java.awt.AWTException;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * Sends key events to the operating system through a {@link Robot}. Requires a display.
+ *
+ * @author Glossawy
+ */
+public final class RobotBackend implements KeyboardBackend {
+
+    private final Robot robo;
+
+    public RobotBackend() {
+        try {
+            this.robo = new Robot();
+            // Pacing and synchronization are up to the Keyboard
+            this.robo.setAutoDelay(0);
+            this.robo.setAutoWaitForIdle(false);
+        } catch (final AWTException e) {
+            throw new IllegalStateException("Could not create java.awt.Robot!", e);
+        }
+    }
+
+    @Override
+    public void keyPress(int code) {
+        robo.keyPress(code);
+    }
+
+    @Override
+    public void keyRelease(int code) {
+        robo.keyRelease(code);
+    }
+
+    @Override
+    public void waitForIdle() {
+        // Robot.waitForIdle may not be called from the Event Dispatch Thread
+        if (!EventQueue.isDispatchThread())
+            robo.waitForIdle();
+    }
+
+    @Override
+    public void setClipboard(String text) {
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+    }
+
+    public static final class Provider implements KeyboardBackendProvider {
+
+        @Override
+        public String name() {
+            return "robot";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return !GraphicsEnvironment.isHeadless();
+        }
+
+        @Override
+        public int priority() {
+            return 100;
+        }
+
+        @Override
+        public KeyboardBackend create() {
+            return new RobotBackend();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.mattc.autotyper.robot;
+
+import static java.awt.event.KeyEvent.VK_ALT;
+import static java.awt.event.KeyEvent.VK_ALT_GRAPH;
+import static java.awt.event.KeyEvent.VK_CONTROL;
+import static java.awt.event.KeyEvent.VK_SHIFT;
+
+import com.mattc.autotyper.util.OS;
+
+/**
+ * Expands the packed keystrokes of a {@link KeyLayout} into individual key presses and releases,
+ * including any modifiers and dead keys they require. Implementations decide where the key events
+ * actually go. <br />
+ * <br />
+ * SHIFT is held down across consecutive shifted keystrokes and only released once an unshifted key
+ * follows, so a run of capitals costs two events per character instead of four. Since SHIFT may
+ * still be down after a write, {@link #releaseModifiers()} must be called before handing the
+ * keyboard back to the user.
+ *
+ * @author Glossawy
+ */
+abstract class StrokeWriter {
+
+    /**
+     * Windows has no usable ALT GRAPH virtual key for synthesized input, it is emulated with CTRL + ALT.
+     */
+    private static final boolean ALT_GRAPH_IS_CTRL_ALT = OS.get() == OS.WINDOWS;
+
+    private boolean shiftDown = false;
+
+    abstract void emitPress(int code);
+
+    abstract void emitRelease(int code);
+
+    /**
+     * Press a key, keeping track of SHIFT if it is the key being pressed.
+     */
+    final void press(int code) {
+        if (code == VK_SHIFT)
+            shiftDown = true;
+
+        emitPress(code);
+    }
+
+    /**
+     * Release a key, keeping track of SHIFT if it is the key being released.
+     */
+    final void release(int code) {
+        if (code == VK_SHIFT)
+            shiftDown = false;
+
+        emitRelease(code);
+    }
+
+    /**
+     * Write a character's packed keystrokes as obtained from {@link KeyLayout#lookup(char)}.
+     *
+     * @param packed Packed Keystrokes, must not be {@link KeyLayout#UNMAPPED}
+     */
+    final void write(int packed) {
+        final int dead = KeyLayout.deadStroke(packed);
+        if (dead != KeyLayout.UNMAPPED)
+            stroke(dead);
+
+        stroke(KeyLayout.baseStroke(packed));
+    }
+
+    /**
+     * Strike a single key with the modifiers the stroke requires. SHIFT is left in whatever state
+     * the stroke needed.
+     */
+    final void stroke(int stroke) {
+        final int key = KeyLayout.keyCode(stroke);
+        final boolean altGraph = KeyLayout.isAltGraph(stroke);
+
+        setShift(KeyLayout.isShifted(stroke));
+        if (altGraph) pressAltGraph();
+
+        press(key);
+        release(key);
+
+        if (altGraph) releaseAltGraph();
+    }
+
+    /**
+     * Release any modifier that is being held across keystrokes.
+     *
+     * @return The modifiers that were released as {@link KeyLayout#SHIFT} bits, for use with {@link #restoreModifiers(int)}
+     */
+    final int releaseModifiers() {
+        final int held = shiftDown ? KeyLayout.SHIFT : 0;
+        setShift(false);
+        return held;
+    }
+
+    /**
+     * Press the modifiers previously released by {@link #releaseModifiers()} again.
+     */
+    final void restoreModifiers(int modifiers) {
+        setShift(KeyLayout.isShifted(modifiers));
+    }
+
+    private void setShift(boolean down) {
+        if (down == shiftDown)
+            return;
+
+        if (down)
+            press(VK_SHIFT);
+        else
+            release(VK_SHIFT);
+    }
+
+    private void pressAltGraph() {
+        if (ALT_GRAPH_IS_CTRL_ALT) {
+            press(VK_CONTROL);
+            press(VK_ALT);
+        } else {
+            press(VK_ALT_GRAPH);
+        }
+    }
+
+    private void releaseAltGraph() {
+        if (ALT_GRAPH_IS_CTRL_ALT) {
+            release(VK_ALT);
+            release(VK_CONTROL);
+        } else {
+            release(VK_ALT_GRAPH);
+        }
+    }
+}
@@ -1,16 +1,16 @@
 package com.mattc.autotyper.robot;
 
-import static java.awt.event.KeyEvent.*;
-
 import com.mattc.autotyper.Autotyper;
 import com.mattc.autotyper.Parameters;
 import com.mattc.autotyper.meta.FXCompatible;
 import com.mattc.autotyper.meta.SwingCompatible;
 import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.OS;
 import org.jnativehook.keyboard.NativeKeyListener;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -18,8 +18,8 @@ import java.io.IOException;
 /**
  * Mimics the Keyboard to a large extent. <br />
  * <br />
- * Makes extensive use of {@link Robot}, JNativeHooks and switching between
- * KeyboardMode's to mimic user input after being given a character, String or File.
+ * Makes extensive use of a {@link KeyboardBackend} (by default a {@link Robot}), JNativeHooks and switching
+ * between KeyboardMode's to mimic user input after being given a character, String or File.
  * To make use of JNativeHooks, Keyboard does implement {@link NativeKeyListener} but
  * must be manually registered. <br />
  * <br />
@@ -34,331 +34,86 @@ import java.io.IOException;
 @SwingCompatible
 class SwingKeyboard extends Keyboard {
 
-    private final Robot robo;
+    /**
+     * Minecraft, and thus ComputerCraft, pastes with CMD + V on Mac OSX
+     */
+    private static final int PASTE_MODIFIER = OS.get() == OS.MAC_OSX ? KeyEvent.VK_META : KeyEvent.VK_CONTROL;
+
+    private final KeyboardBackend backend;
+    private final boolean listening;
+    private final KeyPacer pacer = new KeyPacer();
+    private final StrokeWriter writer = new StrokeWriter() {
+        @Override
+        void emitPress(int code) {
+            pacer.await();
+            backend.keyPress(code);
+            pacer.schedule(timing.pressHoldNanos());
+
+            if (sync.onEvent(false))
+                sync();
+        }
+
+        @Override
+        void emitRelease(int code) {
+            final boolean lineEnd = code == KeyEvent.VK_ENTER;
+
+            pacer.await();
+            backend.keyRelease(code);
+            pacer.schedule(lineEnd ? timing.postNewlineNanos() : timing.interKeyNanos());
+
+            if (sync.onEvent(lineEnd))
+                sync();
+        }
+    };
+
     private Methodology method;
+    private KeyLayout layout;
+    private volatile KeyTiming timing;
+    private volatile SyncPolicy syncPolicy = SyncPolicy.ADAPTIVE;
+    private volatile SyncPolicy.Tracker sync = syncPolicy.tracker();
+    private volatile TypingJournal journal;
 
     /**
-     * Create an instance of Keyboard with the given delay between Key Presses.
+     * Create an instance of Keyboard with the given timing between Key Events. Key Events are paced
+     * by a {@link KeyPacer} rather than the Robot's own auto delay, which sleeps after every single
+     * event and only to the millisecond. Likewise the Robot does not wait for idle after every event,
+     * when to wait is decided by the {@link SyncPolicy}.
      *
-     * @param actionDelay
+     * @param timing  Intervals between Key Events
+     * @param layout  Keyboard Layout used to map characters to keystrokes
+     * @param backend Where Key Events are sent
      */
-    SwingKeyboard(int actionDelay) {
-        try {
-            actionDelay = Math.max(actionDelay, Parameters.MIN_DELAY);
-            this.robo = new Robot();
-            this.robo.setAutoDelay(actionDelay);
-            this.robo.setAutoWaitForIdle(true);
-        } catch (final AWTException e) {
-            throw new IllegalStateException("Could not create java.awt.Robot!", e);
-        }
+    SwingKeyboard(KeyTiming timing, KeyLayout layout, KeyboardBackend backend) {
+        this(timing, layout, backend, true);
+    }
+
+    /**
+     * Create an instance of Keyboard that may not listen for global key events, for typing without a
+     * display where JNativeHook cannot be loaded. Hotkeys have no effect unless listening.
+     *
+     * @param listening Whether methodologies are registered as global key listeners
+     */
+    SwingKeyboard(KeyTiming timing, KeyLayout layout, KeyboardBackend backend, boolean listening) {
+        this.layout = layout;
+        this.timing = timing;
+        this.backend = backend;
+        this.listening = listening;
     }
 
     /**
-     * Type a Single Character
+     * Type a Single Character using the current {@link KeyLayout}
      *
      * @param c
+     * @throws IllegalArgumentException If the current layout cannot type the character
      */
     @Override
     public void type(char c) {
-        // A bit verbose, but necessary.
-        switch (c) {
-            case 'a':
-                doType(VK_A);
-                break;
-            case 'b':
-                doType(VK_B);
-                break;
-            case 'c':
-                doType(VK_C);
-                break;
-            case 'd':
-                doType(VK_D);
-                break;
-            case 'e':
-                doType(VK_E);
-                break;
-            case 'f':
-                doType(VK_F);
-                break;
-            case 'g':
-                doType(VK_G);
-                break;
-            case 'h':
-                doType(VK_H);
-                break;
-            case 'i':
-                doType(VK_I);
-                break;
-            case 'j':
-                doType(VK_J);
-                break;
-            case 'k':
-                doType(VK_K);
-                break;
-            case 'l':
-                doType(VK_L);
-                break;
-            case 'm':
-                doType(VK_M);
-                break;
-            case 'n':
-                doType(VK_N);
-                break;
-            case 'o':
-                doType(VK_O);
-                break;
-            case 'p':
-                doType(VK_P);
-                break;
-            case 'q':
-                doType(VK_Q);
-                break;
-            case 'r':
-                doType(VK_R);
-                break;
-            case 's':
-                doType(VK_S);
-                break;
-            case 't':
-                doType(VK_T);
-                break;
-            case 'u':
-                doType(VK_U);
-                break;
-            case 'v':
-                doType(VK_V);
-                break;
-            case 'w':
-                doType(VK_W);
-                break;
-            case 'x':
-                doType(VK_X);
-                break;
-            case 'y':
-                doType(VK_Y);
-                break;
-            case 'z':
-                doType(VK_Z);
-                break;
-            case 'A':
-                doType(VK_SHIFT, VK_A);
-                break;
-            case 'B':
-                doType(VK_SHIFT, VK_B);
-                break;
-            case 'C':
-                doType(VK_SHIFT, VK_C);
-                break;
-            case 'D':
-                doType(VK_SHIFT, VK_D);
-                break;
-            case 'E':
-                doType(VK_SHIFT, VK_E);
-                break;
-            case 'F':
-                doType(VK_SHIFT, VK_F);
-                break;
-            case 'G':
-                doType(VK_SHIFT, VK_G);
-                break;
-            case 'H':
-                doType(VK_SHIFT, VK_H);
-                break;
-            case 'I':
-                doType(VK_SHIFT, VK_I);
-                break;
-            case 'J':
-                doType(VK_SHIFT, VK_J);
-                break;
-            case 'K':
-                doType(VK_SHIFT, VK_K);
-                break;
-            case 'L':
-                doType(VK_SHIFT, VK_L);
-                break;
-            case 'M':
-                doType(VK_SHIFT, VK_M);
-                break;
-            case 'N':
-                doType(VK_SHIFT, VK_N);
-                break;
-            case 'O':
-                doType(VK_SHIFT, VK_O);
-                break;
-            case 'P':
-                doType(VK_SHIFT, VK_P);
-                break;
-            case 'Q':
-                doType(VK_SHIFT, VK_Q);
-                break;
-            case 'R':
-                doType(VK_SHIFT, VK_R);
-                break;
-            case 'S':
-                doType(VK_SHIFT, VK_S);
-                break;
-            case 'T':
-                doType(VK_SHIFT, VK_T);
-                break;
-            case 'U':
-                doType(VK_SHIFT, VK_U);
-                break;
-            case 'V':
-                doType(VK_SHIFT, VK_V);
-                break;
-            case 'W':
-                doType(VK_SHIFT, VK_W);
-                break;
-            case 'X':
-                doType(VK_SHIFT, VK_X);
-                break;
-            case 'Y':
-                doType(VK_SHIFT, VK_Y);
-                break;
-            case 'Z':
-                doType(VK_SHIFT, VK_Z);
-                break;
-            case '`':
-                doType(VK_BACK_QUOTE);
-                break;
-            case '0':
-                doType(VK_0);
-                break;
-            case '1':
-                doType(VK_1);
-                break;
-            case '2':
-                doType(VK_2);
-                break;
-            case '3':
-                doType(VK_3);
-                break;
-            case '4':
-                doType(VK_4);
-                break;
-            case '5':
-                doType(VK_5);
-                break;
-            case '6':
-                doType(VK_6);
-                break;
-            case '7':
-                doType(VK_7);
-                break;
-            case '8':
-                doType(VK_8);
-                break;
-            case '9':
-                doType(VK_9);
-                break;
-            case '-':
-                doType(VK_MINUS);
-                break;
-            case '=':
-                doType(VK_EQUALS);
-                break;
-            case '~':
-                doType(VK_SHIFT, VK_BACK_QUOTE);
-                break;
-            case '!':
-                doType(VK_SHIFT, VK_1);
-                break;
-            case '@':
-                doType(VK_SHIFT, VK_1);
-                break;
-            case '#':
-                doType(VK_SHIFT, VK_3);
-                break;
-            case '$':
-                doType(VK_SHIFT, VK_4);
-                break;
-            case '%':
-                doType(VK_SHIFT, VK_5);
-                break;
-            case '^':
-                doType(VK_SHIFT, VK_6);
-                break;
-            case '&':
-                doType(VK_SHIFT, VK_7);
-                break;
-            case '*':
-                doType(VK_SHIFT, VK_8);
-                break;
-            case '(':
-                doType(VK_SHIFT, VK_9);
-                break;
-            case ')':
-                doType(VK_SHIFT, VK_0);
-                break;
-            case '_':
-                doType(VK_SHIFT, VK_MINUS);
-                break;
-            case '+':
-                doType(VK_SHIFT, VK_EQUALS);
-                break;
-            case '\t':
-                doType(VK_TAB);
-                break;
-            case '\n':
-                doType(VK_ENTER);
-                break;
-            case '\r':
-                doType(VK_ENTER);
-                break;
-            case '[':
-                doType(VK_OPEN_BRACKET);
-                break;
-            case ']':
-                doType(VK_CLOSE_BRACKET);
-                break;
-            case '\\':
-                doType(VK_BACK_SLASH);
-                break;
-            case '{':
-                doType(VK_SHIFT, VK_OPEN_BRACKET);
-                break;
-            case '}':
-                doType(VK_SHIFT, VK_CLOSE_BRACKET);
-                break;
-            case '|':
-                doType(VK_SHIFT, VK_BACK_SLASH);
-                break;
-            case ';':
-                doType(VK_SEMICOLON);
-                break;
-            case ':':
-                doType(VK_SHIFT, VK_SEMICOLON);
-                break;
-            case '\'':
-                doType(VK_QUOTE);
-                break;
-            case '"':
-                doType(VK_SHIFT, VK_QUOTE);
-                break;
-            case ',':
-                doType(VK_COMMA);
-                break;
-            case '<':
-                doType(VK_SHIFT, VK_COMMA);
-                break;
-            case '.':
-                doType(VK_PERIOD);
-                break;
-            case '>':
-                doType(VK_SHIFT, VK_PERIOD);
-                break;
-            case '/':
-                doType(VK_SLASH);
-                break;
-            case '?':
-                doType(VK_SHIFT, VK_SLASH);
-                break;
-            case ' ':
-                doType(VK_SPACE);
-                break;
-            default:
-                throw new IllegalArgumentException("Cannot type character " + c);
-        }
+        final int packed = layout.lookup(c);
+
+        if (packed == KeyLayout.UNMAPPED)
+            throw new IllegalArgumentException("Cannot type character " + c + " using the " + layout.name() + " keyboard layout");
+
+        writer.write(packed);
     }
 
     /**
@@ -383,24 +138,116 @@ class SwingKeyboard extends Keyboard {
         method.typeFile(f);
     }
 
+    @Override
+    public KeyProgram compile(File f) throws IOException {
+        return KeyProgramCache.compile(f.toPath(), layout);
+    }
+
+    /**
+     * Type a program compiled ahead of time, key event by key event.
+     *
+     * @param program
+     */
+    @Override
+    public void typeProgram(KeyProgram program) {
+        method.typeProgram(program);
+    }
+
     /**
-     * Alter the delay between key presses in milliseconds
+     * Type programs as they become available, key event by key event.
+     *
+     * @param source
+     * @throws IOException
+     */
+    @Override
+    public void typeStream(KeyProgramSource source) throws IOException {
+        method.typeStream(source);
+    }
+
+    /**
+     * Alter the time it takes to type a single character in milliseconds
      *
      * @param delay
      */
     @Override
     public void setInputDelay(int delay) {
-        this.robo.setAutoDelay(Math.max(delay, Parameters.MIN_DELAY));
+        setTiming(KeyTiming.fromDelay(Math.max(delay, Parameters.MIN_DELAY)));
     }
 
     /**
-     * Get the delay between key presses in milliseconds
+     * Get the time it takes to type a single character in milliseconds
      *
      * @return
      */
     @Override
     public int getInputDelay() {
-        return this.robo.getAutoDelay();
+        return this.timing.toDelay();
+    }
+
+    @Override
+    public void setTiming(KeyTiming timing) {
+        this.timing = timing;
+    }
+
+    @Override
+    public KeyTiming getTiming() {
+        return this.timing;
+    }
+
+    @Override
+    public void setSyncPolicy(SyncPolicy policy) {
+        this.syncPolicy = policy;
+        this.sync = policy.tracker();
+    }
+
+    @Override
+    public SyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+
+    @Override
+    public void setJournal(TypingJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public TypingJournal getJournal() {
+        return this.journal;
+    }
+
+    @Override
+    void paste(String text) {
+        // Do not replace the previous paste before the target had time to read it
+        pacer.await();
+        backend.setClipboard(text);
+
+        writer.press(PASTE_MODIFIER);
+        writer.press(KeyEvent.VK_V);
+        writer.release(KeyEvent.VK_V);
+        writer.release(PASTE_MODIFIER);
+        pacer.schedule(timing.pasteSettleNanos());
+    }
+
+    @Override
+    void sync() {
+        final long start = System.nanoTime();
+        backend.waitForIdle();
+        sync.onSync(System.nanoTime() - start);
+    }
+
+    @Override
+    public void setHotkeys(Hotkeys hotkeys) {
+        this.method.setHotkeys(hotkeys);
+    }
+
+    @Override
+    public void setLayout(KeyLayout layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    public KeyLayout getLayout() {
+        return this.layout;
     }
 
     /**
@@ -424,30 +271,44 @@ class SwingKeyboard extends Keyboard {
     public void writeCrashImage() {
         try {
             final File crashFile = new File("logs", "cc-autotyper-crash.png");
-            final BufferedImage img = this.robo.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+            final BufferedImage img = new Robot().createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
             ImageIO.write(img, "PNG", crashFile);
-        } catch (final IOException e) {
+        } catch (final IOException | AWTException e) {
             Console.exception(e);
         }
     }
 
     @Override
     public void setMethod(Methodology method) {
-        if (this.method != null)
-            Autotyper.unregisterGlobalKeyListener(this.method);
+        if (this.method != null) {
+            if (listening)
+                Autotyper.unregisterGlobalKeyListener(this.method);
+            method.setHotkeys(this.method.getHotkeys());
+        }
 
         this.method = method;
-        Autotyper.registerGlobalKeyListener(this.method);
+        if (listening)
+            Autotyper.registerGlobalKeyListener(this.method);
     }
 
     @Override
     void press(int code) {
-        robo.keyPress(code);
+        writer.press(code);
     }
 
     @Override
     void release(int code) {
-        robo.keyRelease(code);
+        writer.release(code);
+    }
+
+    @Override
+    int releaseModifiers() {
+        return writer.releaseModifiers();
+    }
+
+    @Override
+    void restoreModifiers(int modifiers) {
+        writer.restoreModifiers(modifiers);
     }
 
     /**
@@ -472,15 +333,17 @@ class SwingKeyboard extends Keyboard {
     private void doType(int[] codes, int offset, int length) {
         if (length == 0) return;
 
-        this.robo.keyPress(codes[offset]);
+        press(codes[offset]);
         doType(codes, offset + 1, length - 1);
-        this.robo.keyRelease(codes[offset]);
+        release(codes[offset]);
     }
 
     @Override
     public void destroy() {
         this.method.destroy();
-        Autotyper.unregisterGlobalKeyListener(method);
+        if (listening)
+            Autotyper.unregisterGlobalKeyListener(method);
+        this.backend.close();
     }
 
 }
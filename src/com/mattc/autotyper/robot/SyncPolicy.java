@@ -0,0 +1,154 @@
+package com.mattc.autotyper.robot;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often a {@link Keyboard} waits for the AWT Event Queue to become idle after sending
+ * key events. <br />
+ * <br />
+ * Waiting after every single event, as {@link java.awt.Robot#setAutoWaitForIdle(boolean)} does,
+ * blocks typing on the event queue for every key. Synchronizing only at natural boundaries keeps
+ * events from piling up while letting typing run at full speed in between. Regardless of the policy,
+ * a Keyboard always synchronizes before typing is paused.
+ *
+ * <ul>
+ * <li><b>NEVER</b> - Never wait, except when pausing</li>
+ * <li><b>PER_LINE</b> - Wait after every ENTER</li>
+ * <li><b>EVERY_N</b> - Wait after every N key events</li>
+ * <li><b>ADAPTIVE</b> - Wait after every ENTER and every N key events, where N grows while waiting
+ * is cheap and shrinks as soon as the event queue falls behind</li>
+ * </ul>
+ *
+ * @author Glossawy
+ */
+public final class SyncPolicy {
+
+    public enum Kind {
+        NEVER, PER_LINE, EVERY_N, ADAPTIVE
+    }
+
+    public static final SyncPolicy NEVER = new SyncPolicy(Kind.NEVER, 0);
+    public static final SyncPolicy PER_LINE = new SyncPolicy(Kind.PER_LINE, 0);
+    public static final SyncPolicy ADAPTIVE = new SyncPolicy(Kind.ADAPTIVE, 0);
+
+    /**
+     * Bounds on the interval of an ADAPTIVE policy
+     */
+    private static final int MIN_ADAPTIVE = 1, MAX_ADAPTIVE = 256;
+
+    /**
+     * Waiting for longer than this means the event queue is not keeping up
+     */
+    private static final long SLOW_SYNC = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Kind kind;
+    private final int interval;
+
+    private SyncPolicy(Kind kind, int interval) {
+        this.kind = kind;
+        this.interval = interval;
+    }
+
+    /**
+     * @param events Number of key events between waits
+     * @return A policy that waits every so many key events
+     */
+    public static SyncPolicy every(int events) {
+        if (events < 1)
+            throw new IllegalArgumentException("Interval must be at least 1 key event, got " + events);
+
+        return new SyncPolicy(Kind.EVERY_N, events);
+    }
+
+    /**
+     * Parse a policy as given on the command line, one of "never", "line", "adaptive" or a number
+     * of key events.
+     *
+     * @throws IllegalArgumentException If the value is not a valid policy
+     */
+    public static SyncPolicy parse(String value) {
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "never":
+                return NEVER;
+            case "line":
+                return PER_LINE;
+            case "adaptive":
+                return ADAPTIVE;
+            default:
+                try {
+                    return every(Integer.parseInt(value.trim()));
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected never, line, adaptive or a number of key events but got '" + value + "'");
+                }
+        }
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return Key events between waits of an EVERY_N policy, 0 otherwise
+     */
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * @return New state for a Keyboard using this policy
+     */
+    Tracker tracker() {
+        return new Tracker();
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.EVERY_N ? "SyncPolicy[EVERY " + interval + "]" : "SyncPolicy[" + kind + "]";
+    }
+
+    /**
+     * Per Keyboard state of a policy, counts events since the last wait and adapts the interval of an
+     * ADAPTIVE policy.
+     */
+    final class Tracker {
+
+        private int events = 0;
+        private int adaptive = MIN_ADAPTIVE;
+
+        /**
+         * Count a key event.
+         *
+         * @param lineEnd Whether the event ended a line
+         * @return true if the keyboard should wait for idle now
+         */
+        boolean onEvent(boolean lineEnd) {
+            events++;
+
+            switch (kind) {
+                case PER_LINE:
+                    return lineEnd;
+                case EVERY_N:
+                    return events >= interval;
+                case ADAPTIVE:
+                    return lineEnd || events >= adaptive;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Record a completed wait and how long it took.
+         */
+        void onSync(long nanos) {
+            events = 0;
+
+            if (kind == Kind.ADAPTIVE) {
+                if (nanos > SLOW_SYNC)
+                    adaptive = Math.max(MIN_ADAPTIVE, adaptive >> 1);
+                else
+                    adaptive = Math.min(MAX_ADAPTIVE, adaptive << 1);
+            }
+        }
+    }
+}
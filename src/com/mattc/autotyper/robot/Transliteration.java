@@ -0,0 +1,126 @@
+package com.mattc.autotyper.robot;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Replacements for characters that a {@link KeyLayout} may not be able to type, i.e. the typographic
+ * quotes and dashes word processors and web pages like to substitute for plain ASCII. <br />
+ * <br />
+ * A table maps single characters to replacement text, which may be empty to drop a character. Tables
+ * are read from properties files, where characters outside of ASCII can be written as
+ * <code>&#92;uXXXX</code> escapes, i.e. <code>&#92;u201C = "</code>. A replacement must not contain a line
+ * break, nor should it introduce a Lua comment (<code>--</code>). The {@link #DEFAULT} table covers
+ * common punctuation and invisible spaces.
+ *
+ * @author Glossawy
+ */
+public final class Transliteration {
+
+    /**
+     * Replaces nothing
+     */
+    public static final Transliteration NONE = new Transliteration("none", ImmutableMap.of());
+
+    /**
+     * Typographic quotes, dashes, ellipses and spaces to their ASCII equivalents
+     */
+    public static final Transliteration DEFAULT = new Transliteration("default", ImmutableMap.<Character, String>builder()
+            // Single quotes and primes
+            .put('\u2018', "'").put('\u2019', "'").put('\u201A', "'").put('\u201B', "'").put('\u2032', "'").put('\u00B4', "'")
+            // Double quotes and primes
+            .put('\u201C', "\"").put('\u201D', "\"").put('\u201E', "\"").put('\u201F', "\"").put('\u2033', "\"").put('\u00AB', "\"").put('\u00BB', "\"")
+            // Hyphens, dashes and the minus sign
+            .put('\u2010', "-").put('\u2011', "-").put('\u2012', "-").put('\u2013', "-").put('\u2014', "-").put('\u2212', "-")
+            // Spaces that do not break or have a width of their own
+            .put('\u00A0', " ").put('\u2007', " ").put('\u2009', " ").put('\u200A', " ").put('\u202F', " ").put('\u3000', " ")
+            // Invisible characters
+            .put('\u200B', "").put('\u200C', "").put('\u200D', "").put('\u2060', "").put('\uFEFF', "").put('\u00AD', "")
+            .put('\u2026', "...")
+            .build());
+
+    private final String name;
+    private final Map<Character, String> table;
+
+    private Transliteration(String name, Map<Character, String> table) {
+        this.name = name;
+        this.table = table;
+    }
+
+    /**
+     * Get a table by name, "none", "default" or the path to a properties file.
+     *
+     * @param name Name or path of the table
+     * @return The Table
+     * @throws IOException              If the file could not be read
+     * @throws IllegalArgumentException If the file is not a valid table
+     */
+    public static Transliteration forName(String name) throws IOException {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "none":
+                return NONE;
+            case "default":
+                return DEFAULT;
+            default:
+                return load(Paths.get(name));
+        }
+    }
+
+    /**
+     * Read a table from a properties file of <code>character = replacement</code> entries.
+     *
+     * @param path Properties file, in UTF-8
+     * @return The Table
+     * @throws IOException              If the file could not be read
+     * @throws IllegalArgumentException If a key is not a single character or a replacement contains a line break
+     */
+    public static Transliteration load(Path path) throws IOException {
+        final Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+
+        final ImmutableMap.Builder<Character, String> table = ImmutableMap.builder();
+        for (final String key : props.stringPropertyNames()) {
+            final String value = props.getProperty(key);
+
+            if (key.length() != 1)
+                throw new IllegalArgumentException(String.format("%s: '%s' is not a single character", path.getFileName(), key));
+            if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+                throw new IllegalArgumentException(String.format("%s: The replacement of '%s' contains a line break", path.getFileName(), key));
+
+            table.put(key.charAt(0), value);
+        }
+
+        return new Transliteration(path.getFileName().toString(), table.build());
+    }
+
+    /**
+     * @return Replacement of the character or null if it is not replaced
+     */
+    public String get(char c) {
+        return table.get(c);
+    }
+
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Transliteration[%s, %,d characters]", name, table.size());
+    }
+}
@@ -0,0 +1,441 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.Downloader;
+import com.mattc.autotyper.util.Console;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how far typing has progressed in the '.cctyper-cache' directory so that a session that was
+ * stopped, or that died with the JVM, can be resumed where it left off instead of typing everything
+ * again. <br />
+ * <br />
+ * The journal is committed at the end of every typed line: it holds the number of lines and characters
+ * typed, the source line number of the last line and a hash of the text of every line typed so far. The
+ * file is memory mapped and a commit only writes those few fields, so journaling costs next to nothing
+ * per line and survives the JVM being killed. <br />
+ * <br />
+ * To resume, the {@link #read() last checkpoint} is read back and the same source is typed again through
+ * {@link #resume(Checkpoint)}. The lines typed before are skipped, after checking that their text hashes
+ * to the recorded value, so a source that changed in the meantime is never resumed at the wrong place.
+ * Only whole lines are recorded, a line that was interrupted part way is typed again from its start.
+ *
+ * @author Glossawy
+ */
+public final class TypingJournal implements Closeable {
+
+    public static final Path JOURNAL_FILE = Downloader.CACHE_DIR.resolve("session.journal");
+
+    private static final int MAGIC = 0x43434A4E; // 'CCJN'
+    private static final int SIZE = 4096;
+
+    // Field offsets, the source URI is stored last as its UTF-8 length and bytes
+    private static final int VERSION_AT = 4;
+    private static final int STATE_AT = 8;
+    private static final int LINES_AT = 12;
+    private static final int LINE_NUMBER_AT = 16;
+    private static final int CHARACTERS_AT = 20;
+    private static final int HASH_AT = 28;
+    private static final int SOURCE_AT = 36;
+
+    // State bits
+    private static final int FINISHED = 1;
+    private static final int NOT_RESUMABLE = 2;
+
+    // 64 bit FNV-1a
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private final MappedByteBuffer buf;
+    private final URI source;
+    private final boolean resumable;
+    private boolean finished;
+
+    private int lines, lineNumber;
+    private long characters, hash = HASH_OFFSET;
+
+    // Lines still to be skipped when resuming and the hash they must add up to
+    private int pending;
+    private final long expected;
+
+    private TypingJournal(MappedByteBuffer buf, URI source, boolean resumable, Checkpoint resumed) {
+        this.buf = buf;
+        this.source = source;
+        this.resumable = resumable;
+        this.pending = resumed == null ? 0 : resumed.lines;
+        this.expected = resumed == null ? HASH_OFFSET : resumed.hash;
+    }
+
+    /**
+     * Start a new journal for a source or continue the journal of a checkpoint. Unlike resuming, a new
+     * session does not depend on being journaled so a journal that cannot be started is only logged.
+     *
+     * @param source Location of the source, a file or a URL
+     * @param resume The checkpoint to resume from or null to start from the beginning
+     * @return The journal, null if a new journal could not be started
+     * @throws IOException If the journal of the checkpoint could not be continued
+     */
+    public static TypingJournal open(URL source, Checkpoint resume) throws IOException {
+        if (resume != null)
+            return resume(resume);
+
+        try {
+            return begin(source.toURI());
+        } catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+            Console.warn("Could not journal typing, it will not be resumable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Start a new journal for a source, replacing the previous one.
+     *
+     * @param source Location of the source, a file or a URL
+     * @return The journal, to be set on the {@link Keyboard#setJournal(TypingJournal) Keyboard}
+     * @throws IOException If the journal could not be written
+     */
+    public static TypingJournal begin(URI source) throws IOException {
+        return begin(source, true);
+    }
+
+    /**
+     * Start a new journal for a source, replacing the previous one.
+     *
+     * @param source    Location of the source, a file or a URL
+     * @param resumable false if typing the source again would not continue the session, i.e. when
+     *                  typing a patch of a source rather than the source itself. Only whether the
+     *                  session {@link #isFinished() finished} is tracked then.
+     * @return The journal, to be set on the {@link Keyboard#setJournal(TypingJournal) Keyboard}
+     * @throws IOException If the journal could not be written
+     */
+    public static TypingJournal begin(URI source, boolean resumable) throws IOException {
+        final TypingJournal journal = new TypingJournal(map(), source, resumable, null);
+        journal.writeHeader();
+        return journal;
+    }
+
+    /**
+     * Continue the journal of a checkpoint. The source of the checkpoint must be typed again through
+     * {@link #skip(KeyProgram)} or a {@link Keyboard#typeStream(KeyProgramSource) stream}, which skip
+     * the lines typed before.
+     *
+     * @param checkpoint The checkpoint to resume from, see {@link #read()}
+     * @return The journal, to be set on the {@link Keyboard#setJournal(TypingJournal) Keyboard}
+     * @throws IOException If the journal could not be written
+     */
+    public static TypingJournal resume(Checkpoint checkpoint) throws IOException {
+        // The checkpoint is kept as it is until the lines typed before were skipped
+        final TypingJournal journal = new TypingJournal(map(), checkpoint.source, true, checkpoint);
+        Console.info(String.format("Resuming %s after line %,d, skipping %,d lines and %,d characters", checkpoint.source, checkpoint.lineNumber, checkpoint.lines, checkpoint.characters));
+        return journal;
+    }
+
+    /**
+     * Read the last recorded checkpoint.
+     *
+     * @return The checkpoint or null if nothing was journaled yet
+     * @throws IOException If the journal is unreadable
+     */
+    public static Checkpoint read() throws IOException {
+        if (!Files.isRegularFile(JOURNAL_FILE))
+            return null;
+
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(JOURNAL_FILE));
+
+        try {
+            if (buf.getInt(0) != MAGIC || buf.getInt(VERSION_AT) != KeystrokeCompiler.VERSION)
+                return null;
+
+            final byte[] source = new byte[buf.getInt(SOURCE_AT)];
+            buf.position(SOURCE_AT + 4);
+            buf.get(source);
+
+            final int state = buf.getInt(STATE_AT);
+            return new Checkpoint(new URI(new String(source, StandardCharsets.UTF_8)), (state & FINISHED) != 0, (state & NOT_RESUMABLE) == 0,
+                    buf.getInt(LINES_AT), buf.getInt(LINE_NUMBER_AT), buf.getLong(CHARACTERS_AT), buf.getLong(HASH_AT));
+        } catch (final IndexOutOfBoundsException | BufferUnderflowException | NegativeArraySizeException | URISyntaxException e) {
+            throw new IOException("Journal is corrupt", e);
+        }
+    }
+
+    private static MappedByteBuffer map() throws IOException {
+        Files.createDirectories(JOURNAL_FILE.getParent());
+
+        try (FileChannel channel = FileChannel.open(JOURNAL_FILE, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping remains valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        }
+    }
+
+    private void writeHeader() {
+        final byte[] name = source.toString().getBytes(StandardCharsets.UTF_8);
+        if (SOURCE_AT + 4 + name.length > SIZE)
+            throw new IllegalArgumentException("Source location too long to journal: " + source);
+
+        // Invalidate while rewriting so a torn header is never read back
+        buf.putInt(0, 0);
+        buf.putInt(VERSION_AT, KeystrokeCompiler.VERSION);
+        buf.putInt(SOURCE_AT, name.length);
+        buf.position(SOURCE_AT + 4);
+        buf.put(name);
+        commit();
+        buf.putInt(0, MAGIC);
+    }
+
+    private void commit() {
+        buf.putInt(STATE_AT, (finished ? FINISHED : 0) | (resumable ? 0 : NOT_RESUMABLE));
+        buf.putInt(LINES_AT, lines);
+        buf.putInt(LINE_NUMBER_AT, lineNumber);
+        buf.putLong(CHARACTERS_AT, characters);
+        buf.putLong(HASH_AT, hash);
+    }
+
+    /**
+     * Record that a line was typed completely, called at the end of every line.
+     *
+     * @param text       Text of the line as typed
+     * @param lineNumber Source line number of the line
+     */
+    void commit(String text, int lineNumber) {
+        this.hash = hash(hash, text);
+        this.lines++;
+        this.lineNumber = lineNumber;
+        this.characters += text.length();
+        commit();
+    }
+
+    /**
+     * Record that the whole source was typed, it can no longer be resumed.
+     */
+    void finish() {
+        this.finished = true;
+        commit();
+    }
+
+    /**
+     * @return true if the whole source was typed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Skip the lines of a program that were typed before the session was interrupted.
+     *
+     * @param program Program of the source being resumed
+     * @return The rest of the program
+     * @throws IOException If the program is not the source that was being typed
+     */
+    public KeyProgram skip(KeyProgram program) throws IOException {
+        if (pending == 0)
+            return program;
+
+        final KeyProgram rest = drop(program);
+        if (pending > 0)
+            throw new IOException(String.format("Cannot resume %s, it has fewer lines than were already typed", source));
+
+        verify();
+        return rest == null ? new KeyProgram(new int[0], new String[0], 0, 0) : rest;
+    }
+
+    /**
+     * Skip the programs of a source that were typed before the session was interrupted, done when
+     * the first program is requested.
+     *
+     * @param programs Programs of the source being resumed
+     * @return The rest of the programs
+     */
+    public KeyProgramSource skip(KeyProgramSource programs) {
+        if (pending == 0)
+            return programs;
+
+        return new KeyProgramSource() {
+            // What is left of the program the last skipped line was in
+            private KeyProgram rest;
+
+            @Override
+            public boolean await(long timeout, TimeUnit unit) throws IOException {
+                while (pending > 0) {
+                    if (!programs.await(timeout, unit))
+                        return false;
+                    skipNext();
+                }
+
+                return rest != null || programs.await(timeout, unit);
+            }
+
+            @Override
+            public KeyProgram next() throws IOException {
+                while (pending > 0)
+                    skipNext();
+
+                if (rest == null)
+                    return programs.next();
+
+                final KeyProgram program = rest;
+                rest = null;
+                return program;
+            }
+
+            private void skipNext() throws IOException {
+                final KeyProgram program = programs.next();
+                if (program == null)
+                    throw new IOException(String.format("Cannot resume %s, it has fewer lines than were already typed", source));
+
+                rest = drop(program);
+                if (pending == 0)
+                    verify();
+            }
+        };
+    }
+
+    /**
+     * Drop pending lines from the start of a program, hashing their text.
+     *
+     * @return What is left of the program, null if nothing
+     */
+    private KeyProgram drop(KeyProgram program) {
+        final int[] code = program.code();
+        final String[] text = program.text();
+        int pc = 0, dropped = 0;
+        long chars = 0;
+
+        for (; pc < code.length && pending > 0; pc++) {
+            final int instruction = code[pc];
+
+            switch (KeyProgram.opcode(instruction)) {
+                case KeyProgram.OP_TEXT:
+                    final String line = text[KeyProgram.operand(instruction)];
+                    hash = hash(hash, line);
+                    chars += line.length();
+                    break;
+                case KeyProgram.OP_LINE:
+                    lineNumber = KeyProgram.operand(instruction);
+                    dropped++;
+                    pending--;
+                    break;
+            }
+        }
+
+        lines += dropped;
+        characters += chars;
+
+        if (pc == code.length)
+            return null;
+
+        return pc == 0 ? program : new KeyProgram(Arrays.copyOfRange(code, pc, code.length), text, (int) (program.characterCount() - chars), program.lineCount() - dropped);
+    }
+
+    private void verify() throws IOException {
+        if (hash != expected)
+            throw new IOException(String.format("Cannot resume %s, the %,d lines already typed have changed", source, lines));
+
+        commit();
+        Console.info(String.format("Skipped %,d lines, resuming at line %,d", lines, lineNumber + 1));
+    }
+
+    private static long hash(long hash, String text) {
+        for (int i = 0, len = text.length(); i < len; i++) {
+            hash ^= text.charAt(i);
+            hash *= HASH_PRIME;
+        }
+
+        // Line boundaries are part of the hash
+        hash ^= '\n';
+        return hash * HASH_PRIME;
+    }
+
+    public URI getSource() {
+        return source;
+    }
+
+    /**
+     * Flushes the journal to disk.
+     */
+    @Override
+    public void close() {
+        buf.force();
+    }
+
+    /**
+     * The progress of a session as last recorded
+     */
+    public static final class Checkpoint {
+
+        private final URI source;
+        private final boolean finished, resumable;
+        private final int lines, lineNumber;
+        private final long characters, hash;
+
+        private Checkpoint(URI source, boolean finished, boolean resumable, int lines, int lineNumber, long characters, long hash) {
+            this.source = source;
+            this.finished = finished;
+            this.resumable = resumable;
+            this.lines = lines;
+            this.lineNumber = lineNumber;
+            this.characters = characters;
+            this.hash = hash;
+        }
+
+        /**
+         * @return Location of the source, a file or a URL
+         */
+        public URI getSource() {
+            return source;
+        }
+
+        /**
+         * @return true if the session typed its whole source
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return true if there is anything left to resume
+         */
+        public boolean isResumable() {
+            return resumable && !finished && lines > 0;
+        }
+
+        /**
+         * @return Number of lines typed
+         */
+        public int lineCount() {
+            return lines;
+        }
+
+        /**
+         * @return Source line number of the last line typed
+         */
+        public int lineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return Number of characters typed, excluding line endings
+         */
+        public long characterCount() {
+            return characters;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %,d lines, %,d characters typed%s", source, lines, characters, finished ? ", finished" : "");
+        }
+    }
+}
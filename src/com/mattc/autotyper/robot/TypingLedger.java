@@ -0,0 +1,117 @@
+package com.mattc.autotyper.robot;
+
+import com.google.common.hash.Hashing;
+import com.mattc.autotyper.Downloader;
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.FileAgeComparator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the lines last typed into each named target, i.e. a file open in <code>edit</code> on a
+ * particular computer, so that the next version can be typed as a patch planned by the
+ * {@link DeltaPlanner} rather than in full. <br />
+ * <br />
+ * Ledgers are kept in the '.cctyper-cache' directory, one per target, holding every typed line as
+ * UTF-8. A ledger is only written once a session has typed the whole program and is forgotten as soon
+ * as a session for its target does not finish, since what <code>edit</code> holds is unknown then.
+ *
+ * @author Glossawy
+ */
+public final class TypingLedger {
+
+    private static final Path LEDGER_DIR = Downloader.CACHE_DIR.resolve("ledger");
+    private static final String LEDGER_EXT = ".ledger";
+    private static final int MAX_TARGETS = 20;
+
+    private TypingLedger() {
+        // DO NOT INSTANTIATE
+    }
+
+    /**
+     * Plan typing a program into a target that may already hold an earlier version of it.
+     *
+     * @param target  Name of the target
+     * @param program Program of the new version
+     * @param layout  Layout of the Keyboard the program will be typed with
+     * @param model   Cost of the methodology and timing the program will be typed with
+     * @return The program to type with the cursor at the start of the file, or null if nothing was typed into the target before
+     */
+    public static KeyProgram delta(String target, KeyProgram program, KeyLayout layout, KeystrokeCostModel model) {
+        final List<String> typed = read(target);
+        if (typed == null) {
+            Console.info("Nothing was typed into " + target + " before, typing all of it");
+            return null;
+        }
+
+        Console.info(String.format("Patching %s, %,d lines typed before", target, typed.size()));
+        return new DeltaPlanner(layout, model).plan(typed, program);
+    }
+
+    /**
+     * @return Lines last typed into the target or null if there is no ledger for it
+     */
+    public static List<String> read(String target) {
+        final Path ledger = path(target);
+        if (!Files.isRegularFile(ledger))
+            return null;
+
+        try {
+            return Files.readAllLines(ledger, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            Console.warn("Ledger of " + target + " is unreadable, typing all of it... " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remember that the target now holds the given program, after typing all of it.
+     */
+    public static void record(String target, KeyProgram program) {
+        try {
+            Files.createDirectories(LEDGER_DIR);
+            Files.write(path(target), Arrays.asList(program.text()), StandardCharsets.UTF_8);
+            clean();
+        } catch (final IOException e) {
+            // The next version is typed in full
+            Console.warn("Could not record ledger of " + target + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forget what the target holds, the next version is typed in full.
+     */
+    public static void forget(String target) {
+        try {
+            if (Files.deleteIfExists(path(target)))
+                Console.info("Forgot what " + target + " holds, it must be typed in full into an empty file next time");
+        } catch (final IOException e) {
+            Console.warn("Could not forget ledger of " + target + ": " + e.getMessage());
+        }
+    }
+
+    private static Path path(String target) {
+        return LEDGER_DIR.resolve(Hashing.sha1().hashString(target, StandardCharsets.UTF_8) + LEDGER_EXT);
+    }
+
+    // Retains the MAX_TARGETS most recently typed targets
+    private static void clean() throws IOException {
+        final List<Path> list;
+        try (Stream<Path> paths = Files.list(LEDGER_DIR)) {
+            list = paths.filter((p) -> p.toString().endsWith(LEDGER_EXT))
+                    .sorted(FileAgeComparator.INSTANCE)
+                    .collect(Collectors.toList());
+        }
+
+        // Sorted newest first, remove from the end
+        while (list.size() > MAX_TARGETS)
+            Files.deleteIfExists(list.remove(list.size() - 1));
+    }
+}
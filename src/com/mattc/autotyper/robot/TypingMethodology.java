@@ -1,28 +1,36 @@
 package com.mattc.autotyper.robot;
 
 import com.mattc.autotyper.util.Console;
-import com.mattc.autotyper.util.IOUtils;
-import com.mattc.autotyper.util.OS;
+import com.mattc.autotyper.util.LineReader;
 
-import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Needs Documentation
+ * Types character by character, checking for pauses, stops and scheduled key events of the
+ * NativeKey Thread between every character. Text is compiled into a {@link KeyProgram} before
+ * typing so that the typing loop does nothing but replay key events, files are streamed and
+ * compiled a line at a time.
  *
  * @author Glossawy
  *         Created 4/3/2015 at 5:05 PM
  */
 class TypingMethodology extends BaseMethodology {
 
-    private final Keyboard keys;
-    private final Pattern wsPattern = Pattern.compile("\\s+");
+    /**
+     * Factor by which the FASTER and SLOWER hotkeys change the time taken per key
+     */
+    private static final double SPEED_STEP = 1.25;
+
+    /**
+     * Milliseconds to wait on a streamed source before checking for pauses and stops again
+     */
+    private static final long STREAM_POLL_MILLIS = 100;
+
+    final Keyboard keys;
 
     TypingMethodology(Keyboard keys) {
         this.keys = keys;
@@ -39,99 +47,197 @@ class TypingMethodology extends BaseMethodology {
         this.start();
 
         for (final char c : chars) {
-            while (this.isPaused() || this.isAltDown()) {
-                IOUtils.sleep(200);
-            }
-
-            while (!this.isScheduleEmpty())
-                keys.doType(this.nextScheduleKey());
-
-            if (this.isInactive()) {
-                this.clearSchedule();
+            if (!checkpoint())
                 break;
-            }
 
             type(c);
         }
 
+        keys.releaseModifiers();
         this.end();
     }
 
+    /**
+     * Stream a file, compiling and typing it a line at a time. Typing starts as soon as the first line
+     * is read and memory use does not grow with the size of the file. Since a line is only compiled
+     * right before it is typed, a character that can not be typed stops typing at that line.
+     *
+     * @throws IllegalArgumentException If the file contains a character that can not be typed
+     */
     @Override
     public void typeFile(File file) throws IOException {
-        final List<String> lines = Files.readAllLines(Paths.get(file.toURI()), StandardCharsets.UTF_8);
+        final KeystrokeCompiler.LineCompiler compiler = new KeystrokeCompiler(keys.getLayout()).lines();
+        final StringBuilder line = new StringBuilder(128);
 
-        this.start();
+        try (LineReader reader = LineReader.open(file.toPath(), StandardCharsets.UTF_8)) {
+            Console.info("Streaming " + file.getName() + "...");
 
-        final OS.MemoryUnit mem = OS.MemoryUnit.KILOBYTES;
-        final long size = mem.convert(file.length(), OS.MemoryUnit.BYTES);
-        Console.info(String.format("Writing File of Size %,d KB consisting of %,d lines", size, lines.size()));
-
-        boolean block = false;
-        outer:
-        for (final String line : lines) {
-            String text = wsPattern.matcher(line.trim()).replaceAll(" ");
-
-            // Ignore Empty Lines and Comments
-            if (text.length() == 0) {
-                continue;
-            } else if (text.startsWith("--[[")) {
-                block = true;
-                continue;
-            } else if (block && (text.endsWith("]]") || text.endsWith("]]--"))) {
-                block = false;
-                continue;
-            } else if (text.startsWith("--")) {
-                continue;
-            } else if (block)
-                continue;
-
-            // Basically a copy of type(String) but this gives us more control
-            // to pause and stop on a per character basis, not a per line basis.
-            final char[] characters = text.trim().toCharArray();
-            int commentChars = 0;
-            for (final char c : characters) {
-                // Cancel typing once we hit a comment
-                if (c == '-') {
-                    commentChars++;
-                } else {
-                    if (commentChars == 1)
-                        type('-');
-                    commentChars = 0;
+            typeStream(() -> {
+                while (reader.readLine(line)) {
+                    final KeyProgram program = compiler.compile(line);
+                    if (program != null)
+                        return program;
                 }
 
-                if (commentChars > 0) {
-                    if (commentChars == 2)
-                        break;
-                    continue;
-                }
+                return null;
+            });
+        }
+    }
 
-                // Pause Loop
-                while (this.isPaused() || this.isAltDown()) {
-                    // We have to yield CPU time, 200 ms just sounds nice. (could be 10 ms or less)
-                    IOUtils.sleep(500);
-                }
+    @Override
+    public void typeStream(KeyProgramSource source) throws IOException {
+        final TypingJournal journal = keys.getJournal();
+        if (journal != null)
+            source = journal.skip(source);
 
-                // Handle Scheduled Key Events of the NativeHooks Dispatch Thread
-                while (!this.isScheduleEmpty())
-                    keys.doType(this.nextScheduleKey());
+        this.start();
 
-                // Kill Switch
-                if (this.isInactive()) {
-                    this.clearSchedule();
-                    break outer;
-                }
+        try {
+            boolean stopped = false;
+            while (!stopped) {
+                // A source that stalls must not keep the hotkeys from being handled
+                while (!stopped && !source.await(STREAM_POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    stopped = !checkpoint();
+
+                final KeyProgram program = stopped ? null : source.next();
+                if (program == null)
+                    break;
 
-                type(c);
+                stopped = !run(program);
             }
 
-            keys.doType(KeyEvent.VK_ENTER);
+            if (!stopped && journal != null)
+                journal.finish();
+            Console.debug("FINISHED");
+        } finally {
+            keys.releaseModifiers();
+            this.end();
         }
+    }
+
+    @Override
+    public void typeProgram(KeyProgram program) {
+        this.start();
+        Console.info(String.format("Typing %,d characters over %,d lines...", program.characterCount(), program.lineCount()));
 
+        final TypingJournal journal = keys.getJournal();
+        if (run(program) && journal != null)
+            journal.finish();
+
+        keys.releaseModifiers();
         Console.debug("FINISHED");
         this.end();
     }
 
+    /**
+     * Replay the key events of a program, must be called between {@link #start()} and {@link #end()}.
+     * Every line is committed to the {@link TypingJournal}, if any, once its ENTER was typed.
+     *
+     * @return false if typing was stopped
+     */
+    private boolean run(KeyProgram program) {
+        final int[] code = program.code();
+        final int length = program.length();
+        final TypingJournal journal = keys.getJournal();
+        String line = null;
+
+        for (int pc = 0; pc < length; pc++) {
+            final int instruction = code[pc];
+
+            switch (KeyProgram.opcode(instruction)) {
+                case KeyProgram.OP_PRESS:
+                    keys.press(KeyProgram.operand(instruction));
+                    break;
+                case KeyProgram.OP_RELEASE:
+                    keys.release(KeyProgram.operand(instruction));
+                    break;
+                case KeyProgram.OP_LINE:
+                    if (journal != null)
+                        journal.commit(line, KeyProgram.operand(instruction));
+                    // Fall through, a line end is also a character boundary
+                case KeyProgram.OP_MARK:
+                    if (!checkpoint())
+                        return false;
+                    break;
+                case KeyProgram.OP_TEXT:
+                    line = program.text()[KeyProgram.operand(instruction)];
+                    pc = typeText(program, pc);
+                    if (pc < 0)
+                        return false;
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid instruction " + Integer.toHexString(instruction) + " at " + pc);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Called at the start of every line of a program, before its key events. Typing replays the key
+     * events so the line text is ignored.
+     *
+     * @param program Program being typed
+     * @param pc      Index of the {@link KeyProgram#OP_TEXT} instruction
+     * @return Index of the last instruction handled, typing continues after it, or -1 if typing was
+     * stopped part way through the line
+     */
+    int typeText(KeyProgram program, int pc) {
+        return pc;
+    }
+
+    /**
+     * Wait out any pause, handle Scheduled Key Events of the NativeHooks Dispatch Thread and
+     * check the Kill Switch. Modifiers held across characters are released for the duration of
+     * any interruption so the user never ends up with a stuck SHIFT key.
+     *
+     * @return false if typing should stop
+     */
+    final boolean checkpoint() {
+        if (this.isActive() && !this.isChordHeld() && this.isScheduleEmpty() && this.isActionsEmpty())
+            return true;
+
+        final int held = keys.releaseModifiers();
+        keys.sync();
+
+        // Parked until resumed or stopped
+        if (this.isPaused())
+            Console.debug("Keyboard PAUSED");
+        this.awaitResume();
+
+        // Handle Actions of the NativeHooks Dispatch Thread
+        for (Hotkeys.Action action; (action = this.nextAction()) != null; )
+            handle(action);
+
+        // Handle Scheduled Key Events of the NativeHooks Dispatch Thread
+        while (!this.isScheduleEmpty())
+            keys.doType(this.nextScheduleKey());
+
+        // Kill Switch
+        if (this.isInactive()) {
+            this.clearSchedule();
+            return false;
+        }
+
+        keys.restoreModifiers(held);
+        return true;
+    }
+
+    private void handle(Hotkeys.Action action) {
+        switch (action) {
+            case FASTER:
+                keys.setTiming(keys.getTiming().scale(1 / SPEED_STEP));
+                break;
+            case SLOWER:
+                keys.setTiming(keys.getTiming().scale(SPEED_STEP));
+                break;
+            default:
+                return;
+        }
+
+        Console.info("Typing " + action.name().toLowerCase(Locale.ROOT) + ", now " + keys.getTiming());
+    }
+
     @Override
     public void destroy() {
         this.end();
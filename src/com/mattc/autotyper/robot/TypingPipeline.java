@@ -0,0 +1,209 @@
+package com.mattc.autotyper.robot;
+
+import com.mattc.autotyper.util.Console;
+import com.mattc.autotyper.util.IOUtils;
+import com.mattc.autotyper.util.LineReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fetches, filters and compiles a source concurrently with typing it, so that the first keys are typed
+ * while the rest of a large download is still arriving. <br />
+ * <br />
+ * The pipeline has two stages, each on its own thread, connected to each other and to the typing thread
+ * by bounded queues:
+ * <ul>
+ * <li><b>FETCH</b> - Reads and decodes the source channel into lines</li>
+ * <li><b>COMPILE</b> - Strips comments and whitespace and compiles every line into a {@link KeyProgram}</li>
+ * </ul>
+ * The typing thread takes the compiled programs through {@link #next()}, waiting for them with
+ * {@link #await(long, TimeUnit)} so it can still be paused or stopped while a download stalls, usually by way of
+ * {@link Keyboard#typeStream(KeyProgramSource)}. A full queue blocks the stage feeding it, so a source
+ * that is faster than the keyboard is throttled rather than buffered and memory stays bounded no matter
+ * the size of the source. A failure in any stage ends the stream and is rethrown to the typing thread. <br />
+ * <br />
+ * The pipeline must be {@link #close() closed} once typing is done or stopped, which stops both stages.
+ *
+ * @author Glossawy
+ */
+public final class TypingPipeline implements KeyProgramSource, Closeable {
+
+    /**
+     * Lines fetched ahead of compilation
+     */
+    public static final int LINE_CAPACITY = 1024;
+
+    /**
+     * Programs compiled ahead of typing
+     */
+    public static final int PROGRAM_CAPACITY = 256;
+
+    // Marks the end of a queue, compared by identity
+    private static final String END_OF_LINES = new String();
+    private static final KeyProgram END_OF_PROGRAMS = new KeyProgram(new int[0], new String[0], 0, 0);
+
+    private final String name;
+    private final ReadableByteChannel source;
+    private final KeystrokeCompiler compiler;
+    private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(LINE_CAPACITY);
+    private final BlockingQueue<KeyProgram> programs = new ArrayBlockingQueue<>(PROGRAM_CAPACITY);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Thread fetcher, transformer;
+
+    private final long created = System.nanoTime();
+    private volatile long fetched = -1;
+    private volatile boolean closed;
+    private boolean finished;
+    // Taken by await, returned by the next call to next
+    private KeyProgram ready;
+
+    private TypingPipeline(String name, ReadableByteChannel source, KeyLayout layout) {
+        this.name = name;
+        this.source = source;
+        this.compiler = new KeystrokeCompiler(layout);
+        this.fetcher = new Thread(this::fetch, "FETCH");
+        this.transformer = new Thread(this::compile, "COMPILE");
+
+        fetcher.setDaemon(true);
+        transformer.setDaemon(true);
+    }
+
+    /**
+     * Start fetching and compiling a source.
+     *
+     * @param name   Name of the source, for logging
+     * @param source Source Text encoded in UTF-8, closed with the pipeline
+     * @param layout Layout of the Keyboard the source will be typed with
+     * @return The running pipeline
+     */
+    public static TypingPipeline start(String name, ReadableByteChannel source, KeyLayout layout) {
+        final TypingPipeline pipeline = new TypingPipeline(name, source, layout);
+        pipeline.fetcher.start();
+        pipeline.transformer.start();
+        return pipeline;
+    }
+
+    private void fetch() {
+        final StringBuilder line = new StringBuilder(128);
+        long count = 0;
+
+        try (LineReader reader = new LineReader(source, StandardCharsets.UTF_8)) {
+            while (!closed && reader.readLine(line)) {
+                lines.put(line.toString());
+                count++;
+            }
+
+            fetched = count;
+        } catch (final InterruptedException ignore) {
+            // Closed
+        } catch (final Throwable t) {
+            fail(t);
+        } finally {
+            end(lines, END_OF_LINES);
+        }
+    }
+
+    private void compile() {
+        final KeystrokeCompiler.LineCompiler lineCompiler = compiler.lines();
+
+        try {
+            for (String line; (line = lines.take()) != END_OF_LINES; ) {
+                final KeyProgram program = lineCompiler.compile(line);
+                if (program != null)
+                    programs.put(program);
+            }
+        } catch (final InterruptedException ignore) {
+            // Closed
+        } catch (final Throwable t) {
+            fail(t);
+        } finally {
+            end(programs, END_OF_PROGRAMS);
+        }
+    }
+
+    /**
+     * Record the first failure and stop fetching, nothing after the failure will be typed.
+     */
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+        if (Thread.currentThread() != fetcher)
+            fetcher.interrupt();
+    }
+
+    private <T> void end(BlockingQueue<T> queue, T end) {
+        if (closed)
+            return;
+
+        try {
+            queue.put(end);
+        } catch (final InterruptedException ignore) {
+            // Closed while waiting for room, nobody is left to read the end
+        }
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws IOException {
+        if (finished || ready != null)
+            return true;
+
+        try {
+            ready = programs.poll(timeout, unit);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        }
+
+        return ready != null;
+    }
+
+    @Override
+    public KeyProgram next() throws IOException {
+        if (finished)
+            return null;
+
+        final KeyProgram program;
+        try {
+            program = ready != null ? ready : programs.take();
+            ready = null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        }
+
+        if (program != END_OF_PROGRAMS)
+            return program;
+
+        finished = true;
+        final Throwable t = failure.get();
+        if (t instanceof IOException)
+            throw (IOException) t;
+        else if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        else if (t instanceof Error)
+            throw (Error) t;
+        else if (t != null)
+            throw new IOException(t);
+
+        Console.info(String.format("Finished streaming %s, %,d lines in %,d ms", name, fetched, (System.nanoTime() - created) / 1000000));
+        return null;
+    }
+
+    /**
+     * Stop every stage and close the source.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        fetcher.interrupt();
+        transformer.interrupt();
+        IOUtils.close(source);
+    }
+}
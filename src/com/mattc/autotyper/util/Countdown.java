@@ -0,0 +1,87 @@
+package com.mattc.autotyper.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The countdown before typing starts, kept as a deadline rather than a sleep so that the work needed
+ * before typing can be done while it runs. <br />
+ * <br />
+ * A countdown is started as soon as the user commits to typing, every step of preparation (downloading,
+ * minifying, compiling...) is then run as a {@link #phase(String, Phase) phase} and finally
+ * {@link #await()} waits out whatever is left of the countdown. Typing therefore begins when the
+ * countdown ends or when preparation is done, whichever is later, instead of after both. The time taken
+ * by every phase is logged when the countdown is awaited.
+ *
+ * @author Glossawy
+ */
+public final class Countdown {
+
+    private final long started, deadline;
+    private final StringBuilder phases = new StringBuilder();
+
+    /**
+     * Start a countdown.
+     *
+     * @param millis Milliseconds until typing may begin
+     */
+    public Countdown(long millis) {
+        this.started = System.nanoTime();
+        this.deadline = started + TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+    }
+
+    /**
+     * Run a step of preparation, timing it.
+     *
+     * @param name Name of the step, for logging
+     * @param work The step
+     * @return The result of the step
+     * @throws E If the step fails
+     */
+    public <T, E extends Exception> T phase(String name, Phase<T, E> work) throws E {
+        final long start = System.nanoTime();
+        try {
+            return work.run();
+        } finally {
+            if (phases.length() > 0)
+                phases.append(", ");
+            phases.append(name).append(' ').append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).append(" ms");
+        }
+    }
+
+    /**
+     * Wait until the countdown has ended, returning immediately if it already has.
+     */
+    public void await() {
+        final long now = System.nanoTime();
+        final long prepared = TimeUnit.NANOSECONDS.toMillis(now - started);
+        final long remaining = deadline - now;
+        final String detail = phases.length() == 0 ? "" : " (" + phases + ")";
+
+        if (remaining > 0) {
+            Console.info(String.format("Prepared in %,d ms%s, typing in %,d ms", prepared, detail, TimeUnit.NANOSECONDS.toMillis(remaining)));
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(deadline - System.nanoTime());
+            } catch (final InterruptedException ignore) {
+                // Ignore, as IOUtils.sleep does
+            }
+        } else {
+            Console.info(String.format("Prepared in %,d ms%s, %,d ms past the countdown", prepared, detail, TimeUnit.NANOSECONDS.toMillis(-remaining)));
+        }
+    }
+
+    /**
+     * @return Milliseconds left in the countdown, 0 once it has ended
+     */
+    public long remaining() {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+    }
+
+    /**
+     * A step of preparation
+     */
+    @FunctionalInterface
+    public interface Phase<T, E extends Exception> {
+        T run() throws E;
+    }
+}
@@ -0,0 +1,93 @@
+package com.mattc.autotyper.util;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A bounded, lock-free queue of primitive <code>int</code>s for exactly one producer thread and one
+ * consumer thread. <br />
+ * <br />
+ * Values are stored in a power of two sized array indexed by two ever increasing sequences, the
+ * producer only writes the tail and the consumer only writes the head. Neither offering nor removing
+ * boxes or allocates, and checking for emptiness is a comparison of two volatile reads. <br />
+ * <br />
+ * <b>Not safe for multiple producers or multiple consumers.</b>
+ *
+ * @author Glossawy
+ */
+public final class IntRingBuffer {
+
+    private static final AtomicLongFieldUpdater<IntRingBuffer> HEAD = AtomicLongFieldUpdater.newUpdater(IntRingBuffer.class, "head");
+    private static final AtomicLongFieldUpdater<IntRingBuffer> TAIL = AtomicLongFieldUpdater.newUpdater(IntRingBuffer.class, "tail");
+
+    private final int[] buffer;
+    private final int mask;
+
+    // Next sequence to remove, written by the consumer only
+    private volatile long head;
+    // Next sequence to offer, written by the producer only
+    private volatile long tail;
+
+    /**
+     * @param capacity Minimum capacity, rounded up to a power of two
+     */
+    public IntRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException("Capacity must be in [1, 2^30] but was " + capacity);
+
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new int[Math.max(size, 1)];
+        this.mask = buffer.length - 1;
+    }
+
+    /**
+     * Append a value. May only be called by the producer thread.
+     *
+     * @return false if the buffer is full and the value was dropped
+     */
+    public boolean offer(int value) {
+        final long t = tail;
+        if (t - head == buffer.length)
+            return false;
+
+        buffer[(int) t & mask] = value;
+        // Ordered store publishes the value before the new tail
+        TAIL.lazySet(this, t + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest value. May only be called by the consumer thread.
+     *
+     * @throws NoSuchElementException If the buffer is empty
+     */
+    public int remove() {
+        final long h = head;
+        if (h == tail)
+            throw new NoSuchElementException();
+
+        final int value = buffer[(int) h & mask];
+        HEAD.lazySet(this, h + 1);
+        return value;
+    }
+
+    /**
+     * Discard every value currently in the buffer. May only be called by the consumer thread.
+     */
+    public void clear() {
+        HEAD.lazySet(this, tail);
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int size() {
+        final long h = head;
+        return (int) (tail - h);
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
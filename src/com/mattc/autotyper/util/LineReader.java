@@ -0,0 +1,128 @@
+package com.mattc.autotyper.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads text a line at a time from a {@link ReadableByteChannel}, decoding it incrementally through
+ * fixed size buffers. Memory use depends only on the longest line, never on the size of the input,
+ * and the first line is available as soon as its bytes are. <br />
+ * <br />
+ * Lines may end in '\n', '\r\n' or '\r'. Malformed input is replaced rather than rejected, exactly as
+ * decoding the whole input into a String would. Lines are read into a caller supplied StringBuilder so
+ * that reading allocates nothing per line.
+ *
+ * @author Glossawy
+ */
+public final class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    private boolean eof, flushed;
+    // Whether the last line ended in '\r', in which case a following '\n' belongs to it
+    private boolean skipLineFeed;
+
+    public LineReader(ReadableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars.flip();
+    }
+
+    public static LineReader open(Path path, Charset charset) throws IOException {
+        return new LineReader(FileChannel.open(path, StandardOpenOption.READ), charset);
+    }
+
+    /**
+     * Read the next line, without its line ending.
+     *
+     * @param line Cleared, then filled with the next line
+     * @return false if the end of the input was reached and there is no line left
+     * @throws IOException If reading the channel fails
+     */
+    public boolean readLine(StringBuilder line) throws IOException {
+        line.setLength(0);
+        boolean read = false;
+
+        while (true) {
+            while (chars.hasRemaining()) {
+                final char c = chars.get();
+
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n')
+                        continue;
+                }
+
+                if (c == '\n') {
+                    return true;
+                } else if (c == '\r') {
+                    skipLineFeed = true;
+                    return true;
+                }
+
+                line.append(c);
+                read = true;
+            }
+
+            // The last line need not have a line ending
+            if (!fill())
+                return read;
+        }
+    }
+
+    /**
+     * Decode more characters into the character buffer.
+     *
+     * @return false if the input is exhausted
+     */
+    private boolean fill() throws IOException {
+        chars.clear();
+
+        while (chars.position() == 0) {
+            if (flushed) {
+                chars.flip();
+                return false;
+            }
+
+            if (!eof && channel.read(bytes) < 0)
+                eof = true;
+
+            bytes.flip();
+            final CoderResult result = decoder.decode(bytes, chars, eof);
+            bytes.compact();
+
+            if (result.isError())
+                result.throwException();
+
+            if (eof && result.isUnderflow()) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+        }
+
+        chars.flip();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}